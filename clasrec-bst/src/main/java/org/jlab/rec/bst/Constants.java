@@ -164,6 +164,15 @@ public class Constants {
 	public static double RMLAYER = 0;
 
 	public static boolean newGeometry = true;
+	
+	/**
+	 * Find the track seeds with the reusable per-thread Hough engine instead of allocating a new accumulator for each event
+	 */
+	public static boolean useHoughEngine = false;
+	/**
+	 * Only use the local maxima of the Hough accumulator as peaks (Hough engine only)
+	 */
+	public static boolean HOUGHPEAKSUPPRESSION = false;
 
 	
 	// for landau inverse calculation
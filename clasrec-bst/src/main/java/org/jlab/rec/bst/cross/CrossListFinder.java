@@ -7,6 +7,7 @@ import java.util.List;
 import org.jMath.Vector.threeVec;
 import org.jlab.rec.bst.Constants;
 import org.jlab.rec.bst.Geometry;
+import org.jlab.rec.common.HoughEngine;
 
 import trackfitter.fitter.LineFitPars;
 import trackfitter.fitter.LineFitter;
@@ -448,6 +449,9 @@ public class CrossListFinder {
 		/// reconstructed hits belonging to the same track-segment.
 
 		
+		if(Constants.useHoughEngine)
+			return this.findTrackSeedsWithHoughEngine(crosses);
+		
 		// From this calculate the bin size in the theta accumulator array
 		double ThetaMin = 0.;
 		double ThetaMax = 360.;
@@ -592,6 +596,16 @@ public class CrossListFinder {
 			}
 		}
 		
+		return this.removeContainedSeedLists(crossLists);
+	}
+
+	/**
+	 * Removes the seed lists contained in other lists and makes the final list of seeds
+	 * @param crossLists the lists of crosses of the Hough transform peaks
+	 * @return the track seeds
+	 */
+	private CrossList removeContainedSeedLists(ArrayList<ArrayList <Cross> > crossLists) {
+		
 		//remove duplicate lists
 		for(int i = crossLists.size()-1; i>-1; i--) {
 			for(int j = crossLists.size()-1; j>-1; j--) {
@@ -623,6 +637,48 @@ public class CrossListFinder {
         return crossListFinal;
 	
 	}
+
+	// the Hough engine of the thread, reused for all the events
+	private static final ThreadLocal<HoughEngine> houghEngine = new ThreadLocal<HoughEngine>() {
+		@Override
+		protected HoughEngine initialValue() {
+			return new HoughEngine(45, -180, 180, 180, 0., 2.*Math.PI);
+		}
+	};
+	
+	/**
+	 * Track seeding using the Hough engine of the thread: the accumulator, the trig tables and the peak arrays are reused
+	 * from one event to the next, the crosses of a peak are obtained from the bins filled by each cross, and optionally only
+	 * the local maxima of the accumulator are used as peaks (Constants.HOUGHPEAKSUPPRESSION)
+	 * @param crosses the list of crosses
+	 * @return the track seeds
+	 */
+	private CrossList findTrackSeedsWithHoughEngine(List<Cross> crosses) {
+		
+		HoughEngine hough = houghEngine.get();
+		hough.reset();
+		
+		// fill the accumulator with the crosses in the (y, x) plane
+		for(int i = 0; i < crosses.size(); i++) 
+			hough.addPoint(crosses.get(i).get_Point().y(), crosses.get(i).get_Point().x());
+		
+		int nbPeaks = hough.findPeaks(3, Constants.HOUGHPEAKSUPPRESSION); // minimum number of crosses requirement
+		
+		ArrayList<ArrayList <Cross> > crossLists = new ArrayList<ArrayList <Cross> >();
+		
+		for(int p = nbPeaks-1; p>-1; p--) {
+			// Make a new list with the crosses of the peak
+			ArrayList<Cross> crossList = new ArrayList<Cross>();
+			for(int i = 0; i < crosses.size(); i++) 
+				if(hough.isPointInPeak(i, p))
+					crossList.add(crosses.get(i));  
+			
+			if(this.regionUniquenessFlag(crossList) && !crossLists.contains(crossList)) 
+				crossLists.add(crossList);
+		}
+		
+		return this.removeContainedSeedLists(crossLists);
+	}
 	
 	private boolean regionUniquenessFlag(ArrayList<Cross> crossList) {
 		int[] theRegionsCount = new int[8];
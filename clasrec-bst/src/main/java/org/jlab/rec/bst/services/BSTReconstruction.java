@@ -336,6 +336,12 @@ public class BSTReconstruction extends DetectorReconstruction{
 			System.out.println("\n\n********** Region excluded from fit " + exR + "  *************");
 
 		}
+		if(config.hasItem("SVT", "houghEngine")) {
+			Constants.useHoughEngine = Boolean.parseBoolean(config.asString("SVT", "houghEngine"));
+		}
+		if(config.hasItem("SVT", "houghPeakSuppression")) {
+			Constants.HOUGHPEAKSUPPRESSION = Boolean.parseBoolean(config.asString("SVT", "houghPeakSuppression"));
+		}
 		
 		if(config.hasItem("MAG", "solenoid")) {
 			Constants.FieldConfig="variable";
@@ -27,17 +27,17 @@ import trackfitter.track.Helix;
 public class BSTSwimmer {
 
 	private static Solenoid sField;
-	private static Swimmer swimmer;
+	private Swimmer swimmer; // one swimmer per instance, so that instances can be used concurrently
 	// get some fit results
 	
-	private static double _x0;
-	private static double _y0;
-	private static double _z0;
-	private static double _phi;
-	private static double _theta;
-	private static double _pTot;
-	public static double _maxPathLength;
-	private static int _charge;
+	private double _x0;
+	private double _y0;
+	private double _z0;
+	private double _phi;
+	private double _theta;
+	private double _pTot;
+	public double _maxPathLength;
+	private int _charge;
 	
 	public double swamPathLength;
 	public double swamIBdl;
@@ -258,12 +258,12 @@ public class BSTSwimmer {
 		BSTSwimmer.sField = sField;
 	}
 
-	public static Swimmer getSwimmer() {
+	public Swimmer getSwimmer() {
 		return swimmer;
 	}
 
-	public static void setSwimmer(Swimmer swimmer) {
-		BSTSwimmer.swimmer = swimmer;
+	public void setSwimmer(Swimmer swimmer) {
+		this.swimmer = swimmer;
 	}
 
 	public double get_x0() {
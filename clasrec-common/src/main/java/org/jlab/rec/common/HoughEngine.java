@@ -0,0 +1,203 @@
+package org.jlab.rec.common;
+
+import java.util.Arrays;
+
+/**
+ * A reusable Hough transform engine for straight lines, r = rho*cos(theta) + phi*sin(theta).
+ * <p>
+ * The cos and sin tables are computed once.  The accumulator is only cleared in the cells filled by the previous
+ * transform, so that the cost of a transform does not depend on the accumulator size.  The r bin of each point at each
+ * theta bin is kept, so that the points belonging to a peak are found without recomputing the transform.
+ * The engine is shared by the DC cluster splitting and the SVT track seeding.
+ * An engine is not thread safe; one engine should be used per thread.
+ * @author ziegler
+ *
+ */
+public class HoughEngine {
+
+	private final int N_r;
+	private final int N_t;
+	private final double RMin;
+	private final double RMax;
+
+	private final double[] cosTheta;
+	private final double[] sinTheta;
+
+	private final int[] accumulator;	// [r bin * N_t + theta bin]
+	private int[] filledCells;			// the accumulator cells with a non-zero count
+	private int nbOfFilledCells;
+
+	private int[] pointBins;			// [point * N_t + theta bin] = r bin of the point, -1 if out of range
+	private int nbOfPoints;
+
+	private int[] peakCells;
+	private int nbOfPeaks;
+
+	/**
+	 *
+	 * @param nRBins the number of r bins
+	 * @param rMin the lower edge of the r range
+	 * @param rMax the upper edge of the r range
+	 * @param nThetaBins the number of theta bins
+	 * @param thetaMin the lower edge of the theta range in radians
+	 * @param thetaMax the upper edge of the theta range in radians
+	 */
+	public HoughEngine(int nRBins, double rMin, double rMax, int nThetaBins, double thetaMin, double thetaMax) {
+		N_r = nRBins;
+		N_t = nThetaBins;
+		RMin = rMin;
+		RMax = rMax;
+
+		cosTheta = new double[N_t];
+		sinTheta = new double[N_t];
+		double SizeThetaBin = (thetaMax-thetaMin)/((double) N_t);
+		for(int j_t=0; j_t<N_t; j_t++)  {
+			// theta_j in the middle of the bin :
+			double theta_j = thetaMin + (0.5 + j_t)*SizeThetaBin;
+			cosTheta[j_t] = Math.cos(theta_j);
+			sinTheta[j_t] = Math.sin(theta_j);
+		}
+
+		accumulator = new int[N_r*N_t];
+		filledCells = new int[64];
+		pointBins = new int[16*N_t];
+		peakCells = new int[16];
+	}
+
+	/**
+	 * Clears the accumulator cells filled by the previous transform and the points
+	 */
+	public void reset() {
+		for(int i = 0; i<nbOfFilledCells; i++)
+			accumulator[filledCells[i]] = 0;
+		nbOfFilledCells = 0;
+		nbOfPoints = 0;
+		nbOfPeaks = 0;
+	}
+
+	/**
+	 * Adds a point to the transform
+	 * @param rho the first coordinate of the point
+	 * @param phi the second coordinate of the point
+	 * @return the index of the point
+	 */
+	public int addPoint(double rho, double phi) {
+
+		if((nbOfPoints+1)*N_t>pointBins.length)
+			pointBins = Arrays.copyOf(pointBins, 2*pointBins.length);
+
+		int offset = nbOfPoints*N_t;
+		for(int j_t=0; j_t<N_t; j_t++) {
+			// r_j corresponding to that theta_j:
+			double r_j  = rho*cosTheta[j_t] + phi*sinTheta[j_t];
+			// this value of r_j falls into the following bin in the r array:
+			int j_r = (int) Math.floor(N_r*(r_j - RMin)/(float) (RMax - RMin));
+			if(j_r<0 || j_r>=N_r) {
+				pointBins[offset+j_t] = -1;
+				continue;
+			}
+			pointBins[offset+j_t] = j_r;
+
+			// increase this accumulator cell:
+			int cell = j_r*N_t+j_t;
+			if(accumulator[cell]++ == 0) {
+				if(nbOfFilledCells==filledCells.length)
+					filledCells = Arrays.copyOf(filledCells, 2*filledCells.length);
+				filledCells[nbOfFilledCells++] = cell;
+			}
+		}
+		return nbOfPoints++;
+	}
+
+	/**
+	 * Finds the peaks of the accumulator, in the order of increasing r bin and theta bin
+	 * @param threshold the minimum count of a peak
+	 * @param suppressNonMaxima if true, a cell is only a peak if its count is a local maximum among its 8 neighbours
+	 * (theta being periodic); of neighbouring cells with equal counts only the first is kept
+	 * @return the number of peaks
+	 */
+	public int findPeaks(int threshold, boolean suppressNonMaxima) {
+
+		nbOfPeaks = 0;
+		for(int i = 0; i<nbOfFilledCells; i++) {
+			int cell = filledCells[i];
+			if(accumulator[cell]<threshold)
+				continue;
+			if(suppressNonMaxima && !this.isLocalMaximum(cell))
+				continue;
+			if(nbOfPeaks==peakCells.length)
+				peakCells = Arrays.copyOf(peakCells, 2*peakCells.length);
+			peakCells[nbOfPeaks++] = cell;
+		}
+		Arrays.sort(peakCells, 0, nbOfPeaks);
+
+		return nbOfPeaks;
+	}
+
+	private boolean isLocalMaximum(int cell) {
+		int count = accumulator[cell];
+		int j_r = cell/N_t;
+		int j_t = cell%N_t;
+		for(int dr = -1; dr<=1; dr++) {
+			int r = j_r+dr;
+			if(r<0 || r>=N_r)
+				continue;
+			for(int dt = -1; dt<=1; dt++) {
+				if(dr==0 && dt==0)
+					continue;
+				int t = (j_t+dt+N_t)%N_t;
+				int neighbour = r*N_t+t;
+				// a plateau is represented by its first cell
+				if(accumulator[neighbour]>count || (accumulator[neighbour]==count && neighbour<cell))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the number of peaks found in the last peak search
+	 */
+	public int get_NbOfPeaks() {
+		return nbOfPeaks;
+	}
+
+	/**
+	 *
+	 * @param peak the peak index
+	 * @return the r bin of the peak
+	 */
+	public int get_PeakRBin(int peak) {
+		return peakCells[peak]/N_t;
+	}
+
+	/**
+	 *
+	 * @param peak the peak index
+	 * @return the theta bin of the peak
+	 */
+	public int get_PeakThetaBin(int peak) {
+		return peakCells[peak]%N_t;
+	}
+
+	/**
+	 *
+	 * @param peak the peak index
+	 * @return the accumulator count of the peak
+	 */
+	public int get_PeakCount(int peak) {
+		return accumulator[peakCells[peak]];
+	}
+
+	/**
+	 *
+	 * @param point the point index
+	 * @param peak the peak index
+	 * @return true if the sinusoid of the point goes through the peak cell
+	 */
+	public boolean isPointInPeak(int point, int peak) {
+		int j_t = peakCells[peak]%N_t;
+		return pointBins[point*N_t+j_t] == peakCells[peak]/N_t;
+	}
+}
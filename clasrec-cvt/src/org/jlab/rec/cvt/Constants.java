@@ -44,6 +44,12 @@ public class Constants {
 
 	public static boolean DEBUGMODE =false;
 
+	// use the sector-aware sparse strip clustering instead of the grid scan
+	public static boolean useSparseClustering = false;
+
+	// search the SVT seeds in windows in azimuth instead of looping over all the combinations of crosses
+	public static boolean useIndexedSeedSearch = false;
+
 	
 	// for landau inverse calculation
 	public static final double f[] = {
@@ -4,6 +4,7 @@ package org.jlab.rec.cvt.cluster;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.jlab.rec.cvt.Constants;
 import org.jlab.rec.cvt.hit.FittedHit;
 import org.jlab.rec.cvt.hit.Hit;
 
@@ -27,7 +28,32 @@ public class ClusterFinder  {
 	int nstrip = 1200; // max number of strips
 	int nlayr = 12;
 	
-	public ArrayList<Cluster> findClusters(List<Hit> hits2) // the number of strips depends on the layer 
+	// the sparse clustering engines, one per thread
+	private static final ThreadLocal<StripClusterEngine> sparseEngine = new ThreadLocal<StripClusterEngine>() {
+		@Override
+		protected StripClusterEngine initialValue() {
+			return new StripClusterEngine();
+		}
+	};
+	
+	/**
+	 * 
+	 * @param hits2 the SVT and BMT hits
+	 * @return the clusters, found with the StripClusterEngine if Constants.useSparseClustering is set, with the grid scan otherwise
+	 */
+	public ArrayList<Cluster> findClusters(List<Hit> hits2) 
+	{
+		if(Constants.useSparseClustering)
+			return sparseEngine.get().findClusters(hits2);
+		return this.findClustersOnGrid(hits2);
+	}
+	
+	/**
+	 * The grid scan over all the strips of all the layers; the hits are indexed by strip and layer only
+	 * @param hits2 the SVT and BMT hits
+	 * @return the clusters
+	 */
+	public ArrayList<Cluster> findClustersOnGrid(List<Hit> hits2) // the number of strips depends on the layer 
 	{
 		ArrayList<Cluster> clusters = new ArrayList<Cluster>();
 		
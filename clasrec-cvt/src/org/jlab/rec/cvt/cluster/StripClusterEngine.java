@@ -0,0 +1,227 @@
+package org.jlab.rec.cvt.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jlab.rec.cvt.hit.FittedHit;
+import org.jlab.rec.cvt.hit.Hit;
+import org.jlab.rec.cvt.hit.Strip;
+
+/**
+ * A sparse clustering engine for the SVT and BMT strips.
+ * <p>
+ * The hits are sorted by (detector, layer, sector, strip) through a packed long key per hit, and the clusters of contiguous strips
+ * are formed in a single pass over the sorted keys; the cost is proportional to the number of hits rather than to the number of strips.
+ * Contrary to the grid scan of the ClusterFinder, the hits of different sectors of a layer and of the SVT and BMT are never merged.
+ * As in the grid scan, the last hit of a duplicated strip is kept, and a bad hit (status -1) continues a cluster without being added to it.
+ * The buffers are kept from one event to the next; an engine is not thread safe.
+ * @author ziegler
+ *
+ */
+public class StripClusterEngine {
+
+	// key layout, from the most significant bits: detector (1 bit), layer (5 bits), sector (6 bits), strip (11 bits), hit index (24 bits)
+	private static final int INDEXBITS = 24;
+	private static final int STRIPBITS = 11;
+	private static final int SECTORBITS = 6;
+	private static final int LAYERBITS = 5;
+	private static final int MODULESHIFT = INDEXBITS + STRIPBITS;
+	private static final long INDEXMASK = (1L<<INDEXBITS)-1;
+	private static final long STRIPMASK = (1L<<STRIPBITS)-1;
+
+	private static final int MAXSTRIP = 1200; // strips are valid in [1, MAXSTRIP), as in the grid scan
+
+	private long[] keys = new long[256];
+	private Hit[] sortedHits = new Hit[256];
+
+	/**
+	 *
+	 * @param hits the SVT and BMT hits in the event
+	 * @return the clusters, ordered by detector (SVT first), layer, sector and strip
+	 */
+	public ArrayList<Cluster> findClusters(List<Hit> hits) {
+		ArrayList<Cluster> clusters = new ArrayList<Cluster>();
+
+		int n = this.fillKeys(hits);
+		if(n == 0)
+			return clusters;
+		Arrays.sort(keys, 0, n);
+
+		// keep the last hit of each duplicated strip; the hit index is the lowest field of the key
+		int nu = 0;
+		for(int i = 0; i < n; i++) {
+			if(nu > 0 && (keys[nu-1]>>>INDEXBITS) == (keys[i]>>>INDEXBITS))
+				nu--;
+			keys[nu++] = keys[i];
+		}
+		for(int i = 0; i < nu; i++)
+			sortedHits[i] = hits.get((int) (keys[i] & INDEXMASK));
+
+		int cid = 1;  // cluster id, will increment with each new good cluster
+		int i = 0;
+		while(i < nu) {
+			long module = keys[i]>>>MODULESHIFT;
+			int end = i+1;
+			while(end < nu && (keys[end]>>>MODULESHIFT) == module
+					&& getStrip(keys[end]) == getStrip(keys[end-1])+1)
+				end++;
+
+			// vector of hits in the cluster candidate
+			ArrayList<FittedHit> clusHits = new ArrayList<FittedHit>(end-i);
+			for(int j = i; j < end; j++) {
+				Hit hit = sortedHits[j];
+				if(hit.get_Status() == -1) // continue clustering skipping over bad hit
+					continue;
+				FittedHit hitInCls = new FittedHit(hit.get_Detector(), hit.get_DetectorType(), hit.get_Sector(), hit.get_Layer(), hit.get_Strip());
+				hitInCls.set_Id(hit.get_Id());
+				clusHits.add(hitInCls);
+			}
+			i = end;
+			if(clusHits.size() == 0)
+				continue;
+
+			// define new cluster, with the same id convention as the grid scan
+			FittedHit first = clusHits.get(0);
+			Cluster this_cluster = new Cluster(first.get_Detector(), first.get_DetectorType(), first.get_Sector(), first.get_Layer(), cid++);
+			this_cluster.set_Id(cid);
+			this_cluster.addAll(clusHits);
+			for(FittedHit h : clusHits) {
+				h.set_AssociatedClusterID(this_cluster.get_Id());
+			}
+			this_cluster.calc_CentroidParams();
+			clusters.add(this_cluster);
+		}
+		Arrays.fill(sortedHits, 0, nu, null);
+
+		return clusters;
+	}
+
+	private static int getStrip(long key) {
+		return (int) ((key>>>INDEXBITS) & STRIPMASK);
+	}
+
+	/**
+	 * Packs the keys of the valid hits in the key buffer
+	 * @return the number of keys
+	 */
+	private int fillKeys(List<Hit> hits) {
+		int size = hits.size();
+		if(size > INDEXMASK)
+			throw new IllegalArgumentException("too many CVT hits for clustering: "+size);
+		if(keys.length < size) {
+			int length = Math.max(size, 2*keys.length);
+			keys = new long[length];
+			sortedHits = new Hit[length];
+		}
+		int n = 0;
+		for(int i = 0; i < size; i++) {
+			Hit hit = hits.get(i);
+			int strip = hit.get_Strip().get_Strip();
+			int layer = hit.get_Layer();
+			int sector = hit.get_Sector();
+			if(strip <= 0 || strip >= MAXSTRIP || layer < 1 || layer >= (1<<LAYERBITS) || sector < 0 || sector >= (1<<SECTORBITS))
+				continue;
+			long detector = "BMT".equals(hit.get_Detector()) ? 1 : 0;
+			long module = (((detector<<LAYERBITS) | layer)<<SECTORBITS) | sector;
+			keys[n++] = (((module<<STRIPBITS) | strip)<<INDEXBITS) | i;
+		}
+		return n;
+	}
+
+	/**
+	 * Generates random events of SVT and BMT hits
+	 * @param oneModulePerLayer if true, the events have SVT hits only, all the hits of a layer in one sector, so that the grid scan
+	 * and the sparse engine must give the same clusters
+	 */
+	private static List<List<Hit>> generateEvents(int nEvents, int nHits, boolean oneModulePerLayer, Random rand) {
+		List<List<Hit>> events = new ArrayList<List<Hit>>(nEvents);
+		for(int e = 0; e < nEvents; e++) {
+			int[] sectorInLayer = new int[8];
+			for(int l = 0; l < 8; l++)
+				sectorInLayer[l] = 1+rand.nextInt(10+4*(l/2));
+			List<Hit> hits = new ArrayList<Hit>(nHits);
+			for(int h = 0; h < nHits; h++) {
+				Hit hit;
+				if(oneModulePerLayer == false && rand.nextInt(4) == 0) {
+					int layer = 1+rand.nextInt(6);
+					hit = new Hit("BMT", layer%3 == 0 ? "Z" : "C", 1+rand.nextInt(3), layer, new Strip(1+rand.nextInt(MAXSTRIP-1), 1+rand.nextDouble()));
+				} else {
+					int layer = 1+rand.nextInt(8);
+					int sector = oneModulePerLayer ? sectorInLayer[layer-1] : 1+rand.nextInt(10+4*((layer-1)/2));
+					hit = new Hit("SVT", "", sector, layer, new Strip(1+rand.nextInt(256), 1+rand.nextDouble()));
+				}
+				hit.set_Id(h+1);
+				hit.set_Status(rand.nextInt(50) == 0 ? 0 : 1);
+				hits.add(hit);
+			}
+			events.add(hits);
+		}
+		return events;
+	}
+
+	/**
+	 * Checks that the sparse engine gives the same clusters as the grid scan of the ClusterFinder on random events with one module per layer
+	 * @param nEvents the number of events
+	 * @param nHits the number of hits per event
+	 * @param seed the random seed
+	 * @return true if the clusters are the same
+	 */
+	public static boolean check(int nEvents, int nHits, long seed) {
+		List<List<Hit>> events = generateEvents(nEvents, nHits, true, new Random(seed));
+		ClusterFinder gridFinder = new ClusterFinder();
+		StripClusterEngine engine = new StripClusterEngine();
+		for(List<Hit> hits : events) {
+			List<Cluster> gridClusters = gridFinder.findClustersOnGrid(hits);
+			List<Cluster> sparseClusters = engine.findClusters(hits);
+			if(gridClusters.size() != sparseClusters.size())
+				return false;
+			for(int c = 0; c < gridClusters.size(); c++) {
+				Cluster c1 = gridClusters.get(c);
+				Cluster c2 = sparseClusters.get(c);
+				if(c1.get_Id() != c2.get_Id() || c1.get_Layer() != c2.get_Layer() || c1.get_Sector() != c2.get_Sector() || c1.size() != c2.size())
+					return false;
+				for(int h = 0; h < c1.size(); h++)
+					if(c1.get(h).get_Id() != c2.get(h).get_Id())
+						return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the timing of the sparse engine and of the grid scan of the ClusterFinder on random events
+	 * @param nEvents the number of events
+	 * @param nHits the number of hits per event
+	 * @param seed the random seed
+	 */
+	public static void benchmark(int nEvents, int nHits, long seed) {
+		List<List<Hit>> events = generateEvents(nEvents, nHits, false, new Random(seed));
+		ClusterFinder gridFinder = new ClusterFinder();
+		StripClusterEngine engine = new StripClusterEngine();
+		for(int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+			long nGrid = 0;
+			long nSparse = 0;
+			long t0 = System.nanoTime();
+			for(List<Hit> hits : events)
+				nGrid += gridFinder.findClustersOnGrid(hits).size();
+			long t1 = System.nanoTime();
+			for(List<Hit> hits : events)
+				nSparse += engine.findClusters(hits).size();
+			long t2 = System.nanoTime();
+			if(pass == 1)
+				System.out.println(String.format("%d events of %d hits: grid scan %.2f us/event (%d clusters), sparse %.2f us/event (%d clusters)",
+						nEvents, nHits, (t1-t0)/1.e3/nEvents, nGrid, (t2-t1)/1.e3/nEvents, nSparse));
+		}
+	}
+
+	public static void main(String[] args) {
+		int nEvents = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int[] nHits = new int[] {50, 200, 1000};
+		for(int n : nHits) {
+			System.out.println(n+" hits per event with one module per layer: same clusters as the grid scan ? "+check(1000, n, 123));
+			benchmark(nEvents, n, 123);
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package org.jlab.rec.cvt.cross;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jlab.geom.prim.Point3D;
 import org.jlab.geom.prim.Vector3D;
@@ -58,7 +63,10 @@ public class HelixCrossListFinder {
 	  	}
 	  	theListsByRegion.add(theRegionList);
 	  	
-	  	
+	  	if(org.jlab.rec.cvt.Constants.useIndexedSeedSearch && this.findCandidatesInPhiWindows(theListsByRegion, bmt_crosses, crossList, trkCnds)) {
+	  		crossList.addAll(trkCnds);
+	  		return crossList;
+	  	}
 	  	
 	  	int[][] C = new int[][] {
 	  			{1,2,3},{1,2,4},{1,3,4},{2,3,4}
@@ -144,6 +152,301 @@ public class HelixCrossListFinder {
 
 	}
 
+	private static final int KEYBITS = 14; // the bits of a cross index in a seed candidate key
+	
+	/**
+	 * Finds the same seeds as the nested loops over the regions of findCandidateCrossLists, in the same order, but only visits the 
+	 * combinations of crosses inside the windows in azimuth allowed by the opening angle cuts (phi12cut, phi13cut, phi14cut).  
+	 * For a combination of 4 crosses, the nested loops only use the 3-cross seeds of the combination which fail the 4-cross seed; 
+	 * as a 3-cross seed is kept only if its crosses are not used by a previous seed, only the first combination where a 3-cross seed 
+	 * is tried matters, and it is found from the passing seeds of the first 3 regions.  The 3-cross seed returned for each 
+	 * combination whose cross in the 4th region fails the link is added once.
+	 * @param theListsByRegion the SVT crosses by region, sorted by azimuth
+	 * @param bmt_crosses the BMT crosses
+	 * @param crossList the cross list
+	 * @param trkCnds the list of seeds to which the seeds are added
+	 * @return false if there are too many crosses to index, then the nested loops are used
+	 */
+	private boolean findCandidatesInPhiWindows(List<ArrayList<Cross>> theListsByRegion, ArrayList<Cross> bmt_crosses, 
+			CrossList crossList, ArrayList<ArrayList<Cross>> trkCnds) {
+		int nreg = theListsByRegion.size();
+		if(nreg!=3 && nreg!=4)
+			return true;
+		RegionIndex[] index = new RegionIndex[nreg];
+		for(int r = 0; r<nreg; r++) {
+			if(theListsByRegion.get(r).size()>=(1<<KEYBITS))
+				return false;
+			index[r] = new RegionIndex(theListsByRegion.get(r));
+			if(index[r].hasNaN) // the cuts are not applied to undefined points
+				return false;
+		}
+		List<ArrayList<Cross>> L = theListsByRegion;
+		List<SeedCandidate> cands = new ArrayList<SeedCandidate>();
+		int[] w2 = new int[index[1].n];
+		int[] w3 = new int[index[2].n];
+		int[] w4 = nreg==4 ? new int[index[3].n] : null;
+		
+		if(nreg==3) {
+			for(int i1 = 0; i1<index[0].n; i1++) {
+				int n2 = index[1].fillWindow(index[0], i1, Constants.phi12cut, w2);
+				int n3 = index[2].fillWindow(index[0], i1, Constants.phi13cut, w3);
+				for(int j2 = 0; j2<n2; j2++) 
+					for(int j3 = 0; j3<n3; j3++) {
+						Seed trkCand = this.findCandUsingThreeCrosses(L.get(0).get(i1), L.get(1).get(w2[j2]), L.get(2).get(w3[j3]));
+						if(trkCand!=null)
+							cands.add(new SeedCandidate(getKey(i1, w2[j2], w3[j3], 0, 0), trkCand, false));
+					}
+			}
+		} else {
+			int N2 = index[1].n;
+			int N3 = index[2].n;
+			// the passing seeds in regions 1,2,3, by pair of crosses
+			Map<Integer, BitSet> passing12 = new HashMap<Integer, BitSet>(); // the passing crosses in region 3 for a pair in regions 1,2
+			Map<Integer, BitSet> passing13 = new HashMap<Integer, BitSet>(); // the passing crosses in region 2 for a pair in regions 1,3
+			Map<Integer, BitSet> passing23 = new HashMap<Integer, BitSet>(); // the passing crosses in region 1 for a pair in regions 2,3
+			for(int i1 = 0; i1<index[0].n; i1++) {
+				int n2 = index[1].fillWindow(index[0], i1, Constants.phi12cut, w2);
+				int n3 = index[2].fillWindow(index[0], i1, Constants.phi13cut, w3);
+				int n4 = index[3].fillWindow(index[0], i1, Constants.phi14cut, w4);
+				Arrays.sort(w4, 0, n4);
+				for(int j2 = 0; j2<n2; j2++) {
+					int i2 = w2[j2];
+					for(int j3 = 0; j3<n3; j3++) {
+						int i3 = w3[j3];
+						Seed ct3 = this.findCandUsingThreeCrosses(L.get(0).get(i1), L.get(1).get(i2), L.get(2).get(i3));
+						if(ct3==null)
+							continue;
+						addBit(passing12, i1*N2+i2, i3);
+						addBit(passing13, i1*N3+i3, i2);
+						addBit(passing23, i2*N3+i3, i1);
+						// the crosses in region 4 outside the window fail the link, as well as the first cross not linked
+						int firstFailing = -1;
+						int next = 0;
+						for(int j4 = 0; j4<n4; j4++) {
+							int i4 = w4[j4];
+							if(firstFailing==-1 && i4>next)
+								firstFailing = next;
+							next = i4+1;
+							Seed ct = this.linkToFourthRegion(ct3, L.get(3).get(i4));
+							if(ct!=ct3)
+								cands.add(new SeedCandidate(getKey(i1, i2, i3, i4, 0), ct, false));
+							else if(firstFailing==-1)
+								firstFailing = i4;
+						}
+						if(firstFailing==-1 && next<index[3].n)
+							firstFailing = next;
+						if(firstFailing!=-1)
+							cands.add(new SeedCandidate(getKey(i1, i2, i3, firstFailing, 0), ct3, false));
+					}
+				}
+			}
+			// the 3 out of 4 seeds, tried in the first combination in which the seed in regions 1,2,3 fails
+			for(int i1 = 0; i1<index[0].n; i1++) {
+				int n4 = index[3].fillWindow(index[0], i1, Constants.phi13cut, w4);
+				int n2 = index[1].fillWindow(index[0], i1, Constants.phi12cut, w2);
+				for(int j2 = 0; j2<n2; j2++) {
+					int i3 = firstClearBit(passing12.get(i1*N2+w2[j2]), N3);
+					if(i3==-1)
+						continue;
+					for(int j4 = 0; j4<n4; j4++) {
+						Seed trkCand = this.findCandUsingThreeCrosses(L.get(0).get(i1), L.get(1).get(w2[j2]), L.get(3).get(w4[j4]));
+						if(trkCand!=null)
+							cands.add(new SeedCandidate(getKey(i1, w2[j2], i3, w4[j4], 1), trkCand, true));
+					}
+				}
+				int n3 = index[2].fillWindow(index[0], i1, Constants.phi12cut, w3);
+				for(int j3 = 0; j3<n3; j3++) {
+					int i2 = firstClearBit(passing13.get(i1*N3+w3[j3]), N2);
+					if(i2==-1)
+						continue;
+					for(int j4 = 0; j4<n4; j4++) {
+						Seed trkCand = this.findCandUsingThreeCrosses(L.get(0).get(i1), L.get(2).get(w3[j3]), L.get(3).get(w4[j4]));
+						if(trkCand!=null)
+							cands.add(new SeedCandidate(getKey(i1, i2, w3[j3], w4[j4], 2), trkCand, true));
+					}
+				}
+			}
+			for(int i2 = 0; i2<N2; i2++) {
+				int n3 = index[2].fillWindow(index[1], i2, Constants.phi12cut, w3);
+				int n4 = index[3].fillWindow(index[1], i2, Constants.phi13cut, w4);
+				for(int j3 = 0; j3<n3; j3++) {
+					int i1 = firstClearBit(passing23.get(i2*N3+w3[j3]), index[0].n);
+					if(i1==-1)
+						continue;
+					for(int j4 = 0; j4<n4; j4++) {
+						Seed trkCand = this.findCandUsingThreeCrosses(L.get(1).get(i2), L.get(2).get(w3[j3]), L.get(3).get(w4[j4]));
+						if(trkCand!=null)
+							cands.add(new SeedCandidate(getKey(i1, i2, w3[j3], w4[j4], 3), trkCand, true));
+					}
+				}
+			}
+		}
+		
+		// add the seeds in the order of the nested loops
+		Collections.sort(cands);
+		for(SeedCandidate cand : cands) {
+			Seed trkCand = cand.seed;
+			if(cand.isThreeOutOfFour) {
+				if(crossList.ContainsNot(trkCnds,trkCand)==false || trkCand.size()<3)
+					continue;
+			}
+			if(bmt_crosses.size()>0) {
+				trkCnds.addAll(this.findCandUsingMicroMegas(trkCand, bmt_crosses));
+			} else {
+				trkCnds.add(trkCand);
+			}
+		}
+		return true;
+	}
+	
+	private static long getKey(int i1, int i2, int i3, int i4, int combination) {
+		return ((((((long) i1<<KEYBITS | i2)<<KEYBITS | i3)<<KEYBITS) | i4)<<2) | combination;
+	}
+	
+	private static void addBit(Map<Integer, BitSet> bits, int pair, int i) {
+		BitSet set = bits.get(pair);
+		if(set==null) {
+			set = new BitSet();
+			bits.put(pair, set);
+		}
+		set.set(i);
+	}
+	
+	/**
+	 * 
+	 * @return the first index in [0, n) not set, -1 if all are set
+	 */
+	private static int firstClearBit(BitSet set, int n) {
+		if(set==null)
+			return 0;
+		int i = set.nextClearBit(0);
+		return i<n ? i : -1;
+	}
+	
+	/**
+	 * A seed found in a combination of crosses, with its position in the nested loops over the regions
+	 */
+	private static class SeedCandidate implements Comparable<SeedCandidate> {
+		final long key;
+		final Seed seed;
+		final boolean isThreeOutOfFour;
+		
+		SeedCandidate(long key, Seed seed, boolean isThreeOutOfFour) {
+			this.key = key;
+			this.seed = seed;
+			this.isThreeOutOfFour = isThreeOutOfFour;
+		}
+
+		@Override
+		public int compareTo(SeedCandidate arg) {
+			return this.key < arg.key ? -1 : this.key == arg.key ? 0 : 1;
+		}
+	}
+	
+	/**
+	 * The crosses of a region indexed by azimuth, used to find the crosses within an opening angle of a cross
+	 */
+	private static class RegionIndex {
+		final int n;
+		final double[] phi;			// the sorted azimuths
+		final int[] order;			// the index of the cross in the region list, in the order of the azimuths
+		final double[] crossPhi;	// the azimuth of each cross of the region list
+		final double[] theta;		// the polar angle of each cross of the region list
+		boolean hasNaN = false;
+		double thetaMin = Math.PI;
+		double thetaMax = 0;
+		
+		RegionIndex(List<Cross> crosses) {
+			n = crosses.size();
+			phi = new double[n];
+			order = new int[n];
+			theta = new double[n];
+			crossPhi = new double[n];
+			for(int i = 0; i<n; i++) {
+				Point3D p = crosses.get(i).get_Point();
+				if(Double.isNaN(p.x()) || Double.isNaN(p.y()) || Double.isNaN(p.z()))
+					hasNaN = true;
+				crossPhi[i] = Math.atan2(p.y(), p.x());
+				theta[i] = Math.atan2(Math.sqrt(p.x()*p.x()+p.y()*p.y()), p.z());
+				thetaMin = Math.min(thetaMin, theta[i]);
+				thetaMax = Math.max(thetaMax, theta[i]);
+			}
+			Integer[] sorted = new Integer[n];
+			for(int i = 0; i<n; i++)
+				sorted[i] = i;
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i1, Integer i2) {
+					return Double.compare(crossPhi[i1], crossPhi[i2]);
+				}
+			});
+			for(int i = 0; i<n; i++) {
+				order[i] = sorted[i];
+				phi[i] = crossPhi[sorted[i]];
+			}
+		}
+		
+		/**
+		 * Finds the crosses of this region which may be within an opening angle of a cross of another region.  With the polar angles 
+		 * theta1 and theta2 of the crosses, cos(angle) = cos(theta1)cos(theta2) + sin(theta1)sin(theta2)cos(dphi), so that the opening 
+		 * angle is below the cut only if cos(dphi) is larger than the minimum of (cos(cut) - cos(theta1)cos(theta2))/(sin(theta1)sin(theta2)) 
+		 * over the polar angles of this region.
+		 * @param other the index of the region of the cross
+		 * @param i the index of the cross in its region list
+		 * @param cut the opening angle cut in degrees
+		 * @param out the array filled with the indexes of the crosses in the region list
+		 * @return the number of crosses
+		 */
+		int fillWindow(RegionIndex other, int i, double cut, int[] out) {
+			double cosCut = Math.cos(Math.toRadians(cut));
+			double cos1 = Math.cos(other.theta[i]);
+			double sin1 = Math.sin(other.theta[i]);
+			double fmin = Math.min(this.minCosDeltaPhi(thetaMin, cosCut, cos1, sin1), this.minCosDeltaPhi(thetaMax, cosCut, cos1, sin1));
+			if(Math.abs(cos1/cosCut)<=1) {
+				double thetaStar = Math.acos(cos1/cosCut);
+				if(thetaStar>thetaMin && thetaStar<thetaMax)
+					fmin = Math.min(fmin, this.minCosDeltaPhi(thetaStar, cosCut, cos1, sin1));
+			}
+			if(fmin>1)
+				return 0;
+			int nout = 0;
+			if(fmin<=-1) {
+				for(int j = 0; j<n; j++)
+					out[nout++] = order[j];
+				return nout;
+			}
+			double dphi = Math.acos(fmin) + 1.e-6;
+			double phi1 = other.crossPhi[i];
+			double lo = phi1 - dphi;
+			double hi = phi1 + dphi;
+			if(lo<-Math.PI) {
+				nout = this.fillRange(lo+2*Math.PI, Math.PI, out, nout);
+				nout = this.fillRange(-Math.PI, hi, out, nout);
+			} else if(hi>Math.PI) {
+				nout = this.fillRange(-Math.PI, hi-2*Math.PI, out, nout);
+				nout = this.fillRange(lo, Math.PI, out, nout);
+			} else {
+				nout = this.fillRange(lo, hi, out, nout);
+			}
+			return nout;
+		}
+		
+		private double minCosDeltaPhi(double theta2, double cosCut, double cos1, double sin1) {
+			return (cosCut - cos1*Math.cos(theta2))/(sin1*Math.sin(theta2));
+		}
+		
+		private int fillRange(double lo, double hi, int[] out, int nout) {
+			int j = Arrays.binarySearch(phi, lo);
+			if(j<0)
+				j = -j-1;
+			while(j>0 && phi[j-1]>=lo)
+				j--;
+			for(; j<n && phi[j]<=hi; j++)
+				out[nout++] = order[j];
+			return nout;
+		}
+	}
+	
 	private int match(int r1, int i1, int i2, int i3, int i4) {
 		int l1 = -1;
 		if(r1==1)
@@ -177,36 +480,44 @@ public class HelixCrossListFinder {
     	}
     	
     	
+    	// the cuts on each BMT cross only depend on the seed, so they are applied once per cross
+    	boolean[] passC = new boolean[BMTCcrosses.size()];
+    	for(int i = 0; i<BMTCcrosses.size(); i++)
+    		passC[i] = this.passCcross(trkCand, BMTCcrosses.get(i));
+    	boolean[] passZ = new boolean[BMTZcrosses.size()];
+    	for(int i = 0; i<BMTZcrosses.size(); i++)
+    		passZ[i] = this.passZcross(trkCand, BMTZcrosses.get(i));
+    	
     	if(BMTCcrosses.size()>0 && BMTZcrosses.size()>0)
-	    	for(Cross bmt_Ccross : BMTCcrosses) { // C-detector   		
-	    		for(Cross bmt_Zcross : BMTZcrosses) { // Z-detector
+	    	for(int ic = 0; ic<BMTCcrosses.size(); ic++) { // C-detector   		
+	    		for(int iz = 0; iz<BMTZcrosses.size(); iz++) { // Z-detector
 		    		ArrayList<Cross> BMTTrkSeed = new ArrayList<Cross>();
 		    		
-		    		if(this.passCcross(trkCand, bmt_Ccross))
-		    			BMTTrkSeed.add(bmt_Ccross);
+		    		if(passC[ic])
+		    			BMTTrkSeed.add(BMTCcrosses.get(ic));
 		    		
-		    		if(this.passZcross(trkCand, bmt_Zcross))
-		    			BMTTrkSeed.add(bmt_Zcross);
+		    		if(passZ[iz])
+		    			BMTTrkSeed.add(BMTZcrosses.get(iz));
 		    		trkBMTCands.add(BMTTrkSeed); 
 		    	}
 	    	}
        	if(BMTCcrosses.size()>0 && BMTZcrosses.size()==0)
-	    	for(Cross bmt_Ccross : BMTCcrosses) { // C-detector   		
+	    	for(int ic = 0; ic<BMTCcrosses.size(); ic++) { // C-detector   		
 	    		
 	    		ArrayList<Cross> BMTTrkSeed = new ArrayList<Cross>();
 	    		
-	    		if(this.passCcross(trkCand, bmt_Ccross))
-	    			BMTTrkSeed.add(bmt_Ccross);
+	    		if(passC[ic])
+	    			BMTTrkSeed.add(BMTCcrosses.get(ic));
 
 	    		trkBMTCands.add(BMTTrkSeed);
 		    	}
     	if(BMTZcrosses.size()>0 && BMTCcrosses.size()==0)
-	    	for(Cross bmt_Zcross : BMTZcrosses) { // C-detector   		
+	    	for(int iz = 0; iz<BMTZcrosses.size(); iz++) { // C-detector   		
 	    		
 	    		ArrayList<Cross> BMTTrkSeed = new ArrayList<Cross>();
 	    		
-	    		if(this.passZcross(trkCand, bmt_Zcross))
-	    			BMTTrkSeed.add(bmt_Zcross);
+	    		if(passZ[iz])
+	    			BMTTrkSeed.add(BMTZcrosses.get(iz));
 
 	    		trkBMTCands.add(BMTTrkSeed);
 		    	}	    	
@@ -238,6 +238,12 @@ public class CVTCosmicsReconstruction extends DetectorReconstruction{
 			boolean kFlag = Boolean.parseBoolean(DB);
 			org.jlab.rec.cvt.Constants.DEBUGMODE = kFlag;
 		}
+		if(config.hasItem("CVT", "sparseClustering")) {
+			String SC = config.asString("CVT", "sparseClustering");
+			boolean kFlag = Boolean.parseBoolean(SC);
+			org.jlab.rec.cvt.Constants.useSparseClustering = kFlag;
+			System.out.println("\n\n********** Sparse strip clustering " + kFlag + "  *************");
+		}
 		
 		if(config.hasItem("SVT", "FirstThr")) {
 			org.jlab.rec.cvt.svt.Constants.initThresholds = Integer.parseInt(config.asString("SVT", "FirstThr"));
@@ -253,6 +259,18 @@ public class CVTCosmicsReconstruction extends DetectorReconstruction{
 			boolean kFlag = Boolean.parseBoolean(DB);
 			org.jlab.rec.cvt.svt.Constants.LAYEREFFS= kFlag;
 		}
+		if(config.hasItem("SVT", "closedFormStrip")) {
+			String CF = config.asString("SVT", "closedFormStrip");
+			boolean kFlag = Boolean.parseBoolean(CF);
+			org.jlab.rec.cvt.svt.Constants.closedFormNearestStrip = kFlag;
+			System.out.println("\n\n********** Closed-form nearest strip " + kFlag + "  *************");
+		}
+		if(config.hasItem("SVT", "analyticIntersection")) {
+			String AI = config.asString("SVT", "analyticIntersection");
+			boolean kFlag = Boolean.parseBoolean(AI);
+			org.jlab.rec.cvt.svt.Constants.analyticHelixPlaneIntersection = kFlag;
+			System.out.println("\n\n********** Analytic helix-module plane intersection " + kFlag + "  *************");
+		}
 		
 	}
 	
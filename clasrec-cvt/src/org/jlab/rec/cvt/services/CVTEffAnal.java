@@ -341,6 +341,12 @@ public class CVTEffAnal extends DetectorReconstruction{
 			boolean kFlag = Boolean.parseBoolean(DB);
 			org.jlab.rec.cvt.Constants.DEBUGMODE = kFlag;
 		}
+		if(config.hasItem("CVT", "indexedSeeds")) {
+			String IS = config.asString("CVT", "indexedSeeds");
+			boolean kFlag = Boolean.parseBoolean(IS);
+			org.jlab.rec.cvt.Constants.useIndexedSeedSearch = kFlag;
+			System.out.println("\n\n********** Indexed seed search " + kFlag + "  *************");
+		}
 		if(config.hasItem("SVT", "LayerEffs")) {
 			String DB = config.asString("SVT", "LayerEffs");
 			boolean kFlag = Boolean.parseBoolean(DB);
@@ -125,6 +125,8 @@ public class Constants {
 
 	public static ArrayList<ArrayList<Shape3D>> MODULEPLANES;
 	
+	public static ModuleTransforms MODULETRANSFORMS; // the local to lab frame transforms of the modules, built by Load()
+	
 	// track list cut-off
 	public static int maxNcands=200;
 	public static boolean hasWidthResolution = false;
@@ -150,6 +152,12 @@ public class Constants {
 	public static boolean newGeometry = true;
 
 	public static boolean LAYEREFFS = false;
+
+	// find the strip under a track point with the closed-form solver instead of the scan
+	public static boolean closedFormNearestStrip = false;
+
+	// intersect the helix with the module planes analytically instead of scanning the radius
+	public static boolean analyticHelixPlaneIntersection = false;
 	
 	
 	
@@ -221,6 +229,9 @@ public class Constants {
 		
 		LAYRGAP = MODULERADIUS[1][0] - MODULERADIUS[0][0] ;
 		
+		MODULETRANSFORMS = new ModuleTransforms();
+		Geometry.fillPlaneTables();
+		
 		{
 			ArrayList<ArrayList<Shape3D>> modules = new ArrayList<ArrayList <Shape3D> >();
 			Geometry geo = new Geometry();
@@ -19,6 +19,10 @@ public class Geometry {
 		
 	}
 	
+	// the local points of the module frame transforms, reused from one call to the next; a Geometry is used by one thread
+	private final double[] locPoint1 = new double[3];
+	private final double[] locPoint2 = new double[3];
+	
     // Comments on the Geometry of the BST 
 	//------------------------------------
 	// The BST geometry consists of 3 (or 4) superlayers of modules. 
@@ -44,12 +48,12 @@ public class Geometry {
 		
 		public Point3D getPlaneModuleOrigin(int sector, int layer) {
 			//shift the local origin to the physical orign instead of active area
-			Point3D point0 = new Point3D(transformToFrame( sector,  layer, 0, 0, 0, "lab", ""));
+			Point3D point0 = transformToFrame( sector,  layer, 0, 0, 0, ModuleTransforms.LAB, false);
 			return point0;
 		}
 		public Point3D getPlaneModuleEnd(int sector, int layer) {
 			//shift the local origin to the physical orign instead of active area
-			Point3D point0 = new Point3D(transformToFrame( sector,  layer, Constants.ACTIVESENWIDTH, 0, 0, "lab", ""));
+			Point3D point0 = transformToFrame( sector,  layer, Constants.ACTIVESENWIDTH, 0, 0, ModuleTransforms.LAB, false);
 			return point0;
 		}
 		
@@ -138,41 +142,53 @@ public class Geometry {
 		//***
 		public  Point3D transformToFrame(int sector, int layer, double x, double y, double z, String frame, String MiddlePlane) {
 			
-			// global rotation angle
-			double Glob_rangl = ((double) (sector-1)/(double) Constants.NSECT[layer-1])*2.*Math.PI + Constants.PHI0[layer-1];
-			// angle to rotate to global frame
-			double Loc_to_Glob_rangl = Glob_rangl-Constants.LOCZAXISROTATION;
-
-			double gap = 0;
-			if(MiddlePlane.equals("middle")) {
-				if((layer-1)%2==0) { // for a cross take the bottom layer
-					gap = Constants.MODULERADIUS[layer][sector-1]-Constants.MODULERADIUS[layer-1][sector-1];
-				}
-			}
-			double lTx = (Constants.MODULERADIUS[layer-1][sector-1]+0.5*gap)*Math.cos(Glob_rangl);
-			double lTy = (Constants.MODULERADIUS[layer-1][sector-1]+0.5*gap)*Math.sin(Glob_rangl); 
-			double lTz = Constants.Z0[layer-1]; 
-
+			int frameId = -1;
+			if(frame.equals("lab"))
+				frameId = ModuleTransforms.LAB;
+			if(frame.equals("local"))
+				frameId = ModuleTransforms.LOCAL;
 			
-			//rotate and translate
-			double cosRotation = Math.cos(Loc_to_Glob_rangl);
-			double sinRotation = Math.sin(Loc_to_Glob_rangl);
-
-			double xt =0;
-			double yt =0;
-			double zt =0;
-			
-			if(frame.equals("lab")) {
-				 xt = (x-0.5*Constants.ACTIVESENWIDTH)*cosRotation - y*sinRotation + lTx;
-				 yt = (x-0.5*Constants.ACTIVESENWIDTH)*sinRotation + y*cosRotation + lTy;
-				 zt = z + lTz;
-			}
-			if(frame.equals("local")) {
-				 xt=  (x-lTx)*cosRotation +(y-lTy)*sinRotation  + 0.5*Constants.ACTIVESENWIDTH;
-				 yt= -(x-lTx)*sinRotation +(y-lTy)*cosRotation  ;
-				 zt = z - lTz ;
+			return transformToFrame(sector, layer, x, y, z, frameId, MiddlePlane.equals("middle"));
+		}
+		
+		/**
+		 * 
+		 * @param sector the sector
+		 * @param layer the layer
+		 * @param x the x coordinate of the point
+		 * @param y the y coordinate of the point
+		 * @param z the z coordinate of the point
+		 * @param frame the frame to transform to, ModuleTransforms.LAB or ModuleTransforms.LOCAL
+		 * @param middlePlane true for the middle plane between the layers of the region
+		 * @return the transformed point
+		 */
+		public  Point3D transformToFrame(int sector, int layer, double x, double y, double z, int frame, boolean middlePlane) {
+			double[] out = new double[3];
+			transformToFrame(sector, layer, x, y, z, frame, middlePlane, out);
+			return new Point3D(out[0],out[1],out[2]);
+		}
+		
+		/**
+		 * Transforms a point without allocation, with the transforms tabulated by Constants.Load()
+		 * @param sector the sector
+		 * @param layer the layer
+		 * @param x the x coordinate of the point
+		 * @param y the y coordinate of the point
+		 * @param z the z coordinate of the point
+		 * @param frame the frame to transform to, ModuleTransforms.LAB or ModuleTransforms.LOCAL
+		 * @param middlePlane true for the middle plane between the layers of the region
+		 * @param out the array filled with the transformed point
+		 */
+		public  void transformToFrame(int sector, int layer, double x, double y, double z, int frame, boolean middlePlane, double[] out) {
+			ModuleTransforms transforms = Constants.MODULETRANSFORMS;
+			if(transforms!=null) {
+				transforms.transform(sector, layer, x, y, z, frame, middlePlane, out);
+				return;
 			}
-			return new Point3D(xt,yt,zt);
+			// the constants are not loaded yet
+			double[] t = new double[5];
+			ModuleTransforms.fillTransform(sector, layer, middlePlane, t, 0);
+			ModuleTransforms.transform(t, 0, x, y, z, frame, out);
 		}
 		//*** point and its error
 		public  double[] getCrossPars(int sector, int upperlayer, double s1, double s2, String frame, Vector3D trkDir) {
@@ -195,7 +211,7 @@ public class Geometry {
 			double LC_x = LC[0];
 			double LC_z = LC[1];
 			
-			Point3D crPoint = transformToFrame( sector,  upperlayer-1, LC_x, 0, LC_z, "lab", "middle");
+			Point3D crPoint = transformToFrame( sector,  upperlayer-1, LC_x, 0, LC_z, ModuleTransforms.LAB, true);
 			
 			vals[0] = crPoint.x();
 			vals[1] = crPoint.y();
@@ -270,10 +286,25 @@ public class Geometry {
 
 		public double calcNearestStrip(double X, double Y, double Z, int layer, int sect) {
 			
-			Point3D LocPoint = this.transformToFrame( sect, layer, X, Y, Z, "local", ""); 
+			double[] LocPoint = locPoint1;
+			this.transformToFrame( sect, layer, X, Y, Z, ModuleTransforms.LOCAL, false, LocPoint); 
 			
-			double x = LocPoint.x();
-			double z = LocPoint.z();
+			double x = LocPoint[0];
+			double z = LocPoint[2];
+			
+			if(Constants.closedFormNearestStrip)
+				return solveNearestStrip(x, z, layer);
+			return scanNearestStrip(x, z, layer);
+		}
+		
+		/**
+		 * Finds the strip under a point by evaluating the strip line on integer then on 0.1-strip candidates
+		 * @param x the local x of the point
+		 * @param z the local z of the point
+		 * @param layer the layer
+		 * @return the strip, to 0.1 strip
+		 */
+		public static double scanNearestStrip(double x, double z, int layer) {
 			
 			double alpha = Constants.STEREOANGLE/(double) (Constants.NSTRIP-1); 
 			
@@ -365,6 +396,77 @@ public class Geometry {
 			//System.out.println(" layer "+layer+" sector "+sect+" strip "+s);
 			return s;
 		}
+		
+		/**
+		 * Finds the strip under a point by inverting the strip line equation x = -+(tan((s-1)*alpha)*z + s*P) + b (layers 1,3,5,7 with the 
+		 * minus sign and b = ACTIVESENWIDTH, layers 2,4,6,8 with the plus sign and b = 0).  
+		 * The linear solution (tan(u) = u) is refined by two Newton steps, with tan expanded to u^5 as the stereo angle is at most 3 deg; 
+		 * the result is exact to better than 1e-6 strip, without any call to tan().
+		 * @param x the local x of the point
+		 * @param z the local z of the point
+		 * @param layer the layer
+		 * @return the fractional strip
+		 */
+		public static double solveNearestStrip(double x, double z, int layer) {
+			double alpha = Constants.STEREOANGLE/(double) (Constants.NSTRIP-1); 
+			double P = Constants.PITCH;
+			
+			// g(s) = tan((s-1)*alpha)*z + s*P = t
+			double t = x;
+			if(layer%2==1) 
+				t = Constants.ACTIVESENWIDTH - x;
+			
+			double az = alpha*z;
+			double s = (t+az)/(az+P);
+			for(int i = 0; i<2; i++) {
+				double u = (s-1)*alpha;
+				double u2 = u*u;
+				double tanu = u*(1. + u2*(1./3. + u2*(2./15.)));
+				double dtanu = 1. + u2*(1. + u2*(2./3.));
+				double dg = az*dtanu + P;
+				if(dg==0) 
+					return scanNearestStrip(x, z, layer);
+				s -= (tanu*z + s*P - t)/dg;
+			}
+			if(s<0.45) // the scan result is set to 1 below 0.5, i.e. for a strip below 0.45 on its 0.1 strip grid
+				s=1;
+			return s;
+		}
+		
+		/**
+		 * The tolerance of the comparison of the closed-form strip solver to the scan, in strips: half the 0.1 strip grid of the scan,
+		 * with a margin for the rounding
+		 */
+		public static final double NEARESTSTRIPTOLERANCE = 0.05 + 1.e-6;
+		
+		/**
+		 * Compares the closed-form strip solver to the scan on random points of the active area of each layer
+		 * @param nPoints the number of points per layer
+		 * @param seed the random seed
+		 * @param tolerance the largest difference allowed between the two strips, in strips
+		 * @return true if the difference between the two strips is within the tolerance for all the points
+		 */
+		public static boolean checkNearestStrip(int nPoints, long seed, double tolerance) {
+			java.util.Random rand = new java.util.Random(seed);
+			double maxDiff = 0;
+			boolean passed = true;
+			for(int l = 1; l<=Constants.NLAYR; l++) {
+				for(int i = 0; i<nPoints; i++) {
+					double x = rand.nextDouble()*Constants.ACTIVESENWIDTH;
+					double z = rand.nextDouble()*Constants.MODULELENGTH;
+					double diff = Math.abs(solveNearestStrip(x, z, l)-scanNearestStrip(x, z, l));
+					if(diff>tolerance && passed) {
+						System.err.println("nearest strip check failed in layer "+l+" at x = "+x+" z = "+z+": closed-form strip "
+								+solveNearestStrip(x, z, l)+" scanned strip "+scanNearestStrip(x, z, l));
+						passed = false;
+					}
+					if(diff>maxDiff)
+						maxDiff = diff;
+				}
+			}
+			System.out.println("largest difference between the closed-form and the scanned nearest strips "+maxDiff+" (tolerance "+tolerance+")");
+			return passed;
+		}
 		//****
 		public  double getSingleStripResolution(int lay, int strip, double Z) { // as a function of local z
 			double Strip = (double) strip;
@@ -417,7 +519,7 @@ public class Geometry {
 
 			Vector3D vecAlongStrip = new Vector3D();
 			Point3D pointOnStrip = new Point3D();
-			Point3D LocPoint = this.transformToFrame( sector, layer, point0.x(), point0.y(), point0.z(), "local", "");
+			Point3D LocPoint = this.transformToFrame( sector, layer, point0.x(), point0.y(), point0.z(), ModuleTransforms.LOCAL, false);
 			
 			if(layer%2==0) { //layers 2,4,6 == top ==j ==>(2) : regular configuration
 				vecAlongStrip = new Vector3D(m2, 0, 1).asUnit(); 
@@ -515,6 +617,11 @@ public class Geometry {
 		//***
 		public  Point3D intersectionOfHelixWithPlane(int layer, int sector, Helix helix) {		    
 			
+			if(Constants.analyticHelixPlaneIntersection && helix.get_curvature()!=0) {
+				Point3D InterPoint = calcHelixIntersectionWithPlane(layer, sector, helix);
+				if(InterPoint!=null)
+					return InterPoint;
+			}
 			int nstep = 1;
 			double stepSize = 0.001;
 			
@@ -549,13 +656,95 @@ public class Geometry {
 		}
 		
 		
+		// the module planes n.p = d in the transverse plane, with the unit normal n = (PLANENX, PLANENY) at the azimuth PLANEPHI and the distance 
+		// to the axis d = PLANED, per layer and sector; the tables are built by Constants.Load()
+		private static double[][] PLANEPHI;
+		private static double[][] PLANENX;
+		private static double[][] PLANENY;
+		private static volatile double[][] PLANED;
+		
+		/**
+		 * Fills the tables of the module planes from the current SVT constants
+		 */
+		static synchronized void fillPlaneTables() {
+			double[][] phi = new double[Constants.NLAYR][Constants.MAXNUMSECT];
+			double[][] nx = new double[Constants.NLAYR][Constants.MAXNUMSECT];
+			double[][] ny = new double[Constants.NLAYR][Constants.MAXNUMSECT];
+			double[][] d = new double[Constants.NLAYR][Constants.MAXNUMSECT];
+			for(int l = 0; l<Constants.NLAYR; l++) {
+				for(int s = 0; s<Constants.NSECT[l]; s++) {
+					double angle = 2.*Math.PI*((double)s/(double)Constants.NSECT[l]) + Constants.PHI0[l];
+					phi[l][s] = angle;
+					nx[l][s] = Math.cos(angle);
+					ny[l][s] = Math.sin(angle);
+					d[l][s] = Constants.MODULERADIUS[l][s];
+				}
+			}
+			PLANEPHI = phi;
+			PLANENX = nx;
+			PLANENY = ny;
+			PLANED = d;
+		}
+		
+		/**
+		 * Intersects the helix with the plane of a module analytically.  In the transverse plane the helix is the circle 
+		 * c + q*R*(-sin(psi), cos(psi)), with psi = phi_at_dca - omega*L at the transverse path length L from the dca, and the plane is n.p = d, 
+		 * so that sin(angle(n) - psi) = (d - n.c)/(q*R); the intersection is the crossing with the smallest positive L on the outgoing half 
+		 * turn, and z = Z0 + L*tandip.
+		 * @param layer the layer
+		 * @param sector the sector
+		 * @param helix the helix, of non-zero curvature
+		 * @return the intersection point, null if the helix does not reach the plane
+		 */
+		public static Point3D calcHelixIntersectionWithPlane(int layer, int sector, Helix helix) {
+			double nx = PLANENX[layer-1][sector-1];
+			double ny = PLANENY[layer-1][sector-1];
+			double d = PLANED[layer-1][sector-1];
+			
+			double omega = helix.get_curvature();
+			double R = 1./Math.abs(omega);
+			double q = Math.signum(omega);
+			double phi0 = helix.get_phi_at_dca();
+			double sinphi0 = Math.sin(phi0);
+			double cosphi0 = Math.cos(phi0);
+			double xc = q*(helix.get_dca()+R)*sinphi0;
+			double yc = -q*(helix.get_dca()+R)*cosphi0;
+			
+			double k = (d - nx*xc - ny*yc)/(q*R);
+			if(Math.abs(k)>1)
+				return null;
+			double beta = Math.asin(k);
+			double a = PLANEPHI[layer-1][sector-1];
+			
+			// the two crossings, psi = a - beta and psi = a - pi + beta, at L = (phi0 - psi)/omega modulo 2 pi R 
+			double turn = 2.*Math.PI*R;
+			double L1 = ((phi0 - a + beta)/omega) % turn;
+			if(L1<0)
+				L1 += turn;
+			double L2 = ((phi0 - a + Math.PI - beta)/omega) % turn;
+			if(L2<0)
+				L2 += turn;
+			double L = Math.min(L1, L2);
+			if(L>Math.PI*R)
+				return null;
+			
+			double psi = phi0 - omega*L;
+			double x = xc - q*R*Math.sin(psi);
+			double y = yc + q*R*Math.cos(psi);
+			double z = helix.get_Z0() + L*helix.get_tandip();
+			
+			return new Point3D(x,y,z);
+		}
+		
 		public Point3D recalcCrossFromTrajectoryIntersWithModulePlanes(int s, double s1, double s2,
 				int l1, int l2, double trajX1, double trajY1, double trajZ1,
 				double trajX2, double trajY2, double trajZ2) {
-			Point3D LocPoint1 = this.transformToFrame(s, l1, trajX1, trajY1, trajZ1, "local", "");	
-			Point3D LocPoint2 = this.transformToFrame(s, l2, trajX2, trajY2, trajZ2, "local", "");	
-			double m = (LocPoint1.x() - LocPoint2.x())/(LocPoint1.z() - LocPoint2.z());
-			double b = LocPoint1.x() - m*LocPoint1.z();
+			double[] LocPoint1 = locPoint1;
+			double[] LocPoint2 = locPoint2;
+			this.transformToFrame(s, l1, trajX1, trajY1, trajZ1, ModuleTransforms.LOCAL, false, LocPoint1);	
+			this.transformToFrame(s, l2, trajX2, trajY2, trajZ2, ModuleTransforms.LOCAL, false, LocPoint2);	
+			double m = (LocPoint1[0] - LocPoint2[0])/(LocPoint1[2] - LocPoint2[2]);
+			double b = LocPoint1[0] - m*LocPoint1[2];
 			
 			double ialpha1 = (s1-1)*org.jlab.rec.cvt.svt.Constants.STEREOANGLE/(double) (org.jlab.rec.cvt.svt.Constants.NSTRIP-1); 
 			//the active area starts at the first strip 	
@@ -576,8 +765,8 @@ public class Geometry {
 			double z2 = (b-b2)/(m2-m);
 			double x2 = m2*z2 +b2;
 			
-			Point3D Point1 = this.transformToFrame(s, l1, x1, 0, z1, "lab", "");
-			Point3D Point2 = this.transformToFrame(s, l2, x2, 0, z2, "lab", "");
+			Point3D Point1 = this.transformToFrame(s, l1, x1, 0, z1, ModuleTransforms.LAB, false);
+			Point3D Point2 = this.transformToFrame(s, l2, x2, 0, z2, ModuleTransforms.LAB, false);
 			// unit vec along dir of track
 			Vector3D t = new Vector3D(Point2.x()-Point1.x(), Point2.y()-Point1.y(), Point2.z()-Point1.z()).asUnit();
 			//normal to plane of module
@@ -651,6 +840,8 @@ public class Geometry {
 
 		
 		public static void main (String arg[]) throws FileNotFoundException {
+			if(checkNearestStrip(100000, 123, NEARESTSTRIPTOLERANCE)==false)
+				System.exit(1);
 			Constants.Load();
 			
 	    	Geometry geo = new Geometry();
@@ -0,0 +1,106 @@
+package org.jlab.rec.cvt.svt;
+
+/**
+ * The table of the transforms between the local frame of each SVT module and the lab frame.
+ * <p>
+ * Each transform is a rotation about the z axis followed by a translation; the cosine and sine of the rotation angle and the
+ * translation are computed once per (layer, sector), for the module plane and for the middle plane between the two layers of a
+ * region, with the same expressions as Geometry.transformToFrame, so that the transformed points are identical.
+ * The table is built by Constants.Load() and is not modified afterwards.
+ * @author ziegler
+ *
+ */
+public class ModuleTransforms {
+
+	/**
+	 * the frames to transform to
+	 */
+	public static final int LAB = 0;
+	public static final int LOCAL = 1;
+
+	private static final int NPARS = 5;			// cos, sin, lTx, lTy, lTz
+
+	private final double[] table = new double[Constants.NLAYR*Constants.MAXNUMSECT*2*NPARS];
+
+	/**
+	 * Builds the table from the current SVT constants
+	 */
+	public ModuleTransforms() {
+		for(int l = 1; l<=Constants.NLAYR; l++) {
+			for(int s = 1; s<=Constants.NSECT[l-1]; s++) {
+				fillTransform(s, l, false, table, index(s, l, false));
+				fillTransform(s, l, true, table, index(s, l, true));
+			}
+		}
+	}
+
+	private static int index(int sector, int layer, boolean middlePlane) {
+		return (((layer-1)*Constants.MAXNUMSECT + sector-1)*2 + (middlePlane ? 1 : 0))*NPARS;
+	}
+
+	/**
+	 * Computes the transform of a module
+	 * @param sector the sector
+	 * @param layer the layer
+	 * @param middlePlane true for the middle plane between the layers of the region (for the bottom layer)
+	 * @param t the array filled with the cosine and sine of the rotation angle and the translation
+	 * @param offset the position of the transform in the array
+	 */
+	static void fillTransform(int sector, int layer, boolean middlePlane, double[] t, int offset) {
+		// global rotation angle
+		double Glob_rangl = ((double) (sector-1)/(double) Constants.NSECT[layer-1])*2.*Math.PI + Constants.PHI0[layer-1];
+		// angle to rotate to global frame
+		double Loc_to_Glob_rangl = Glob_rangl-Constants.LOCZAXISROTATION;
+
+		double gap = 0;
+		if(middlePlane) {
+			if((layer-1)%2==0) { // for a cross take the bottom layer
+				gap = Constants.MODULERADIUS[layer][sector-1]-Constants.MODULERADIUS[layer-1][sector-1];
+			}
+		}
+		t[offset]   = Math.cos(Loc_to_Glob_rangl);
+		t[offset+1] = Math.sin(Loc_to_Glob_rangl);
+		t[offset+2] = (Constants.MODULERADIUS[layer-1][sector-1]+0.5*gap)*Math.cos(Glob_rangl);
+		t[offset+3] = (Constants.MODULERADIUS[layer-1][sector-1]+0.5*gap)*Math.sin(Glob_rangl);
+		t[offset+4] = Constants.Z0[layer-1];
+	}
+
+	/**
+	 * Transforms a point between the local frame of a module and the lab frame
+	 * @param sector the sector
+	 * @param layer the layer
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param z the z coordinate of the point
+	 * @param frame the frame to transform to, LAB or LOCAL
+	 * @param middlePlane true for the middle plane between the layers of the region
+	 * @param out the array filled with the transformed point
+	 */
+	public void transform(int sector, int layer, double x, double y, double z, int frame, boolean middlePlane, double[] out) {
+		transform(table, index(sector, layer, middlePlane), x, y, z, frame, out);
+	}
+
+	static void transform(double[] t, int offset, double x, double y, double z, int frame, double[] out) {
+		double cosRotation = t[offset];
+		double sinRotation = t[offset+1];
+		double lTx = t[offset+2];
+		double lTy = t[offset+3];
+		double lTz = t[offset+4];
+
+		if(frame==LAB) {
+			out[0] = (x-0.5*Constants.ACTIVESENWIDTH)*cosRotation - y*sinRotation + lTx;
+			out[1] = (x-0.5*Constants.ACTIVESENWIDTH)*sinRotation + y*cosRotation + lTy;
+			out[2] = z + lTz;
+			return;
+		}
+		if(frame==LOCAL) {
+			out[0] =  (x-lTx)*cosRotation +(y-lTy)*sinRotation  + 0.5*Constants.ACTIVESENWIDTH;
+			out[1] = -(x-lTx)*sinRotation +(y-lTy)*cosRotation  ;
+			out[2] = z - lTz ;
+			return;
+		}
+		out[0] = 0;
+		out[1] = 0;
+		out[2] = 0;
+	}
+}
@@ -23,7 +23,7 @@ import org.jlab.utils.CLASResources;
 public class TrkSwimmer {
 
 	private static Solenoid sField;
-	private static Swimmer swimmer;
+	private Swimmer swimmer; // one swimmer per instance, so that instances can be used concurrently
 	// get some fit results
 	
 	private  double _x0;
@@ -254,12 +254,12 @@ public class TrkSwimmer {
 		TrkSwimmer.sField = sField;
 	}
 
-	public static Swimmer getSwimmer() {
+	public Swimmer getSwimmer() {
 		return swimmer;
 	}
 
-	public static void setSwimmer(Swimmer swimmer) {
-		TrkSwimmer.swimmer = swimmer;
+	public void setSwimmer(Swimmer swimmer) {
+		this.swimmer = swimmer;
 	}
 
 	public double get_x0() {
@@ -1,5 +1,9 @@
 package org.jlab.rec.dc;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 import org.jlab.clasrec.utils.DatabaseConstantProvider;
 
 /**
@@ -13,6 +17,10 @@ public class CalibrationConstantsLoader {
 		// TODO Auto-generated constructor stub
 	}
 	public static boolean CSTLOADED = false;
+	/**
+	 * The run number of the calibration constants
+	 */
+	public static final int CALIBRUN = 10;
 	
 	// Instantiating the constants arrays
 	public static double[][] PAR1 			= new double[6][6];
@@ -24,7 +32,7 @@ public class CalibrationConstantsLoader {
 	public static int[][][][] STATUS 			= new int[6][6][6][112];
 	
 	 //Calibration parameters from DB    
-    static DatabaseConstantProvider dbprovider = new DatabaseConstantProvider(10,"default");
+    static DatabaseConstantProvider dbprovider = new DatabaseConstantProvider(CALIBRUN,"default");
     //private Detector ftofDetector;
     public static boolean areCalibConstantsLoaded = false;
     
@@ -32,7 +40,7 @@ public class CalibrationConstantsLoader {
     	
 		if (CSTLOADED) return;
 		
-		dbprovider = new DatabaseConstantProvider(10,Constants.DBVAR); // reset using the variation
+		dbprovider = new DatabaseConstantProvider(CALIBRUN,Constants.DBVAR); // reset using the variation
 	    // load table reads entire table and makes an array of variables for each column in the table.
 	    dbprovider.loadTable("/calibration/dc/signal_generation/dc_resolution");
 	   
@@ -65,6 +73,35 @@ public class CalibrationConstantsLoader {
 	    
 	    CSTLOADED = true;
     }
+    
+    /**
+     * Writes the resolution parameters to a snapshot
+     * @param out the snapshot output stream
+     * @throws IOException if the parameters cannot be written
+     */
+    static void writeSnapshot(DataOutputStream out) throws IOException {
+    	double[][][] pars = new double[][][] {PAR1, PAR2, PAR3, PAR4, SCAL};
+    	for(double[][] par : pars)
+    		for(int iSec = 0; iSec< 6; iSec++)
+    			DCSnapshot.putDoubles(out, par[iSec]);
+    }
+    
+    /**
+     * Reads the resolution parameters from a snapshot written by writeSnapshot
+     * @param in the snapshot buffer
+     */
+    static void readSnapshot(ByteBuffer in) {
+    	double[][][] pars = new double[5][6][];
+    	for(int p = 0; p< 5; p++)
+    		for(int iSec = 0; iSec< 6; iSec++)
+    			pars[p][iSec] = DCSnapshot.getDoubles(in, 6);
+    	PAR1 = pars[0];
+    	PAR2 = pars[1];
+    	PAR3 = pars[2];
+    	PAR4 = pars[3];
+    	SCAL = pars[4];
+    	CSTLOADED = true;
+    }
    
     
     
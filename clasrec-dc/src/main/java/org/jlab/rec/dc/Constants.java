@@ -96,6 +96,23 @@ public class Constants {
 
 	public static final int MAXNBHITS = 350;
 
+	/**
+	 * Run the hit-based tracking in a degraded mode in high background events instead of dropping the events with too many crosses
+	 */
+	public static boolean useDegradedMode = false;
+	/**
+	 * The number of hits above which a sector is overloaded and processed in the degraded mode
+	 */
+	public static int MAXNBHITSPERSECTOR = 500;
+	/**
+	 * The maximum number of contiguous hit wires in a layer of an overloaded sector; longer columns of hits are removed
+	 */
+	public static int DEGRADEDMAXCOLUMNSIZE = 4;
+	/**
+	 * The maximum number of cross lists fitted in an overloaded sector
+	 */
+	public static int DEGRADEDMAXNBCROSSLISTS = 20;
+
 	public static final double MINTRKMOM = 0.050;
 
 	public static final double MAXTRKMOM = 20.0;
@@ -106,14 +123,123 @@ public class Constants {
 
 
 	public static boolean LAYEREFFS = false;
+	/**
+	 * Compute the layer efficiencies from leave-one-layer-out fits derived from the hit-based cluster fits instead of re-clustering the hits once per layer
+	 */
+	public static boolean useIncrementalLayerEffs = false;
 	
 	public static  boolean DEBUGPRINTMODE = false;
 	
 	public static boolean areConstantsLoaded = false;
 
 	public static boolean useKalmanFilter = true;
+	
+	/**
+	 * Kalman filter transport stepping: fixed 1 mm steps (default) or steps adapted to the field variation
+	 */
+	public static boolean useAdaptiveKFStepping = false;
+	/**
+	 * Tolerance (in cm) on the position error made in an adaptive Kalman filter transport step
+	 */
+	public static double KFSTEPTOLERANCE = 1.e-3;
+	/**
+	 * Minimum and maximum step sizes (in cm) used in the adaptive Kalman filter transport
+	 */
+	public static double KFMINSTEPSIZE = 0.1;
+	public static double KFMAXSTEPSIZE = 20.0;
+
+	/**
+	 * Kalman filter iterations: re-seed a new fit from the crosses at each iteration (default) or warm-start each iteration from the 
+	 * previous fitted state, stopping on convergence
+	 */
+	public static boolean useKFIterationDriver = false;
+	/**
+	 * Maximum number of Kalman filter iterations per track candidate
+	 */
+	public static int KFMAXITERATIONS = 30;
+	/**
+	 * Relative change of the chi^2 and of the state vector components below which the Kalman filter iterations are converged
+	 */
+	public static double KFCONVTOLERANCE = 1.e-3;
+	
+	/**
+	 * Resolve the overlaps between track candidates sharing crosses or segments by fit quality, before swimming them to the target,
+	 * instead of only comparing the adjacent candidates of the time-based tracks
+	 */
+	public static boolean useOverlapResolver = false;
+	
+	/**
+	 * Record the time spent in each stage of the DC services and the numbers of reconstructed objects, and print a summary at shutdown
+	 */
+	public static boolean useStageMonitor = false;
+	/**
+	 * Write the stage times of each event to a timing bank when the stage monitoring is on
+	 */
+	public static boolean STAGEMONITORBANK = false;
 
 	public static boolean OUTOFTIMEFLAG = true;
+	
+	/**
+	 * Calculate the integral Bdl of the track candidates by adaptive Simpson quadrature instead of fixed 1 cm steps
+	 */
+	public static boolean useAdaptiveIntBdl = false;
+	/**
+	 * Absolute error target (in T.cm) of the adaptive integral Bdl quadrature
+	 */
+	public static double INTBDLTOLERANCE = 0.01;
+	/**
+	 * Minimum and maximum interval subdivision depths of the adaptive integral Bdl quadrature
+	 */
+	public static int INTBDLMINDEPTH = 3;
+	public static int INTBDLMAXDEPTH = 12;
+	
+	/**
+	 * Obtain the trajectory state vectors at the 36 layer planes from a single swim through all the planes instead of one swim per plane
+	 */
+	public static boolean useSinglePassTrajectorySwim = false;
+	
+	/**
+	 * Run the hit-based tracking of the six sectors concurrently
+	 */
+	public static boolean useSectorParallelHB = false;
+	/**
+	 * Number of threads in the pool running the sectors in the sector-parallel hit-based tracking
+	 */
+	public static int NBSECTORTHREADS = 6;
+	
+	/**
+	 * Fill, prune and clump the hits using wire occupancy bitmaps reused from one event to the next instead of a new hit array per event
+	 */
+	public static boolean useOccupancyBitmapClustering = false;
+
+	/**
+	 * Pass the hit-based hits and track candidates to the time-based tracking in memory when both services run on the same event 
+	 * in the same thread, instead of reading the hits back from the hit-based hits bank; the time-based tracking then re-fits the 
+	 * crosses of the hit-based candidates instead of searching for new cross lists, so it only finds the tracks found by the hit-based tracking
+	 */
+	public static boolean useFusedHBTB = false;
+	
+	/**
+	 * Split the clusters with the reusable per-thread Hough engine instead of allocating a new accumulator for each cluster
+	 */
+	public static boolean useHoughEngine = false;
+	/**
+	 * Only use the local maxima of the Hough accumulator as peaks (Hough engine only)
+	 */
+	public static boolean HOUGHPEAKSUPPRESSION = false;
+	
+	/**
+	 * Find the cross lists sector by sector, pruning the cross triplets with a compatibility window before the quadratic fit
+	 */
+	public static boolean useSectorBucketedCrossLists = false;
+	/**
+	 * Minimum cosine of the angle between the chord joining the crosses of consecutive regions and the cross directions
+	 */
+	public static double CROSSLISTCHORDDIRCOSANGLE = 0.7;
+	/**
+	 * Maximum deviation (in cm) of the Region 2 cross y from the line joining the Region 1 and 3 crosses in the y-z plane
+	 */
+	public static double CROSSLISTMAXDELTAY = 30.;
 
 	// the nominal configuration is tor -1 sol +1
 	// the reverse configuration is tor +1 sol +1
@@ -123,6 +249,23 @@ public class Constants {
 	
 	public static double TORSCALE = -1.;
 	public static double SOLSCALE = 1.;
+	
+	/**
+	 * Use the precomputed field grid (trilinear interpolation) for the field lookups in the tilted sector coordinate system
+	 */
+	public static boolean useFieldGrid = false;
+	/**
+	 * Field grid spacing in cm
+	 */
+	public static double FIELDGRIDSPACING = 5.0;
+	/**
+	 * Local cache file for the field grid; no cache if null
+	 */
+	public static String FIELDGRIDCACHEFILE = null;
+	/**
+	 * Compare the field grid to the exact field at initialization and print the maximum deviation
+	 */
+	public static boolean FIELDGRIDVALIDATE = false;
 
 	// SNR parameters -- can be optimized
 	public static  int[] SNR_RIGHTSHIFTS = {0,1,2,2,4,4};
@@ -137,7 +280,15 @@ public class Constants {
 	public static double T0 =0;
 	public static boolean useParametricResol = true;
 	public static boolean isCalibrationRun = false;
-	public static boolean useTimeToDistanceGrid = true;
+	public static boolean useTimeToDistanceGrid = false; // the grid is interpolated at B = 0: for cosmics only
+	/**
+	 * Local binary file for the time-to-distance tables; the tables are filled and not persisted if null
+	 */
+	public static String T2DCACHEFILE = null;
+	/**
+	 * Local directory of the snapshots of the geometry tables, resolution parameters and time-to-distance tables; no snapshot if null
+	 */
+	public static String SNAPSHOTDIR = null;
 
 	// Arrays for combinatorial cluster compositions
     static final int[][] CombArray1Layer = new int[][]{{0},{1}};
@@ -0,0 +1,158 @@
+package org.jlab.rec.dc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.jlab.rec.dc.timetodistance.TableLoader;
+
+/**
+ * A local binary snapshot of the DC constants loaded at the initialization of the services: the flat geometry tables,
+ * the resolution parameters and the time-to-distance tables.
+ * <p>
+ * The snapshot file is keyed by the database variation, the calibration run and the geometry version, and is versioned.
+ * It is read by memory mapping, so that a service starts without connecting to the database.  If the file does not exist or
+ * does not match, the constants are loaded from the database as usual and the snapshot is written for the next start.
+ * The file is written to a temporary file which is then renamed, so that concurrent workers never read a partial snapshot.
+ * @author ziegler
+ *
+ */
+public class DCSnapshot {
+
+	private static final int MAGIC = 0x44435353; // "DCSS"
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 *
+	 * @return the key of the snapshot of the constants of the current configuration
+	 */
+	public static String getKey() {
+		return Constants.DBVAR+"_run"+CalibrationConstantsLoader.CALIBRUN+(Constants.newGeometry ? "_newgeom" : "_geom");
+	}
+
+	/**
+	 *
+	 * @return the snapshot file of the current configuration, null if no snapshot directory is set
+	 */
+	public static File getFile() {
+		if(Constants.SNAPSHOTDIR == null)
+			return null;
+		return new File(Constants.SNAPSHOTDIR, "dc_snapshot_"+getKey()+"_v"+VERSION+".bin");
+	}
+
+	/**
+	 * Loads the geometry tables, resolution parameters and time-to-distance tables from the snapshot of the current configuration
+	 * @return true if the snapshot was loaded
+	 */
+	public static synchronized boolean load() {
+		File file = getFile();
+		if(file == null || file.exists() == false)
+			return false;
+
+		long t0 = System.currentTimeMillis();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			ByteBuffer in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if(in.getInt() != MAGIC || in.getInt() != VERSION) {
+				System.err.println("DC snapshot "+file+" has the wrong format -- loading from the database");
+				return false;
+			}
+			int keyLength = in.getInt();
+			if(keyLength < 0 || keyLength > in.remaining()) {
+				System.err.println("DC snapshot "+file+" has the wrong format -- loading from the database");
+				return false;
+			}
+			byte[] key = new byte[keyLength];
+			in.get(key);
+			if(getKey().equals(new String(key, UTF8)) == false) {
+				System.err.println("DC snapshot "+file+" has the wrong key -- loading from the database");
+				return false;
+			}
+			// the snapshot ends with the magic number; a truncated file is not read, so that the constants are left unloaded
+			if(in.getInt(in.limit()-4) != MAGIC) {
+				System.err.println("DC snapshot "+file+" is truncated -- loading from the database");
+				return false;
+			}
+
+			GeometryLoader.readSnapshot(in);
+			CalibrationConstantsLoader.readSnapshot(in);
+			if(TableLoader.readSnapshot(in) == false) 
+				System.err.println("DC snapshot "+file+" has the wrong time-to-distance table format -- refilling");
+		} catch (IOException | BufferUnderflowException e) {
+			System.err.println("DC snapshot "+file+" could not be read: "+e);
+			return false;
+		}
+		System.out.println("DC geometry, calibration constants and time-to-distance tables read from "+file+" in "
+				+(System.currentTimeMillis()-t0)+" ms");
+		return true;
+	}
+
+	/**
+	 * Writes the snapshot of the current configuration if it does not exist yet; the geometry and the calibration constants must be loaded
+	 */
+	public static synchronized void save() {
+		File file = getFile();
+		if(file == null || file.exists() == true)
+			return;
+		if(GeometryLoader.isGeometryLoaded == false || CalibrationConstantsLoader.CSTLOADED == false)
+			return;
+		if(TableLoader.T2DLOADED == false)
+			TableLoader.Fill();
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		if(dir != null)
+			dir.mkdirs();
+		File tmp = new File(file.getPath()+".tmp"+System.nanoTime());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			byte[] key = getKey().getBytes(UTF8);
+			out.writeInt(key.length);
+			out.write(key);
+			GeometryLoader.writeSnapshot(out);
+			CalibrationConstantsLoader.writeSnapshot(out);
+			TableLoader.writeSnapshot(out);
+			out.writeInt(MAGIC);
+		} catch (IOException e) {
+			System.err.println("DC snapshot could not be written to "+tmp+": "+e.getMessage());
+			tmp.delete();
+			return;
+		}
+		if(tmp.renameTo(file) == false) {
+			tmp.delete();
+			return;
+		}
+		System.out.println("DC geometry, calibration constants and time-to-distance tables written to "+file);
+	}
+
+	/**
+	 * Writes an array of doubles to a snapshot
+	 * @param out the snapshot output stream
+	 * @param array the array
+	 * @throws IOException if the array cannot be written
+	 */
+	public static void putDoubles(DataOutputStream out, double[] array) throws IOException {
+		for(int i = 0; i < array.length; i++)
+			out.writeDouble(array[i]);
+	}
+
+	/**
+	 * Reads an array of doubles from a snapshot
+	 * @param in the snapshot buffer
+	 * @param length the array length
+	 * @return the array
+	 */
+	public static double[] getDoubles(ByteBuffer in, int length) {
+		double[] array = new double[length];
+		in.asDoubleBuffer().get(array);
+		in.position(in.position()+8*length);
+		return array;
+	}
+}
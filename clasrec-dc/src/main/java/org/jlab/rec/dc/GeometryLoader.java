@@ -1,9 +1,13 @@
 package org.jlab.rec.dc;
 
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 import org.jlab.clas.detector.DetectorType;
 import org.jlab.clasrec.utils.DataBaseLoader;
@@ -11,6 +15,7 @@ import org.jlab.geom.base.ConstantProvider;
 import org.jlab.geom.detector.dc.DCDetector;
 import org.jlab.geom.detector.dc.DCFactory;
 import org.jlab.geom.detector.dc.DCFactoryUpdated;
+import org.jlab.geom.prim.Point3D;
 
 /**
  * A class to load the geometry constants used in the DC reconstruction.  The coordinate system used in the Tilted Sector coordinate system.
@@ -29,6 +34,7 @@ public class GeometryLoader {
 			dcDetector = (new DCFactory()).createDetectorTilted(dcDataProvider);
 		if(Constants.newGeometry == true)
 			dcDetector = (new DCFactoryUpdated()).createDetectorTilted(dcDataProvider);
+		fillWireTables();
 		if (isGeometryLoaded) return;
 
 		// mark the geometry as loaded
@@ -36,12 +42,196 @@ public class GeometryLoader {
 		System.out.println("DC Geometry constants are Loaded -- new geometry = "+Constants.newGeometry);
 	}
 	
+	// flat tables of the sector 1 geometry in the tilted sector coordinate system; the wire (superlayer, layer, wire) is at index wireIndex(superlayer, layer, wire)
+	private static int NWIRES;
+	private static double[] WIREMIDPOINTX;
+	private static double[] WIREMIDPOINTZ;
+	private static double[] LAYERPLANEZ;
+	private static double[] CELLSIZE;
+	private static double BRICKWALLSIGN;
+	private static double[] REGIONMIDPLANEZ;
+	
+	/**
+	 * Fills the flat tables of the wire midpoints, layer plane positions and cell sizes from the detector geometry
+	 */
+	private static void fillWireTables() {
+		int nwires = dcDetector.getSector(0).getSuperlayer(0).getLayer(0).getNumComponents();
+		double[] wireX = new double[Constants.NSLAY*Constants.NLAYR*nwires];
+		double[] wireZ = new double[Constants.NSLAY*Constants.NLAYR*nwires];
+		double[] layerZ = new double[Constants.NSLAY*Constants.NLAYR];
+		double[] cellSize = new double[Constants.NSLAY];
+		double[] regionZ = new double[3];
+		
+		for(int r = 0; r < 3; r++) 
+			regionZ[r] = dcDetector.getSector(0).getRegionMiddlePlane(r).point().z();
+		for(int s = 0; s < Constants.NSLAY; s++) {
+			for(int l = 0; l < Constants.NLAYR; l++) {
+				layerZ[s*Constants.NLAYR+l] = dcDetector.getSector(0).getSuperlayer(s).getLayer(l).getPlane().point().z();
+				for(int w = 0; w < nwires; w++) {
+					Point3D midpoint = dcDetector.getSector(0).getSuperlayer(s).getLayer(l).getComponent(w).getMidpoint();
+					wireX[(s*Constants.NLAYR+l)*nwires+w] = midpoint.x();
+					wireZ[(s*Constants.NLAYR+l)*nwires+w] = midpoint.z();
+				}
+			}
+			// fix cell size = w_{i+1} -w_{i}
+			cellSize[s] = 0.5*Math.abs(wireX[s*Constants.NLAYR*nwires] - wireX[s*Constants.NLAYR*nwires+1]);
+		}
+		// in old mc, layer 1 is closer to the beam than layer 2, in hardware it is the opposite
+		BRICKWALLSIGN = Math.signum(wireX[nwires+1] - wireX[1]);
+		
+		NWIRES = nwires;
+		WIREMIDPOINTX = wireX;
+		WIREMIDPOINTZ = wireZ;
+		LAYERPLANEZ = layerZ;
+		CELLSIZE = cellSize;
+		REGIONMIDPLANEZ = regionZ;
+	}
+	
+	/**
+	 * Writes the flat geometry tables to a snapshot
+	 * @param out the snapshot output stream
+	 * @throws IOException if the tables cannot be written
+	 */
+	static void writeSnapshot(DataOutputStream out) throws IOException {
+		out.writeInt(NWIRES);
+		DCSnapshot.putDoubles(out, WIREMIDPOINTX);
+		DCSnapshot.putDoubles(out, WIREMIDPOINTZ);
+		DCSnapshot.putDoubles(out, LAYERPLANEZ);
+		DCSnapshot.putDoubles(out, CELLSIZE);
+		DCSnapshot.putDoubles(out, REGIONMIDPLANEZ);
+		out.writeDouble(BRICKWALLSIGN);
+	}
+	
+	/**
+	 * Reads the flat geometry tables from a snapshot written by writeSnapshot; the detector geometry (dcDetector) is not created
+	 * @param in the snapshot buffer
+	 */
+	static void readSnapshot(ByteBuffer in) {
+		int nwires = in.getInt();
+		double[] wireX = DCSnapshot.getDoubles(in, Constants.NSLAY*Constants.NLAYR*nwires);
+		double[] wireZ = DCSnapshot.getDoubles(in, Constants.NSLAY*Constants.NLAYR*nwires);
+		double[] layerZ = DCSnapshot.getDoubles(in, Constants.NSLAY*Constants.NLAYR);
+		double[] cellSize = DCSnapshot.getDoubles(in, Constants.NSLAY);
+		double[] regionZ = DCSnapshot.getDoubles(in, 3);
+		double brickwallSign = in.getDouble();
+		
+		NWIRES = nwires;
+		WIREMIDPOINTX = wireX;
+		WIREMIDPOINTZ = wireZ;
+		LAYERPLANEZ = layerZ;
+		CELLSIZE = cellSize;
+		REGIONMIDPLANEZ = regionZ;
+		BRICKWALLSIGN = brickwallSign;
+		isGeometryLoaded = true;
+	}
+	
+	private static int wireIndex(int superlayer, int layer, int wire) {
+		return ((superlayer-1)*Constants.NLAYR+layer-1)*NWIRES+wire-1;
+	}
+	
+	/**
+	 * 
+	 * @param superlayer the superlayer (1...6)
+	 * @param layer the layer (1...6)
+	 * @param wire the wire (1...112)
+	 * @return the x of the wire midpoint in the tilted sector coordinate system
+	 */
+	public static double getWireMidpointX(int superlayer, int layer, int wire) {
+		return WIREMIDPOINTX[wireIndex(superlayer, layer, wire)];
+	}
+	
+	/**
+	 * 
+	 * @param superlayer the superlayer (1...6)
+	 * @param layer the layer (1...6)
+	 * @param wire the wire (1...112)
+	 * @return the z of the wire midpoint in the tilted sector coordinate system
+	 */
+	public static double getWireMidpointZ(int superlayer, int layer, int wire) {
+		return WIREMIDPOINTZ[wireIndex(superlayer, layer, wire)];
+	}
+	
+	/**
+	 * 
+	 * @param superlayer the superlayer (1...6)
+	 * @param layer the layer (1...6)
+	 * @return the z of the layer plane in the tilted sector coordinate system
+	 */
+	public static double getLayerPlaneZ(int superlayer, int layer) {
+		return LAYERPLANEZ[(superlayer-1)*Constants.NLAYR+layer-1];
+	}
+	
+	/**
+	 * 
+	 * @param region the region (1...3)
+	 * @return the z of the region middle plane in the tilted sector coordinate system
+	 */
+	public static double getRegionMiddlePlaneZ(int region) {
+		return REGIONMIDPLANEZ[region-1];
+	}
+	
+	/**
+	 * 
+	 * @param superlayer the superlayer (1...6)
+	 * @return the cell size in the superlayer
+	 */
+	public static double getCellSize(int superlayer) {
+		return CELLSIZE[superlayer-1];
+	}
+	
+	/**
+	 * 
+	 * @return the sign of the x offset of layer 2 with respect to layer 1, which gives the brick-wall pattern of the cells
+	 */
+	public static double getBrickwallSign() {
+		return BRICKWALLSIGN;
+	}
+	
+	/**
+	 * Micro-benchmark of the per-hit cost of the wire position lookups done in FittedHit.updateHitPosition: navigation through the 
+	 * detector geometry versus the flat tables
+	 * @param nHits the number of hits
+	 */
+	public static void benchmarkWireLookup(int nHits) {
+		Random rnd = new Random(1);
+		int[] sl = new int[nHits];
+		int[] l  = new int[nHits];
+		int[] w  = new int[nHits];
+		for(int i = 0; i < nHits; i++) {
+			sl[i] = 1 + rnd.nextInt(Constants.NSLAY);
+			l[i]  = 1 + rnd.nextInt(Constants.NLAYR);
+			w[i]  = 1 + rnd.nextInt(NWIRES);
+		}
+		
+		for(int pass = 0; pass < 3; pass++) { // the first passes warm up the JIT
+			double sum = 0;
+			long t0 = System.nanoTime();
+			for(int i = 0; i < nHits; i++) {
+				sum += dcDetector.getSector(0).getSuperlayer(sl[i]-1).getLayer(l[i]-1).getComponent(w[i]-1).getMidpoint().z();
+				sum += dcDetector.getSector(0).getSuperlayer(sl[i]-1).getLayer(1).getComponent(w[i]-1).getMidpoint().z();
+				sum += dcDetector.getSector(0).getSuperlayer(sl[i]-1).getLayer(0).getComponent(w[i]-1).getMidpoint().z();
+				sum += dcDetector.getSector(0).getSuperlayer(sl[i]-1).getLayer(l[i]-1).getComponent(w[i]-1).getMidpoint().x();
+			}
+			long t1 = System.nanoTime();
+			for(int i = 0; i < nHits; i++) {
+				sum -= getWireMidpointZ(sl[i], l[i], w[i]);
+				sum -= getWireMidpointZ(sl[i], 2, w[i]);
+				sum -= getWireMidpointZ(sl[i], 1, w[i]);
+				sum -= getWireMidpointX(sl[i], l[i], w[i]);
+			}
+			long t2 = System.nanoTime();
+			System.out.println("wire lookups per hit: geometry navigation "+(float)((t1-t0)/(double)nHits)+" ns, flat tables "
+					+(float)((t2-t1)/(double)nHits)+" ns (check sum "+sum+")");
+		}
+	}
+	
 	public static void main (String arg[]) throws FileNotFoundException {
 		//PrintWriter pw = new PrintWriter(new File("/Users/ziegler/workspace/coatjava-2.4/cpFiles.csh"));
 		Constants.newGeometry = true;
 		GeometryLoader.Load();
 		double x1 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(0).getLayer(1).getComponent(16).getMidpoint().x();
 		System.out.println(x1);
+		GeometryLoader.benchmarkWireLookup(1000000);
 		//pw.close();
 	/*	System.out.println("dx; = "+(GeometryLoader.dcDetector.getSector(0).getSuperlayer(0).getLayer(0).getComponent(0).getMidpoint().x()-
 				GeometryLoader.dcDetector.getSector(0).getSuperlayer(0).getLayer(0).getComponent(1).getMidpoint().x())*Math.cos(Math.toRadians(6.)));
@@ -192,19 +192,7 @@ public class HitReader {
 			if(clusterID[i]==-1)
 				continue;
 			
-			FittedHit hit = new FittedHit(sector[i], slayer[i], layer[i], wire[i], time[i]-Constants.T0, 0, id[i]);
-			hit.set_LeftRightAmb(LR[i]);
-			hit.set_TrkgStatus(0);
-			
-			hit.set_Doca(Constants.TIMETODIST[hit.get_Region()-1]*hit.get_Time());
-			if(hit.get_Doca()>hit.get_CellSize()) {
-				//this.fix_TimeToDistance(this.get_CellSize());
-				hit.set_OutOfTimeFlag(true); 
-			}
-			hit.set_DocaErr(hit.get_PosErr());
-			hit.set_AssociatedClusterID(clusterID[i]);
-			
-			hits.add(hit);
+			hits.add(this.createTBHit(sector[i], slayer[i], layer[i], wire[i], time[i], LR[i], clusterID[i], id[i]));
 			
 		}
 		
@@ -213,6 +201,47 @@ public class HitReader {
 		this.set_HBHits(hits);
 	}
 	
+	/**
+	 * Reads the HB DC hits passed in memory by the hit-based tracking service running in the same process;
+	 * the hits are the same as those read from the bank written by that service
+	 * @param hbhits the hit-based hits, as written to the HB hits bank
+	 */
+	public void read_HBHits(List<FittedHit> hbhits) {
+		
+		List<FittedHit> hits = new ArrayList<FittedHit>();
+		for(FittedHit hbhit : hbhits) {
+			//use only hits that have been fit to a track
+			if(hbhit.get_AssociatedClusterID()==-1)
+				continue;
+			
+			hits.add(this.createTBHit(hbhit.get_Sector(), hbhit.get_Superlayer(), hbhit.get_Layer(), hbhit.get_Wire(), hbhit.get_Time(), 
+					hbhit.get_LeftRightAmb(), hbhit.get_AssociatedClusterID(), hbhit.get_Id()));
+		}
+		
+		this.set_HBHits(hits);
+	}
+	
+	/**
+	 * 
+	 * @return a hit for time-based tracking made from the hit-based tracking hit information
+	 */
+	private FittedHit createTBHit(int sector, int slayer, int layer, int wire, double time, int LR, int clusterID, int id) {
+		
+		FittedHit hit = new FittedHit(sector, slayer, layer, wire, time-Constants.T0, 0, id);
+		hit.set_LeftRightAmb(LR);
+		hit.set_TrkgStatus(0);
+		
+		hit.set_Doca(Constants.TIMETODIST[hit.get_Region()-1]*hit.get_Time());
+		if(hit.get_Doca()>hit.get_CellSize()) {
+			//this.fix_TimeToDistance(this.get_CellSize());
+			hit.set_OutOfTimeFlag(true); 
+		}
+		hit.set_DocaErr(hit.get_PosErr());
+		hit.set_AssociatedClusterID(clusterID);
+		
+		return hit;
+	}
+	
 
    
 }
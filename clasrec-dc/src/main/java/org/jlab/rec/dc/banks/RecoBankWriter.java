@@ -10,6 +10,8 @@ import org.jlab.rec.dc.cluster.FittedCluster;
 import org.jlab.rec.dc.cross.Cross;
 import org.jlab.rec.dc.hit.FittedHit;
 import org.jlab.rec.dc.hit.Hit;
+import org.jlab.rec.dc.hit.SectorOccupancy;
+import org.jlab.rec.dc.monitoring.StageMonitor;
 import org.jlab.rec.dc.segment.Segment;
 import org.jlab.rec.dc.track.Track;
 import org.jlab.rec.dc.trajectory.SegmentTrajectory;
@@ -329,6 +331,36 @@ public class RecoBankWriter {
 		return bank;
 		
 	}
+
+	// set once the missing status bank has been reported
+	private static boolean isHBStatusBankMissing = false;
+	
+	/**
+	 * 
+	 * @param event the EvioEvent
+	 * @param occupancy the sector occupancy
+	 * @return the bank of the hit-based tracking status of each sector (0 = normal, 1 = overloaded, 2 = track search skipped), 
+	 * null if the bank is not in the dictionary
+	 */
+	public EvioDataBank fillHBStatusBank(EvioDataEvent event, SectorOccupancy occupancy) {
+		
+		EvioDataBank bank =  (EvioDataBank) event.getDictionary().createBank("HitBasedTrkg::HBStatus",Constants.NSECT);
+		if(bank==null) {
+			if(isHBStatusBankMissing==false)
+				System.err.println("HitBasedTrkg::HBStatus is not in the bank dictionary -- the sector status is not written");
+			isHBStatusBankMissing = true;
+			return null;
+		}
+    
+		for(int i =0; i< Constants.NSECT; i++) {
+			bank.setInt("sector",i, i+1);
+			bank.setInt("nbOfHits",i, occupancy.get_NbOfHits(i+1));
+			bank.setInt("status",i, occupancy.get_Status(i+1));
+		}
+		
+		return bank;
+		
+	}
 	
 
 
@@ -631,6 +663,7 @@ public class RecoBankWriter {
 		
 		if(event == null)
 			return;
+		StageMonitor.start(StageMonitor.BANKS);
 		
 		
 		if(trkcands!=null) {
@@ -692,6 +725,7 @@ public class RecoBankWriter {
 			event.appendBanks(rbc.fillHBHitsBank((EvioDataEvent) event, fhits),
 					effbank);
 		}
+		StageMonitor.stop(StageMonitor.BANKS);
 	}
 	
 
@@ -701,6 +735,7 @@ public class RecoBankWriter {
 		
 		if(event == null)
 			return;
+		StageMonitor.start(StageMonitor.BANKS);
 		
 		if(trkcands!=null) {
 			if(Constants.isCalibrationRun==true) {	
@@ -759,6 +794,7 @@ public class RecoBankWriter {
 		
 		if(fhits!=null && clusters == null)
 			event.appendBanks(rbc.fillTBHitsBank((EvioDataEvent) event, fhits));
+		StageMonitor.stop(StageMonitor.BANKS);
 	}
 	
 	
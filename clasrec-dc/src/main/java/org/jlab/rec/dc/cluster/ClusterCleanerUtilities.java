@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import org.jlab.rec.common.HoughEngine;
+
 import org.jlab.rec.dc.Constants;
 import org.jlab.rec.dc.hit.FittedHit;
 import org.jlab.rec.dc.hit.Hit;
@@ -62,6 +64,9 @@ public class ClusterCleanerUtilities {
 		/// This is a preliminary pattern recognition method used to identify
 		/// reconstructed hits belonging to the same track-segment.
 
+		if(Constants.useHoughEngine)
+			return this.ClusterSplitterWithHoughEngine(clus, nextClsStartIndex, cf);
+
 		int N_t = 180;
 
 		// From this calculate the bin size in the theta accumulator array
@@ -178,34 +183,57 @@ public class ClusterCleanerUtilities {
 
 				}
 			}
-			//no gaps
-			List<Hit> contigArrayOfHits = new ArrayList<Hit>(); //contiguous cluster
-
-			boolean passCluster = true;
-			for (int l = 1; l <= Constants.NLAYR; l++) {
-				for (int i = 0; i< newClus.size(); i++) {
-					if(newClus.get(i).get_Layer()==l)
-						contigArrayOfHits.add(newClus.get(i));
-				}
-			}
-			for(int i = 0; i<contigArrayOfHits.size()-1; i++) { //if there is a gap do not include in list
-				if(contigArrayOfHits.get(i+1).get_Layer()-contigArrayOfHits.get(i).get_Layer() >1)
-					passCluster=false;
-			}
-			//require 4 layers to make a cluster
-			if(count_nlayers_in_cluster(contigArrayOfHits) < Constants.DC_MIN_NLAYERS)
-				passCluster=false;
+			this.addSplitCluster(newClus, splitclusters, cf);
+		}
 
-			//require consistency with line
-			cf.SetFitArray(newClus, "LC");
-			cf.Fit(newClus, true);
-			if(newClus.get_fitProb()<0.9)
-				passCluster=false;
+		return this.selectSplitClusters(clus, splitclusters, nextClsStartIndex, cf);
+	}
 
-			if(!(splitclusters.contains(newClus)) && passCluster)
-				splitclusters.add(newClus);
+	/**
+	 * Adds a cluster made of the hits of a Hough transform peak to the list of split clusters if it has no gaps, 
+	 * enough layers and is consistent with a line
+	 * @param newClus the cluster of the hits associated with the peak
+	 * @param splitclusters the list of split clusters
+	 * @param cf the cluster fitter
+	 */
+	private void addSplitCluster(FittedCluster newClus, List<FittedCluster> splitclusters, ClusterFitter cf) {
+		//no gaps
+		List<Hit> contigArrayOfHits = new ArrayList<Hit>(); //contiguous cluster
+
+		boolean passCluster = true;
+		for (int l = 1; l <= Constants.NLAYR; l++) {
+			for (int i = 0; i< newClus.size(); i++) {
+				if(newClus.get(i).get_Layer()==l)
+					contigArrayOfHits.add(newClus.get(i));
+			}
 		}
+		for(int i = 0; i<contigArrayOfHits.size()-1; i++) { //if there is a gap do not include in list
+			if(contigArrayOfHits.get(i+1).get_Layer()-contigArrayOfHits.get(i).get_Layer() >1)
+				passCluster=false;
+		}
+		//require 4 layers to make a cluster
+		if(count_nlayers_in_cluster(contigArrayOfHits) < Constants.DC_MIN_NLAYERS)
+			passCluster=false;
+
+		//require consistency with line
+		cf.SetFitArray(newClus, "LC");
+		cf.Fit(newClus, true);
+		if(newClus.get_fitProb()<0.9)
+			passCluster=false;
+
+		if(!(splitclusters.contains(newClus)) && passCluster)
+			splitclusters.add(newClus);
+	}
 
+	/**
+	 * Resolves the overlaps between the split clusters and sets their IDs
+	 * @param clus the cluster that was split
+	 * @param splitclusters the list of split clusters
+	 * @param nextClsStartIndex the index of the next cluster in the splitted cluster.
+	 * @param cf the cluster fitter
+	 * @return the selected split clusters, or the original cluster if the splitting fails
+	 */
+	private List<FittedCluster> selectSplitClusters(FittedCluster clus, List<FittedCluster> splitclusters, int nextClsStartIndex, ClusterFitter cf) {
 		// make new clusters
 		List<FittedCluster> selectedClusList =  new ArrayList<FittedCluster>();
 
@@ -238,6 +266,49 @@ public class ClusterCleanerUtilities {
 		return selectedClusList;
 	}
 
+	// the Hough engine of the thread, reused for all the clusters
+	private static final ThreadLocal<HoughEngine> houghEngine = new ThreadLocal<HoughEngine>() {
+		@Override
+		protected HoughEngine initialValue() {
+			return new HoughEngine(130, -130, 130, 180, 0., 2.*Math.PI);
+		}
+	};
+
+	/**
+	 * Cluster splitting using the Hough engine of the thread: the accumulator, the trig tables and the peak arrays are reused
+	 * from one cluster to the next, the hits of a peak are obtained from the bins filled by each hit, and optionally only
+	 * the local maxima of the accumulator are used as peaks (Constants.HOUGHPEAKSUPPRESSION)
+	 * @param clus the fitted cluster. This cluster is examined for overlaps and // tracks.
+	 * @param nextClsStartIndex the index of the next cluster in the splitted cluster.
+	 * @param cf the cluster fitter
+	 * @return a list of fitted clusters
+	 */
+	private List<FittedCluster> ClusterSplitterWithHoughEngine(FittedCluster clus, int nextClsStartIndex, ClusterFitter cf) {
+
+		HoughEngine hough = houghEngine.get();
+		hough.reset();
+
+		// fill the accumulator with the hits in local coordinates
+		for(int i = 0; i < clus.size(); i++) 
+			hough.addPoint(clus.get(i).get_lX(), clus.get(i).get_lY());
+
+		int nbPeaks = hough.findPeaks(Constants.DC_MIN_NLAYERS, Constants.HOUGHPEAKSUPPRESSION);
+
+		List<FittedCluster> splitclusters = new ArrayList<FittedCluster>();
+
+		for(int p = nbPeaks-1; p>-1; p--) {
+			// Make a new cluster with the hits of the peak
+			FittedCluster newClus = new FittedCluster(clus.getBaseCluster());
+			for(int i = 0; i < clus.size(); i++) 
+				if(hough.isPointInPeak(i, p))
+					newClus.add(clus.get(i));  
+
+			this.addSplitCluster(newClus, splitclusters, cf);
+		}
+
+		return this.selectSplitClusters(clus, splitclusters, nextClsStartIndex, cf);
+	}
+
 	public List<List<Hit>> byLayerListSorter(List<Hit> DCHits, int sector, int superlyr) {
 
 		List<List<Hit>> hitsinlayr_array = new ArrayList<List<Hit>>();
@@ -322,204 +393,133 @@ public class ClusterCleanerUtilities {
 		if(index>6)
 			return null; // unresolveable cluster...
 		
-		int arraySize = (int)Math.pow(2, (double)index) ; 
-		ArrayList<FittedCluster> arrayOfClus = new ArrayList<FittedCluster>(arraySize);
-	
-	
-		//pass all acceptable clusters
-		FittedCluster okClus = new FittedCluster(fClus.getBaseCluster());
-		for(FittedHit hit : fClus) {
-			if(hit.get_LeftRightAmb()!=0) 
-				okClus.add(hit);			
-		}
-		//filter all other clusters
-		FittedCluster notLRClus = new FittedCluster(fClus.getBaseCluster());
-		for(FittedHit hit : fClus) {
-			if(hit.get_LeftRightAmb()==0)
-				notLRClus.add(hit);
-		}
-		//make combinatorials
-		
-		FittedCluster totNotLRClus = new FittedCluster(fClus.getBaseCluster());
-		FittedCluster posNotLRClus = new FittedCluster(fClus.getBaseCluster());
-		FittedCluster negNotLRClus = new FittedCluster(fClus.getBaseCluster());
-		
-		
-		for(FittedHit hit : notLRClus) {
-
-			FittedHit newhitPos = new FittedHit(hit.get_Sector(), hit.get_Superlayer(), hit.get_Layer(), hit.get_Wire(),
-					hit.get_Time(), hit.get_DocaErr(), hit.get_Id()) ;
-			newhitPos.set_Doca(hit.get_Doca());
-			newhitPos.set_Id(hit.get_Id());
-			newhitPos.set_TrkgStatus(0);
-			
-			newhitPos.set_LeftRightAmb(1);
-			newhitPos.updateHitPositionWithTime(1, true); // assume the track angle is // to the layer, so that cosTrkAng =1
-			
-			newhitPos.set_AssociatedClusterID(hit.get_AssociatedClusterID());
-			
-			FittedHit newhitNeg = new FittedHit(hit.get_Sector(), hit.get_Superlayer(), hit.get_Layer(), hit.get_Wire(),
-					hit.get_Time(), hit.get_DocaErr(), hit.get_Id()) ;
-			newhitNeg.set_Doca(hit.get_Doca());
-			newhitNeg.set_Id(hit.get_Id());
-			newhitNeg.set_TrkgStatus(0);
-			
-			newhitNeg.set_LeftRightAmb(-1);
-			newhitNeg.updateHitPositionWithTime(1, true); // assume the track angle is // to the layer
-			
-			newhitNeg.set_AssociatedClusterID(hit.get_AssociatedClusterID());
-			
-			totNotLRClus.add(newhitNeg);
-			totNotLRClus.add(newhitPos);
-			
-			posNotLRClus.add(newhitPos);
-			negNotLRClus.add(newhitNeg);
-		}
-		
-		Collections.sort(totNotLRClus);
+		// The cluster is fitted in the tilted sector coordinate system (TSC): X = a*Z + b, with weights 1/DocaErr^2.
+		// The LR combinations of the unresolved hits are visited in Gray-code order, so that going from one combination
+		// to the next flips the LR of one hit only, and the weighted sums entering the chi2 are updated incrementally.
+		// Only the best combination is turned into a cluster.
+		FittedHit[] notLRHits = new FittedHit[index];
+		double[] w  = new double[index]; // the fit weights of the unresolved hits
+		double[] u  = new double[index]; // the Z positions relative to the weighted mean Z
+		double[] y  = new double[index]; // the X positions for the current LR combination
+		double[] dy = new double[index]; // the X difference between the LR=+1 and LR=-1 positions
 		
-		if(index==1) {
-			arrayOfClus.add(posNotLRClus);
-			arrayOfClus.add(negNotLRClus);
-			arrayOfClus.get(0).addAll(okClus);
-			arrayOfClus.get(1).addAll(okClus);
-		}
-		if(index==2) {
-			for(int i1 = 0; i1<totNotLRClus.size(); i1++) {					
-				for(int i2 = 2; i2<totNotLRClus.size(); i2++) {
-					if(totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i2).get_Id())
-						continue;
-					FittedCluster newClus = new FittedCluster(fClus.getBaseCluster());
-					newClus.addAll(okClus);
-					newClus.add(totNotLRClus.get(i1));
-					newClus.add(totNotLRClus.get(i2));
-					arrayOfClus.add(newClus);
-				}
+		// Z does not depend on the LR ambiguity: the weighted mean Z is used as origin
+		double S = 0;
+		double Sz = 0;
+		int m = 0;
+		for(FittedHit hit : fClus) {
+			double wi = this.fitWeight(hit);
+			if(hit.get_LeftRightAmb()==0) {
+				notLRHits[m] = hit;
+				w[m] = wi;
+				u[m] = hit.calc_WireZ();
+				Sz += wi*u[m];
+				m++;
+			} else {
+				Sz += wi*hit.get_Z();
 			}
+			S += wi;
 		}
+		double zMean = Sz/S;
 		
-		if(index==3) {
-			for(int i1 = 0; i1<totNotLRClus.size(); i1++) {					
-				for(int i2 = 2; i2<totNotLRClus.size(); i2++) {
-					for(int i3 = 4; i3<totNotLRClus.size(); i3++) {
-						if( (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i2).get_Id()) 
-								|| (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i3).get_Id()) 
-								|| (totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i3).get_Id()) )
-							continue;
-						FittedCluster newClus = new FittedCluster(fClus.getBaseCluster());
-						newClus.addAll(okClus);
-						newClus.add(totNotLRClus.get(i1));
-						newClus.add(totNotLRClus.get(i2));
-						newClus.add(totNotLRClus.get(i3));
-						arrayOfClus.add(newClus);
-					}
-				}
-			}
+		// start with all unresolved hits on the left (LR=-1); X is offset by a reference position to preserve precision
+		double yRef = notLRHits[0].calc_LocalXWithTime(0, 1); // assume the track angle is // to the layer, so that cosTrkAng =1
+		double Szz = 0;
+		double Sy  = 0;
+		double Szy = 0;
+		double Syy = 0;
+		for(FittedHit hit : fClus) {
+			if(hit.get_LeftRightAmb()==0) 
+				continue;
+			double wi = this.fitWeight(hit);
+			double ui = hit.get_Z()-zMean;
+			double yi = hit.get_X()-yRef;
+			Szz += wi*ui*ui;
+			Sy  += wi*yi;
+			Szy += wi*ui*yi;
+			Syy += wi*yi*yi;
 		}
-		
-		if(index==4) {
-			for(int i1 = 0; i1<totNotLRClus.size(); i1++) {					
-				for(int i2 = 2; i2<totNotLRClus.size(); i2++) {
-					for(int i3 = 4; i3<totNotLRClus.size(); i3++) {
-						for(int i4 = 6; i4<totNotLRClus.size(); i4++) {
-							if( 	(totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i2).get_Id()) 
-								 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i3).get_Id()) 
-								 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i4).get_Id()) 
-								 ||	(totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i3).get_Id()) 
-								 || (totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i4).get_Id()) 
-								 || (totNotLRClus.get(i3).get_Id()==totNotLRClus.get(i4).get_Id()) 
-									)
-								continue;
-							FittedCluster newClus = new FittedCluster(fClus.getBaseCluster());
-							newClus.addAll(okClus);
-							newClus.add(totNotLRClus.get(i1));
-							newClus.add(totNotLRClus.get(i2));
-							newClus.add(totNotLRClus.get(i3));
-							newClus.add(totNotLRClus.get(i4));
-							arrayOfClus.add(newClus);
-						}
-					}
-				}
-			}
+		for(int i = 0; i<index; i++) {
+			u[i] -= zMean;
+			y[i]  = notLRHits[i].calc_LocalXWithTime(-1, 1) - yRef;
+			dy[i] = notLRHits[i].calc_LocalXWithTime(1, 1) - yRef - y[i];
+			Szz += w[i]*u[i]*u[i];
+			Sy  += w[i]*y[i];
+			Szy += w[i]*u[i]*y[i];
+			Syy += w[i]*y[i]*y[i];
 		}
 		
-		if(index==5) {
-			for(int i1 = 0; i1<totNotLRClus.size(); i1++) {					
-				for(int i2 = 2; i2<totNotLRClus.size(); i2++) {
-					for(int i3 = 4; i3<totNotLRClus.size(); i3++) {
-						for(int i4 = 6; i4<totNotLRClus.size(); i4++) {
-							for(int i5 = 8; i5<totNotLRClus.size(); i5++) {
-								if( 	(totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i2).get_Id()) 
-									 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i3).get_Id()) 
-									 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i4).get_Id())
-									 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i5).get_Id())
-									 ||	(totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i3).get_Id()) 
-									 || (totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i4).get_Id()) 
-									 || (totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i5).get_Id()) 
-									 || (totNotLRClus.get(i3).get_Id()==totNotLRClus.get(i4).get_Id()) 										 
-									 || (totNotLRClus.get(i3).get_Id()==totNotLRClus.get(i5).get_Id()) 
-									 || (totNotLRClus.get(i4).get_Id()==totNotLRClus.get(i5).get_Id()) 
-										)
-									continue;
-								FittedCluster newClus = new FittedCluster(fClus.getBaseCluster());
-								newClus.addAll(okClus);
-								newClus.add(totNotLRClus.get(i1));
-								newClus.add(totNotLRClus.get(i2));
-								newClus.add(totNotLRClus.get(i3));
-								newClus.add(totNotLRClus.get(i4));
-								newClus.add(totNotLRClus.get(i5));
-								arrayOfClus.add(newClus);
-							}
-						}
-					}
-				}
+		// bit i of the code set <==> hit i on the right (LR=+1)
+		int code = 0;
+		int bestCode = 0;
+		double bestChisq = this.lineFitChisq(S, Szz, Sy, Szy, Syy);
+		int nbOfCombinations = 1<<index;
+		for(int g = 1; g<nbOfCombinations; g++) {
+			int i = Integer.numberOfTrailingZeros(g);
+			code ^= 1<<i;
+			double d = (code & (1<<i))!=0 ? dy[i] : -dy[i];
+			Sy  += w[i]*d;
+			Szy += w[i]*u[i]*d;
+			Syy += w[i]*(2*y[i]+d)*d;
+			y[i] += d;
+			
+			double chisq = this.lineFitChisq(S, Szz, Sy, Szy, Syy);
+			if(chisq<bestChisq) {
+				bestChisq = chisq;
+				bestCode = code;
 			}
 		}
 		
-		if(index==6) {
-			for(int i1 = 0; i1<totNotLRClus.size(); i1++) {					
-				for(int i2 = 2; i2<totNotLRClus.size(); i2++) {
-					for(int i3 = 4; i3<totNotLRClus.size(); i3++) {
-						for(int i4 = 6; i4<totNotLRClus.size(); i4++) {
-							for(int i5 = 8; i5<totNotLRClus.size(); i5++) {
-								for(int i6 = 10; i6<totNotLRClus.size(); i6++) {
-									if( 	(totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i2).get_Id()) 
-										 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i3).get_Id()) 
-										 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i4).get_Id())
-										 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i5).get_Id())
-										 || (totNotLRClus.get(i1).get_Id()==totNotLRClus.get(i6).get_Id())
-										 ||	(totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i3).get_Id()) 
-										 || (totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i4).get_Id()) 
-										 || (totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i5).get_Id()) 
-										 || (totNotLRClus.get(i2).get_Id()==totNotLRClus.get(i6).get_Id()) 
-										 || (totNotLRClus.get(i3).get_Id()==totNotLRClus.get(i4).get_Id()) 										 
-										 || (totNotLRClus.get(i3).get_Id()==totNotLRClus.get(i5).get_Id()) 
-										 || (totNotLRClus.get(i3).get_Id()==totNotLRClus.get(i6).get_Id()) 
-										 || (totNotLRClus.get(i4).get_Id()==totNotLRClus.get(i5).get_Id())
-										 || (totNotLRClus.get(i4).get_Id()==totNotLRClus.get(i6).get_Id())
-										 || (totNotLRClus.get(i5).get_Id()==totNotLRClus.get(i6).get_Id())
-											)
-										continue;
-									FittedCluster newClus = new FittedCluster(fClus.getBaseCluster());
-									newClus.addAll(okClus);
-									newClus.add(totNotLRClus.get(i1));
-									newClus.add(totNotLRClus.get(i2));
-									newClus.add(totNotLRClus.get(i3));
-									newClus.add(totNotLRClus.get(i4));
-									newClus.add(totNotLRClus.get(i5));
-									arrayOfClus.add(newClus);
-								}
-							}
-						}
-					}
-				}
-			}
+		// make the best cluster
+		FittedCluster bestClus = new FittedCluster(fClus.getBaseCluster());
+		for(FittedHit hit : fClus) {
+			if(hit.get_LeftRightAmb()!=0) 
+				bestClus.add(hit);			
+		}
+		for(int i = 0; i<index; i++) {
+			FittedHit hit = notLRHits[i];
+			FittedHit newhit = new FittedHit(hit.get_Sector(), hit.get_Superlayer(), hit.get_Layer(), hit.get_Wire(),
+					hit.get_Time(), hit.get_DocaErr(), hit.get_Id()) ;
+			newhit.set_Doca(hit.get_Doca());
+			newhit.set_Id(hit.get_Id());
+			newhit.set_TrkgStatus(0);
+			
+			newhit.set_LeftRightAmb((bestCode & (1<<i))!=0 ? 1 : -1);
+			newhit.updateHitPositionWithTime(1, true); // assume the track angle is // to the layer, so that cosTrkAng =1
+			
+			newhit.set_AssociatedClusterID(hit.get_AssociatedClusterID());
+			
+			bestClus.add(newhit);
 		}
 		
-		return cf.BestClusterSelector(arrayOfClus, "TSC");
+		// refit the best cluster to set its fit parameters
+		return cf.BestClusterSelector(Collections.singletonList(bestClus), "TSC");
 		
 	}
 	
+	/**
+	 * 
+	 * @param hit the hit
+	 * @return the weight of the hit in the cluster line fit
+	 */
+	private double fitWeight(FittedHit hit) {
+		double err = hit.get_DocaErr();
+		if(err<=0)
+			return 1;
+		return 1./(err*err);
+	}
+	
+	/**
+	 * 
+	 * @return the chi2 of the weighted straight-line fit y = a*u + b from the weighted sums, with u centered on its weighted mean 
+	 */
+	private double lineFitChisq(double S, double Suu, double Sy, double Suy, double Syy) {
+		double chisq = Syy - Sy*Sy/S;
+		if(Suu>0)
+			chisq -= Suy*Suy/Suu;
+		return chisq;
+	}
+	
 
 	public FittedCluster SecondariesRemover(FittedCluster clus, ClusterFitter cf) {
 		//System.out.println(" secondaries Remover :"+clus.printInfo());
@@ -66,7 +66,7 @@ public class ClusterFinder  {
 	 * Fills 3-dimentional array of hits from input hits
 	 * @param hits the unfitted hit
 	 */
-	private void fillHitArray(List<Hit> hits, int rejectLayer) {
+	void fillHitArray(List<Hit> hits, int rejectLayer) {
 
 		// a Hit Array is used to identify clusters
 
@@ -155,20 +155,38 @@ public class ClusterFinder  {
 		return clumps;
 	}
 
+	// the occupancy bitmap of the thread, reused from one event to the next
+	private static final ThreadLocal<OccupancyBitmap> occupancyBitmap = new ThreadLocal<OccupancyBitmap>() {
+		@Override
+		protected OccupancyBitmap initialValue() {
+			return new OccupancyBitmap();
+		}
+	};
+
 	/**
 	 * @param allhits the list of unfitted hits
 	 * @return clusters of hits. Hit-based tracking linear fits to the wires are done to determine the clusters.  The result is a fitted cluster
 	 */
 	public List<FittedCluster> FindHitBasedClusters(List<Hit> allhits, ClusterCleanerUtilities ct, ClusterFitter cf) {
 
-		//fill array of hit
-		this.fillHitArray(allhits,0);
-		
-		//prune noise
-		ct.HitListPruner(allhits, HitArray);
-		
-		//find clumps of hits
-		List<Cluster> clusters = this.findClumps(allhits, ct);
+		List<Cluster> clusters = null;
+		if(Constants.useOccupancyBitmapClustering) {
+			OccupancyBitmap bitmap = occupancyBitmap.get();
+			bitmap.fill(allhits);
+			//prune noise
+			bitmap.pruneHits(allhits);
+			//find clumps of hits
+			clusters = bitmap.findClumps(allhits);
+		} else {
+			//fill array of hit
+			this.fillHitArray(allhits,0);
+			
+			//prune noise
+			ct.HitListPruner(allhits, HitArray);
+			
+			//find clumps of hits
+			clusters = this.findClumps(allhits, ct);
+		}
         
 		// create cluster list to be fitted
 		List<FittedCluster> selectedClusList =  new ArrayList<FittedCluster>();
@@ -257,26 +275,26 @@ public class ClusterFinder  {
 				NbClus = hit.get_AssociatedClusterID();
 		}
 		
-		FittedHit[][] HitArray = new FittedHit[fhits.size()][NbClus+1];
+		// the hits of each cluster, in the order of the hit list
+		List<List<FittedHit>> hitsInCluster = new ArrayList<List<FittedHit>>(NbClus+1);
+		for(int c = 0; c<NbClus+1; c++) 
+			hitsInCluster.add(null);
 		
-		int index =0;
 		for(FittedHit hit : fhits) {
 			if(hit.get_AssociatedClusterID()==-1)
 				continue;
-			HitArray[index][hit.get_AssociatedClusterID()] = hit;
+			List<FittedHit> hitlist = hitsInCluster.get(hit.get_AssociatedClusterID());
+			if(hitlist==null) {
+				hitlist = new ArrayList<FittedHit>();
+				hitsInCluster.set(hit.get_AssociatedClusterID(), hitlist);
+			}
+			hitlist.add(hit);
 			hit.updateHitPosition(true);
-			
-			index++;
 		}
 		
 		for(int c = 0; c<NbClus+1; c++) {
-			List<FittedHit> hitlist = new ArrayList<FittedHit>();
-			for(int i = 0; i<index; i++) {
-				if(HitArray[i][c]!=null) {
-					hitlist.add(HitArray[i][c]);					
-				}
-			}
-			if(hitlist.size()>0) {
+			List<FittedHit> hitlist = hitsInCluster.get(c);
+			if(hitlist!=null) {
 				
 				Cluster cluster = new Cluster(hitlist.get(0).get_Sector(),hitlist.get(0).get_Superlayer(),c);
 				FittedCluster fcluster = new FittedCluster(cluster);			
@@ -482,7 +500,16 @@ public class ClusterFinder  {
 				}
 			}
 		}
-		// now fill the bank
+		return this.fillLayerEffsBank(EffArray, event);
+	}
+	
+	/**
+	 * 
+	 * @param EffArray the layer status array [sector][superlayer][layer]: 1 = live, 0 = no hit near the track, -1 = not tested
+	 * @param event the event
+	 * @return the layer efficiencies bank
+	 */
+	EvioDataBank fillLayerEffsBank(int[][][] EffArray, EvioDataEvent event) {
 		int bankSize =6*6*6;
 		EvioDataBank bank =  (EvioDataBank) event.getDictionary().createBank("HitBasedTrkg::LayerEffs",bankSize);
 		int bankEntry = 0;
@@ -141,7 +141,7 @@ public class ClusterFitter {
 	    	}
 	    	
 	    	if(local==false) {
-		    	x = GeometryLoader.dcDetector.getSector(0).getSuperlayer(clus.get_Superlayer()-1).getLayer(clus.get(i).get_Layer()-1).getComponent(clus.get(i).get_Wire()-1).getMidpoint().x();
+		    	x = GeometryLoader.getWireMidpointX(clus.get_Superlayer(), clus.get(i).get_Layer(), clus.get(i).get_Wire());
 				double cosTrkAngle = 1./Math.sqrt(1.+clus.get_clusterLineFitSlope()*clus.get_clusterLineFitSlope());		
 				calc_doca = (x-FitPars.slope()*FitArray[0][i]-FitPars.intercept())*cosTrkAngle*Math.cos(Math.toRadians(6.));
 	    	}
@@ -0,0 +1,127 @@
+package org.jlab.rec.dc.cluster;
+
+import java.util.List;
+
+import org.jlab.evio.clas12.EvioDataBank;
+import org.jlab.evio.clas12.EvioDataEvent;
+import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.hit.FittedHit;
+import org.jlab.rec.dc.hit.Hit;
+import org.jlab.rec.dc.hit.HitIndex;
+
+/**
+ * Computes the layer efficiencies from the hit-based clusters without re-clustering the event once per rejected layer.
+ * The hits are indexed once by (sector, superlayer, layer, wire).  For each cluster the sums of the local coordinate line fit
+ * (layer number vs. cell center) are accumulated per layer, so that the six leave-one-layer-out fits are obtained by subtracting
+ * the sums of the rejected layer.  The rejected layer is live if a hit is found within a cell of the leave-one-layer-out line,
+ * which only requires looking up the wires around the line.
+ * @author ziegler
+ *
+ */
+public class LayerEfficiencyEngine {
+
+	private static final double CELLWIDTH = 2*Math.tan(Math.PI/6.); // the cell width in the local coordinate system
+
+	private final HitIndex hitIndex = new HitIndex();
+
+	// the per-layer sums of the cluster fit
+	private final double[] S = new double[6];
+	private final double[] Sx = new double[6];
+	private final double[] Sy = new double[6];
+	private final double[] Sxx = new double[6];
+	private final double[] Sxy = new double[6];
+
+	/**
+	 *
+	 * @param fclusters the hit-based clusters
+	 * @param allhits all the hits in the event
+	 * @param clusFinder the cluster finder used to fill the bank
+	 * @param event the event
+	 * @return the layer efficiencies bank
+	 */
+	public EvioDataBank getLayerEfficiencies(List<FittedCluster> fclusters, List<Hit> allhits, ClusterFinder clusFinder, EvioDataEvent event) {
+
+		hitIndex.fill(allhits);
+
+		int[][][] EffArray = new int[6][6][6]; //6 sectors,  6 superlayers, 6 layers
+		for(int i=0; i<6; i++)
+			for(int j=0; j<6; j++)
+				for(int k=0; k<6; k++)
+					EffArray[i][j][k]=-1;
+
+		for(FittedCluster clus : fclusters) {
+			if(clus==null || clus.size()==0)
+				continue;
+
+			int sector = clus.get_Sector();
+			int superlayer = clus.get_Superlayer();
+
+			for(int l = 0; l<6; l++) {
+				S[l] = 0; Sx[l] = 0; Sy[l] = 0; Sxx[l] = 0; Sxy[l] = 0;
+			}
+			for(FittedHit hit : clus) {
+				int l = hit.get_Layer()-1;
+				double x = hit.get_lX();
+				double y = hit.get_lY();
+				S[l]++;
+				Sx[l] += x;
+				Sy[l] += y;
+				Sxx[l] += x*x;
+				Sxy[l] += x*y;
+			}
+
+			for(int rejLy = 1; rejLy<=6; rejLy++) {
+				// the layer status is only set if the layer has hits
+				if(hitIndex.get_NbOfHitsInLayer(sector, superlayer, rejLy)==0)
+					continue;
+
+				// the leave-one-layer-out fit
+				double s = 0, sx = 0, sy = 0, sxx = 0, sxy = 0;
+				int nlayers = 0;
+				for(int l = 0; l<6; l++) {
+					if(l==rejLy-1 || S[l]==0)
+						continue;
+					nlayers++;
+					s += S[l];
+					sx += Sx[l];
+					sy += Sy[l];
+					sxx += Sxx[l];
+					sxy += Sxy[l];
+				}
+				if(nlayers<Constants.DC_MIN_NLAYERS)
+					continue;
+				double det = s*sxx - sx*sx;
+				if(det==0)
+					continue;
+				double slope = (s*sxy - sx*sy)/det;
+				double intercept = (sy - slope*sx)/s;
+
+				EffArray[sector-1][superlayer-1][rejLy-1] = this.isLayerLive(clus.get(0), sector, superlayer, rejLy, slope, intercept) ? 1 : 0;
+			}
+		}
+
+		return clusFinder.fillLayerEffsBank(EffArray, event);
+	}
+
+	/**
+	 *
+	 * @return true if a hit in the layer is within a cell of the line
+	 */
+	private boolean isLayerLive(Hit refHit, int sector, int superlayer, int layer, double slope, double intercept) {
+
+		double locY = slope*layer+intercept;
+		// the wires whose cell centers can be within a cell of the line
+		double w = locY/CELLWIDTH;
+		int wmin = Math.max(0, (int) Math.floor(w) - 2);
+		int wmax = Math.min(Constants.NWIRE+1, (int) Math.ceil(w) + 2);
+
+		for(int wire = wmin; wire<=wmax; wire++) {
+			if(hitIndex.get_LastHit(sector, superlayer, layer, wire)==-1)
+				continue;
+			double calc_doca = Math.abs(refHit.calcLocY(layer, wire)-locY);
+			if(calc_doca<CELLWIDTH)
+				return true; //found a hit close enough to the track to assume that the layer is live
+		}
+		return false;
+	}
+}
@@ -0,0 +1,288 @@
+package org.jlab.rec.dc.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.hit.Hit;
+
+/**
+ * The wire occupancy of the DC stored as bitmaps, used as the front-end of the hit-based clustering.
+ * <p>
+ * Each layer of each superlayer of each sector has a 128-bit map (two longs) of its hit wires, and each superlayer has the
+ * union of the maps of its six layers.  Empty superlayers are skipped using a map of the occupied superlayers, and runs of
+ * hit or empty wires are found with bit operations instead of looping over the wires.  The hit pruning and the clump finding
+ * give the same results as ClusterCleanerUtilities.HitListPruner and ClusterFinder.findClumps.
+ * The buffers are reused from one event to the next; a bitmap is not thread safe.
+ * @author ziegler
+ *
+ */
+public class OccupancyBitmap {
+
+	private static final int NSSL  = Constants.NSECT*Constants.NSLAY;
+	private static final int NLAYR = Constants.NLAYR;
+	private static final int NWIRE = Constants.NWIRE;
+	private static final int WORDS = (NWIRE+63)/64; // the number of longs in the map of a layer
+
+	private final long[] layerBits = new long[NSSL*NLAYR*WORDS];	// [(ssl*NLAYR + layer)*WORDS + word]
+	private final long[] unionBits = new long[NSSL*WORDS];			// [ssl*WORDS + word]
+	private long occupiedSuperlayers;								// bit ssl is set if the superlayer has hits
+	private final Hit[] hitArray = new Hit[NSSL*NLAYR*NWIRE];		// [(ssl*NLAYR + layer)*NWIRE + wire index]
+
+	private final Set<Hit> prunedHits = Collections.newSetFromMap(new IdentityHashMap<Hit, Boolean>());
+
+	/**
+	 * Clears the hits of the previous event, visiting only the occupied superlayers and wires
+	 */
+	public void clear() {
+		long ssls = occupiedSuperlayers;
+		while(ssls!=0) {
+			int ssl = Long.numberOfTrailingZeros(ssls);
+			ssls &= ssls-1;
+			for(int la = 0; la<NLAYR; la++) {
+				int lw = (ssl*NLAYR+la)*WORDS;
+				for(int w = 0; w<WORDS; w++) {
+					long bits = layerBits[lw+w];
+					while(bits!=0) {
+						hitArray[(ssl*NLAYR+la)*NWIRE + w*64 + Long.numberOfTrailingZeros(bits)] = null;
+						bits &= bits-1;
+					}
+					layerBits[lw+w] = 0;
+				}
+			}
+			for(int w = 0; w<WORDS; w++)
+				unionBits[ssl*WORDS+w] = 0;
+		}
+		occupiedSuperlayers = 0;
+	}
+
+	/**
+	 * Fills the bitmaps with the hits of the event; of several hits on the same wire the last one is kept
+	 * @param hits the hits
+	 */
+	public void fill(List<Hit> hits) {
+		this.clear();
+		for(Hit hit : hits) {
+			if(hit.get_Sector()<1 || hit.get_Sector()>Constants.NSECT || hit.get_Superlayer()<1 || hit.get_Superlayer()>Constants.NSLAY
+					|| hit.get_Layer()<1 || hit.get_Layer()>NLAYR)
+				continue;
+			int ssl = (hit.get_Sector()-1)*Constants.NSLAY + (hit.get_Superlayer() - 1);
+			int wi  = hit.get_Wire() - 1;
+			int la  = hit.get_Layer() - 1;
+			if(wi<0 || wi>=NWIRE)
+				continue;
+
+			hitArray[(ssl*NLAYR+la)*NWIRE+wi] = hit;
+			layerBits[(ssl*NLAYR+la)*WORDS + (wi>>>6)] |= 1L<<wi;
+			unionBits[ssl*WORDS + (wi>>>6)] |= 1L<<wi;
+			occupiedSuperlayers |= 1L<<ssl;
+		}
+	}
+
+	/**
+	 *
+	 * @return the first set bit of a map at or after a given bit, -1 if none
+	 */
+	private static int nextSetBit(long[] bits, int offset, int from) {
+		int w = from>>>6;
+		if(w>=WORDS)
+			return -1;
+		long word = bits[offset+w] & (-1L << from);
+		while(true) {
+			if(word!=0)
+				return w*64 + Long.numberOfTrailingZeros(word);
+			if(++w==WORDS)
+				return -1;
+			word = bits[offset+w];
+		}
+	}
+
+	/**
+	 *
+	 * @return the first clear bit of a map at or after a given bit, at most NWIRE
+	 */
+	private static int nextClearBit(long[] bits, int offset, int from) {
+		int w = from>>>6;
+		if(w>=WORDS)
+			return NWIRE;
+		long word = ~bits[offset+w] & (-1L << from);
+		while(true) {
+			if(word!=0)
+				return Math.min(NWIRE, w*64 + Long.numberOfTrailingZeros(word));
+			if(++w==WORDS)
+				return NWIRE;
+			word = ~bits[offset+w];
+		}
+	}
+
+	private void removeHit(int ssl, int la, int wi) {
+		int idx = (ssl*NLAYR+la)*NWIRE+wi;
+		prunedHits.add(hitArray[idx]);
+		hitArray[idx] = null;
+		layerBits[(ssl*NLAYR+la)*WORDS + (wi>>>6)] &= ~(1L<<wi);
+	}
+
+	/**
+	 * Removes the noise hits making contiguous runs of hits in a layer, as in ClusterCleanerUtilities.HitListPruner
+	 * @param hits the list of hits, from which the pruned hits are removed
+	 */
+	public void pruneHits(List<Hit> hits) {
+
+		prunedHits.clear();
+
+		long ssls = occupiedSuperlayers;
+		while(ssls!=0) {
+			int ssl = Long.numberOfTrailingZeros(ssls);
+			ssls &= ssls-1;
+
+			for(int la = 0; la<NLAYR; la++) {
+				int lw = (ssl*NLAYR+la)*WORDS;
+				int start = nextSetBit(layerBits, lw, 0);
+				while(start!=-1) {
+					int end = nextClearBit(layerBits, lw, start);
+					int size = end-start;
+
+					// for 3 hits in layer, keep only the middle one
+					if(size==3) {
+						this.removeHit(ssl, la, start);
+						this.removeHit(ssl, la, start+2);
+					}
+					if(size>3) {
+						int NbEndCells2Keep = Constants.DEFAULTNBENDCELLSTOKEEP;
+						if(size>4)
+							NbEndCells2Keep = Constants.NBENDCELLSTOKEEPMORETHAN4HITSINCOLUMN; //possible tracks crossing
+						if(size>10)
+							NbEndCells2Keep = 0; //kill all hits
+						for(int wi = start+NbEndCells2Keep; wi<end-NbEndCells2Keep; wi++)
+							this.removeHit(ssl, la, wi);
+					}
+					start = (end<NWIRE) ? nextSetBit(layerBits, lw, end) : -1;
+				}
+			}
+
+			// the union of the pruned layers
+			for(int w = 0; w<WORDS; w++) {
+				long union = 0;
+				for(int la = 0; la<NLAYR; la++)
+					union |= layerBits[(ssl*NLAYR+la)*WORDS+w];
+				unionBits[ssl*WORDS+w] = union;
+			}
+		}
+
+		if(prunedHits.size()>0)
+			hits.removeAll(prunedHits);
+		prunedHits.clear();
+	}
+
+	/**
+	 * Finds the clumps of hits, i.e. the groups of hits on contiguous wires delimited by wires with no hit in any layer,
+	 * with hits in at least Constants.DC_MIN_NLAYERS layers, as in ClusterFinder.findClumps
+	 * @param allhits the list of hits, sorted as in ClusterFinder.findClumps
+	 * @return the list of clumps
+	 */
+	public List<Cluster> findClumps(List<Hit> allhits) {
+		Collections.sort(allhits);
+
+		List<Cluster> clumps = new ArrayList<Cluster>();
+		int cid = 1;  // cluster id, will increment with each new good cluster
+
+		long ssls = occupiedSuperlayers;
+		while(ssls!=0) {
+			int ssl = Long.numberOfTrailingZeros(ssls);
+			ssls &= ssls-1;
+
+			int uw = ssl*WORDS;
+			int start = nextSetBit(unionBits, uw, 0);
+			while(start!=-1) {
+				int end = nextClearBit(unionBits, uw, start);
+
+				// the layers hit in the run of wires
+				int layersHit = 0;
+				for(int la = 0; la<NLAYR; la++) {
+					int lw = (ssl*NLAYR+la)*WORDS;
+					int first = nextSetBit(layerBits, lw, start);
+					if(first!=-1 && first<end)
+						layersHit |= 1<<la;
+				}
+
+				// Need at least MIN_NLAYERS
+				if(Integer.bitCount(layersHit) >= Constants.DC_MIN_NLAYERS)  {
+					Cluster this_cluster = new Cluster(ssl/Constants.NSLAY + 1, ssl%Constants.NSLAY + 1, cid++);
+					for(int wi = start; wi<end; wi++)
+						for(int la = 0; la<NLAYR; la++) {
+							Hit hit = hitArray[(ssl*NLAYR+la)*NWIRE+wi];
+							if(hit!=null)
+								this_cluster.add(hit);
+						}
+					clumps.add(this_cluster);
+				}
+				start = (end<NWIRE) ? nextSetBit(unionBits, uw, end) : -1;
+			}
+		}
+		return clumps;
+	}
+
+	/**
+	 * Compares the time taken by the array-based and bitmap-based clustering front-ends (filling, pruning and clump finding)
+	 * on events with a given random wire occupancy and a few tracks, as in luminosity scans
+	 * @param nEvents the number of events
+	 * @param occupancy the fraction of wires hit by the background
+	 */
+	public static void benchmark(int nEvents, double occupancy) {
+		Random rnd = new Random(1);
+		List<List<Hit>> events = new ArrayList<List<Hit>>(nEvents);
+		for(int e = 0; e<nEvents; e++) {
+			List<Hit> hits = new ArrayList<Hit>();
+			int id = 0;
+			for(int s = 1; s<=Constants.NSECT; s++)
+				for(int sl = 1; sl<=Constants.NSLAY; sl++) {
+					for(int l = 1; l<=NLAYR; l++)
+						for(int w = 1; w<=112; w++)
+							if(rnd.nextDouble()<occupancy)
+								hits.add(new Hit(s, sl, l, w, 0, 0, id++));
+					// a track crossing the superlayer
+					int w0 = 5+rnd.nextInt(100);
+					for(int l = 1; l<=NLAYR; l++)
+						hits.add(new Hit(s, sl, l, w0+l/3, 0, 0, id++));
+				}
+			events.add(hits);
+		}
+
+		OccupancyBitmap bitmap = new OccupancyBitmap();
+		ClusterCleanerUtilities ct = new ClusterCleanerUtilities();
+
+		for(int pass = 0; pass < 3; pass++) { // the first passes warm up the JIT
+			int nClumpsArray = 0;
+			int nClumpsBitmap = 0;
+			long t0 = System.nanoTime();
+			for(List<Hit> event : events) {
+				List<Hit> hits = new ArrayList<Hit>(event);
+				ClusterFinder finder = new ClusterFinder();
+				finder.fillHitArray(hits, 0);
+				ct.HitListPruner(hits, finder.getHitArray());
+				nClumpsArray += finder.findClumps(hits, ct).size();
+			}
+			long t1 = System.nanoTime();
+			for(List<Hit> event : events) {
+				List<Hit> hits = new ArrayList<Hit>(event);
+				bitmap.fill(hits);
+				bitmap.pruneHits(hits);
+				nClumpsBitmap += bitmap.findClumps(hits).size();
+			}
+			long t2 = System.nanoTime();
+			System.out.println("clustering front-end at occupancy "+occupancy+": hit array "+(float)((t1-t0)/1000./nEvents)+" us/event, bitmap "
+					+(float)((t2-t1)/1000./nEvents)+" us/event (clumps "+nClumpsArray+" / "+nClumpsBitmap+")");
+		}
+	}
+
+	public static void main(String[] args) {
+		int nEvents = (args.length>0) ? Integer.parseInt(args[0]) : 2000;
+		double[] occupancies = new double[] {0.01, 0.04, 0.1};
+		for(double occupancy : occupancies)
+			OccupancyBitmap.benchmark(nEvents, occupancy);
+	}
+}
@@ -219,7 +219,7 @@ public class Cross extends ArrayList<Segment> implements Comparable<Cross> {
 	 */
 	public void set_CrossParams() {
 		
-		double z = GeometryLoader.dcDetector.getSector(0).getRegionMiddlePlane(this.get_Region()-1).point().z();
+		double z = GeometryLoader.getRegionMiddlePlaneZ(this.get_Region());
 		
 		double wy_over_wx = (Math.cos(Math.toRadians(6.))/Math.sin(Math.toRadians(6.)));
 				
@@ -1,11 +1,14 @@
 package org.jlab.rec.dc.cross;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.jlab.geom.prim.Point3D;
 import org.jlab.geom.prim.Vector3D;
 import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.hit.SectorOccupancy;
 
 import Jama.Matrix;
 import trackfitter.fitter.LineFitter;
@@ -21,12 +24,73 @@ import trackfitter.fitter.LineFitter;
 
 public class CrossListFinder  {
 
+	// per-sector triplet statistics of the sector-bucketed mode
+	private final int[] nbOfTriplets = new int[6];
+	private final int[] nbOfPrunedTriplets = new int[6];
+	private final int[] nbOfRejectedTriplets = new int[6];
+	private final int[] nbOfAcceptedTriplets = new int[6];
+	
 	/**
 	 * 
 	 * @param dccrosslist the list of crosses in the event
 	 * @return the list of crosses determined to be consistent with belonging to a track in the DC
 	 */
 	public CrossList candCrossLists(List<Cross> dccrosslist) {
+		return this.candCrossLists(dccrosslist, null);
+	}
+	
+	/**
+	 * Makes the cross lists of the track candidates found in a previous pass (the hit-based tracking), without a new search:
+	 * each cross of a candidate is replaced by the crosses of the list made of the same two segments, matched by the segment IDs.
+	 * The candidates with a region without a matching cross are dropped.
+	 * @param dccrosslist the list of crosses in the event
+	 * @param cands the track candidates of the previous pass, as lists of crosses
+	 * @return the list of crosses of the candidates
+	 */
+	public CrossList trackCrossLists(List<Cross> dccrosslist, List<? extends List<Cross>> cands) {
+		CrossList crossList = new CrossList();
+		if(cands==null)
+			return crossList;
+		for(List<Cross> cand : cands) {
+			List<List<Cross>> matches = new ArrayList<List<Cross>>();
+			for(int r = 0; r<3; r++) 
+				matches.add(new ArrayList<Cross>());
+			for(Cross c : cand) {
+				for(Cross dc : dccrosslist) {
+					if(dc.get_Sector()==c.get_Sector() && dc.get_Region()==c.get_Region() 
+							&& dc.get_Segment1().get_Id()==c.get_Segment1().get_Id() && dc.get_Segment2().get_Id()==c.get_Segment2().get_Id())
+						matches.get(c.get_Region()-1).add(dc);
+				}
+			}
+			for(Cross c1 : matches.get(0)) {
+				for(Cross c2 : matches.get(1)) {
+					for(Cross c3 : matches.get(2)) {
+						List<Cross> crosses = new ArrayList<Cross>();
+						crosses.add(c1);
+						crosses.add(c2);
+						crosses.add(c3);
+						crossList.add(crosses);
+					}
+				}
+			}
+		}
+		return crossList;
+	}
+	
+	/**
+	 * 
+	 * @param dccrosslist the list of crosses in the event
+	 * @param occupancy the sector occupancy bounding the number of cross lists in each sector (the first lists found are kept), 
+	 * null if the number of lists is not bounded
+	 * @return the list of crosses determined to be consistent with belonging to a track in the DC
+	 */
+	public CrossList candCrossLists(List<Cross> dccrosslist, SectorOccupancy occupancy) {
+		int[] maxNbOfLists = new int[6];
+		for(int s = 0; s<6; s++) 
+			maxNbOfLists[s] = occupancy==null ? Integer.MAX_VALUE : occupancy.get_MaxNbOfCrossLists(s+1);
+		if(Constants.useSectorBucketedCrossLists==true)
+			return this.candCrossListsBySector(dccrosslist, maxNbOfLists);
+		int[] nbOfLists = new int[6];
 		//
 		List<List<Cross>> trkCnds = new ArrayList<List<Cross>>();
 
@@ -54,6 +118,8 @@ public class CrossListFinder  {
 						for(Cross c3 : dccrosslistRg3) {
 							if(c1.get_Sector()!=c2.get_Sector() || c1.get_Sector()!=c3.get_Sector())
 								continue;
+							if(nbOfLists[c1.get_Sector()-1]>=maxNbOfLists[c1.get_Sector()-1])
+								continue;
 							
 							if(Constants.DEBUGPRINTMODE==true)
 								System.out.println("Trying to find a track with crosses "+
@@ -128,6 +194,7 @@ public class CrossListFinder  {
 								trkCnds.add(index, ct); // pass the cand
 								// increase index	
 								index++;
+								nbOfLists[c1.get_Sector()-1]++;
 								
 							} 
 						}
@@ -142,6 +209,190 @@ public class CrossListFinder  {
 
 
 
+	/**
+	 * Finds the lists of crosses as candCrossLists does, with the crosses of Regions 2 and 3 bucketed by sector.
+	 * The triplets are first pruned by a cheap compatibility window on the cross directions and positions, 
+	 * the quadratic fit is only done for the remaining triplets, and the candidates are deduplicated via a hashed key of the cross IDs.
+	 * The output is in the same order as in candCrossLists.
+	 * @param dccrosslist the list of crosses in the event
+	 * @param maxNbOfLists the maximum number of lists in each sector
+	 * @return the list of crosses determined to be consistent with belonging to a track in the DC
+	 */
+	private CrossList candCrossListsBySector(List<Cross> dccrosslist, int[] maxNbOfLists) {
+		
+		CrossList crossList = new CrossList();
+		
+		List<Cross> dccrosslistRg1 = new ArrayList<Cross>();
+		List<List<Cross>> dccrosslistRg2 = new ArrayList<List<Cross>>(6);
+		List<List<Cross>> dccrosslistRg3 = new ArrayList<List<Cross>>(6);
+		for (int s =0; s<6; s++) {
+			dccrosslistRg2.add(new ArrayList<Cross>());
+			dccrosslistRg3.add(new ArrayList<Cross>());
+		}
+		for(Cross dc : dccrosslist) {
+			if(dc.get_Region()==1)
+				dccrosslistRg1.add(dc);
+			if(dc.get_Region()==2)
+				dccrosslistRg2.get(dc.get_Sector()-1).add(dc);
+			if(dc.get_Region()==3)
+				dccrosslistRg3.get(dc.get_Sector()-1).add(dc);
+		}
+		
+		Set<Long> trkCndKeys = new HashSet<Long>();
+		QuadraticFit qf = new QuadraticFit(true);
+		double[] X = new double[3];
+		double[] Y = new double[3];
+		double[] Z = new double[3];
+		double[] errX = new double[3];
+		double[] errY = new double[3];
+		
+		int[] nbOfLists = new int[6];
+		for(Cross c1 : dccrosslistRg1) {
+			int s = c1.get_Sector()-1;
+			for(Cross c2 : dccrosslistRg2.get(s)) {
+				for(Cross c3 : dccrosslistRg3.get(s)) {
+					if(nbOfLists[s]>=maxNbOfLists[s])
+						break;
+					nbOfTriplets[s]++;
+					
+					if(this.passCompatibilityWindow(c1, c2, c3)==false) {
+						nbOfPrunedTriplets[s]++;
+						continue;
+					}
+					if(Constants.DEBUGPRINTMODE==true)
+						System.out.println("Trying to find a track with crosses "+
+					c1.printInfo()+" "+c2.printInfo()+" "+c3.printInfo());
+					
+					Cross[] cs = {c1, c2, c3};
+					for(int i = 0; i<3; i++) {
+						Z[i] = cs[i].get_Point().z();
+						Y[i] = cs[i].get_Point().y();
+						X[i] = cs[i].get_Point().x();
+						errX[i] = cs[i].get_PointErr().x();
+						errY[i] = cs[i].get_PointErr().y();
+					}
+					qf.evaluate(Z, X, errX,Y,errY);
+					
+					// require that the cross direction estimate be in the direction of the trajectory
+					boolean passAngularSelection = true;
+					for(int i = 0; i<3; i++) {
+						double cosTh = qf.fitResult[3][i]*cs[i].get_Dir().x()+qf.fitResult[4][i]*cs[i].get_Dir().y()+qf.fitResult[5][i]*cs[i].get_Dir().z();
+						if(cosTh<Constants.TRACKDIRTOCROSSDIRCOSANGLE)
+							passAngularSelection = false;
+					}
+					if(passAngularSelection==false) {
+						nbOfRejectedTriplets[s]++;
+						continue;
+					}
+					if(Constants.DEBUGPRINTMODE==true)
+						System.out.println(" Passed angular selection   ");
+					
+					// the cross IDs are unique in the event
+					long key = ((long) c1.get_Id()<<42) | ((long) c2.get_Id()<<21) | (long) c3.get_Id();
+					if(trkCndKeys.add(key)==false)
+						continue;
+					
+					List<Cross> ct = new ArrayList<Cross>(3);
+					ct.add(c1);	
+					ct.add(c2);			
+					ct.add(c3);
+					crossList.add(ct);
+					nbOfAcceptedTriplets[s]++;
+					nbOfLists[s]++;
+				}
+			}
+		}
+		if(Constants.DEBUGPRINTMODE==true)
+			this.printStatistics();
+		
+		return crossList;
+	}
+	
+	/**
+	 * A cheap compatibility window applied before the quadratic fit: the chords joining the crosses of consecutive regions must be 
+	 * along the cross directions, and the non-bending y coordinate must be close to linear in z.
+	 * @param c1 the Region 1 cross
+	 * @param c2 the Region 2 cross
+	 * @param c3 the Region 3 cross
+	 * @return true if the triplet passes the window
+	 */
+	private boolean passCompatibilityWindow(Cross c1, Cross c2, Cross c3) {
+		
+		Point3D p1 = c1.get_Point();
+		Point3D p2 = c2.get_Point();
+		Point3D p3 = c3.get_Point();
+		
+		if(!(p1.z()<p2.z() && p2.z()<p3.z()))
+			return false;
+		
+		// y is ~ linear in z
+		double y2 = p1.y() + (p3.y()-p1.y())*(p2.z()-p1.z())/(p3.z()-p1.z());
+		if(Math.abs(p2.y()-y2)>Constants.CROSSLISTMAXDELTAY)
+			return false;
+		
+		return this.chordAlongDirs(p1, p2, c1.get_Dir(), c2.get_Dir()) && this.chordAlongDirs(p2, p3, c2.get_Dir(), c3.get_Dir());
+	}
+	
+	private boolean chordAlongDirs(Point3D p1, Point3D p2, Point3D d1, Point3D d2) {
+		double ux = p2.x()-p1.x();
+		double uy = p2.y()-p1.y();
+		double uz = p2.z()-p1.z();
+		double len = Math.sqrt(ux*ux+uy*uy+uz*uz);
+		
+		double cos1 = (ux*d1.x()+uy*d1.y()+uz*d1.z())/len;
+		double cos2 = (ux*d2.x()+uy*d2.y()+uz*d2.z())/len;
+		
+		return cos1>=Constants.CROSSLISTCHORDDIRCOSANGLE && cos2>=Constants.CROSSLISTCHORDDIRCOSANGLE;
+	}
+	
+	/**
+	 * Prints the per-sector triplet statistics of the sector-bucketed mode accumulated by this finder
+	 */
+	public void printStatistics() {
+		for(int s = 0; s<6; s++) {
+			if(nbOfTriplets[s]==0)
+				continue;
+			System.out.println("Sector "+(s+1)+" cross triplets: "+nbOfTriplets[s]+" tried, "+nbOfPrunedTriplets[s]+" pruned by the window, "
+					+nbOfRejectedTriplets[s]+" rejected by the fit, "+nbOfAcceptedTriplets[s]+" accepted");
+		}
+	}
+	
+	/**
+	 * 
+	 * @param sector the sector (1...6)
+	 * @return the number of cross triplets tried in the sector-bucketed mode
+	 */
+	public int get_NbOfTriplets(int sector) {
+		return nbOfTriplets[sector-1];
+	}
+	
+	/**
+	 * 
+	 * @param sector the sector (1...6)
+	 * @return the number of cross triplets pruned by the compatibility window before the quadratic fit
+	 */
+	public int get_NbOfPrunedTriplets(int sector) {
+		return nbOfPrunedTriplets[sector-1];
+	}
+	
+	/**
+	 * 
+	 * @param sector the sector (1...6)
+	 * @return the number of cross triplets rejected by the angular selection after the quadratic fit
+	 */
+	public int get_NbOfRejectedTriplets(int sector) {
+		return nbOfRejectedTriplets[sector-1];
+	}
+	
+	/**
+	 * 
+	 * @param sector the sector (1...6)
+	 * @return the number of cross triplets accepted as track candidates
+	 */
+	public int get_NbOfAcceptedTriplets(int sector) {
+		return nbOfAcceptedTriplets[sector-1];
+	}
+	
 	@SuppressWarnings("unused")
 	private void RecalculateCrossDir(Cross c1, double slope) {
 		
@@ -192,13 +443,22 @@ public class CrossListFinder  {
 				                         {0.,0.,0.},
 				                         {0.,0.,0.} };
 		
+		// solve the normal equations in closed form instead of allocating Jama matrices
+		private final boolean closedForm;
+		
+		public QuadraticFit() {
+			this(false);
+		}
+		
+		public QuadraticFit(boolean closedForm) {
+			this.closedForm = closedForm;
+		}
+		
 		public double[] evaluate(double[] x, double[] y, double[] err, double[] y2, double[] err2) {
 			LineFitter linefit = new LineFitter();
 			linefit.fitStatus(x, y2, err, err, x.length);
 			
 			double[] ret = {0.,0.,0.};
-			Matrix A = new Matrix(3,3);
-			Matrix V = new Matrix(3,1);
 			double sum1 = 0.0;
 			double sum2 = 0.0;
 			double sum3 = 0.0;
@@ -223,6 +483,13 @@ public class CrossListFinder  {
 				sum7 += y1 * x1/e2;
 				sum8 += y1/e2;
 			}
+			if(closedForm) {
+				this.solve(sum1, sum2, sum3, sum4, sum5, sum6, sum7, sum8, ret);
+				this.setFitResult(x, ret, linefit);
+				return(ret);
+			}
+			Matrix A = new Matrix(3,3);
+			Matrix V = new Matrix(3,1);
 			A.set(0,0,sum1);
 			A.set(0,1,sum2);
 			A.set(0,2,sum3);
@@ -244,6 +511,30 @@ public class CrossListFinder  {
 				ret[i] = X.get(i, 0);
 				//System.out.println(X.get(i, 0));
 			}
+			this.setFitResult(x, ret, linefit);
+		} catch (ArithmeticException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} 
+		
+		return(ret);
+		}
+		
+		/**
+		 * Solves the symmetric 3x3 normal equations by Cramer's rule
+		 */
+		private void solve(double s1, double s2, double s3, double s4, double s5, double v0, double v1, double v2, double[] ret) {
+			double c00 = s3*s5 - s4*s4;
+			double c01 = s3*s4 - s2*s5;
+			double c02 = s2*s4 - s3*s3;
+			double det = s1*c00 + s2*c01 + s3*c02;
+			
+			ret[0] = (v0*c00 + v1*c01 + v2*c02)/det;
+			ret[1] = (v0*c01 + v1*(s1*s5 - s3*s3) + v2*(s2*s3 - s1*s4))/det;
+			ret[2] = (v0*c02 + v1*(s2*s3 - s1*s4) + v2*(s1*s3 - s2*s2))/det;
+		}
+		
+		private void setFitResult(double[] x, double[] ret, LineFitter linefit) {
 			for (int i = 0; i<x.length; i++) {
 				
 				double tiltSysXterm = ret[0]*x[i]*x[i]+ret[1]*x[i]+ret[2];				
@@ -270,12 +561,6 @@ public class CrossListFinder  {
 				//double n = ret[0]*x[i]*x[i]+ret[1]*x[i]+ret[2] - y[i];
 				
 			}
-		} catch (ArithmeticException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} 
-		
-		return(ret);
 		}
 	}
 
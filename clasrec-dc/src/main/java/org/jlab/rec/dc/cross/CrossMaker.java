@@ -18,6 +18,17 @@ public class CrossMaker {
 	public CrossMaker() {
 
 	}
+	
+	private int nbOfCandidates = 0;
+	
+	/**
+	 * 
+	 * @return the number of cross candidates made by the last call to find_Crosses, including the candidates rejected by the sector acceptance cut;
+	 * the cross IDs are numbered over all the candidates
+	 */
+	public int get_NbOfCandidates() {
+		return nbOfCandidates;
+	}
 	/**
 	 * 
 	 * @param allSegments the list of segments in the event
@@ -68,6 +79,7 @@ public class CrossMaker {
 				}
 			}
 		}
+		nbOfCandidates = rid;
 		//this.setAssociatedIDs(crosses);
 		return crosses;
 	}
@@ -4,6 +4,7 @@ package org.jlab.rec.dc.hit;
 import org.jlab.rec.dc.CalibrationConstantsLoader;
 import org.jlab.rec.dc.Constants;
 import org.jlab.rec.dc.GeometryLoader;
+import org.jlab.rec.dc.timetodistance.TableLoader;
 import org.jlab.rec.dc.timetodistance.TimeToDistanceEstimator;
 /**
  * A hit that was used in a fitted cluster.  It extends the Hit class and contains local and sector coordinate information at the MidPlane.  
@@ -216,24 +217,30 @@ public class FittedHit extends Hit implements Comparable<Hit> {
 	 */
 	 
 	public void set_TimeToDistance(double cosTrkAngle) {
+		this._TimeToDistance = this.calc_TimeToDistance(cosTrkAngle, _TrkgStatus);
+	}
+	
+	/**
+	 * 
+	 * @param cosTrkAngle the cosine of the track angle
+	 * @param trkgStatus the tracking status of the hit
+	 * @return the distance (in cm) calculated from the time (in ns) for a hit with the given tracking status
+	 */
+	private double calc_TimeToDistance(double cosTrkAngle, int trkgStatus) {
 		
 		double d =0;
 		int regionIdx = this.get_Region()-1;
-		if(_TrkgStatus!=-1) { 
-			d = Constants.TIMETODIST[regionIdx]; 
-	//		TimeToDistanceEstimator tde = new TimeToDistanceEstimator();
-	//		double dtd = tde.interpolateOnGrid(0, Math.acos(cosTrkAngle), this.get_Time());
-	//		System.out.println(" alpha "+Math.toDegrees(Math.acos(cosTrkAngle))+" doca "+dtd);
+		if(trkgStatus!=-1) { 
 			// chose method to get the distance from the time -- for now this is only used for cosmics so B =0
-	/*		if(Constants.useTimeToDistanceGrid==true) {
-				TimeToDistanceEstimator tde = new TimeToDistanceEstimator();
-				d = tde.interpolateOnGrid(0, Math.acos(cosTrkAngle), this.get_Time());
+			if(Constants.useTimeToDistanceGrid==true && TableLoader.T2DLOADED==true) {
+				return TimeToDistanceEstimator.interpolate(0, Math.acos(Math.min(1, Math.abs(cosTrkAngle))), this.get_Time());
 			}
-	*/		
+			d = Constants.TIMETODIST[regionIdx]; 
+			
 			if(cosTrkAngle>0.8 & cosTrkAngle<=1) // trk angle correction 
 				d /= cosTrkAngle;
 		}
-		this._TimeToDistance = d*this.get_Time();
+		return d*this.get_Time();
 	}
 
 
@@ -301,20 +308,13 @@ public class FittedHit extends Hit implements Comparable<Hit> {
 	 */
 	public void updateHitPosition( boolean localSyst) {		
 		double x =0;
-		double z = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(this.get_Layer()-1).getComponent(this.get_Wire()-1).getMidpoint().z();
-		
-		double z1 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(1).getComponent(this.get_Wire()-1).getMidpoint().z();
-		double z0 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(0).getComponent(this.get_Wire()-1).getMidpoint().z();
-		double deltaz = Math.abs(z1-z0);
-		double xMin = 0.; //GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(1).getComponent(0).getMidpoint().x();
+		double z = this.calc_WireZ();
 		
 		if(localSyst ==true) {
-			x = xMin + (this.get_Wire()-1)*2*deltaz*Math.tan(Math.PI/6);
-			if(this.get_Layer()%2==1)
-				x+=deltaz*Math.tan(Math.PI/6);
+			x = this.calc_LocalWireX();
 		}
 		 if(localSyst ==false)
-			 x = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(this.get_Layer()-1).getComponent(this.get_Wire()-1).getMidpoint().x();
+			 x = GeometryLoader.getWireMidpointX(this.get_Superlayer(), this.get_Layer(), this.get_Wire());
 
 		
 		this.set_X(x);
@@ -331,29 +331,59 @@ public class FittedHit extends Hit implements Comparable<Hit> {
 			this.set_TimeToDistance(cosTrkAngle);
 		
 		double x =0;
-		double z = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(this.get_Layer()-1).getComponent(this.get_Wire()-1).getMidpoint().z();
+		double z = this.calc_WireZ();
 		
 		
-		double z1 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(1).getComponent(this.get_Wire()-1).getMidpoint().z();
-		double z0 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(0).getComponent(this.get_Wire()-1).getMidpoint().z();
-		double deltaz = Math.abs(z1-z0);
-		double xMin = 0.; //GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(1).getComponent(0).getMidpoint().x();
-		
 		if(localSyst ==true) {
-			x = xMin + (this.get_Wire()-1)*2*deltaz*Math.tan(Math.PI/6);
-			
-			if(this.get_Layer()%2==1)
-				x+=deltaz*Math.tan(Math.PI/6);
+			x = this.calc_LocalWireX();
 			this.set_X(x+this.get_LeftRightAmb()*this.get_TimeToDistance());
 		}
 		if(localSyst ==false) {
-			x = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(this.get_Layer()-1).getComponent(this.get_Wire()-1).getMidpoint().x();
+			x = GeometryLoader.getWireMidpointX(this.get_Superlayer(), this.get_Layer(), this.get_Wire());
 			this.set_X(x+this.get_LeftRightAmb()*this.get_TimeToDistance()/Math.cos(Math.toRadians(6.)));
 		}
 		
 		this.set_Z(z);
 		
 	}
+	/**
+	 * 
+	 * @return the z-position of the wire midpoint in the tilted sector coordinate system
+	 */
+	public double calc_WireZ() {
+		return GeometryLoader.getWireMidpointZ(this.get_Superlayer(), this.get_Layer(), this.get_Wire());
+	}
+	
+	/**
+	 * 
+	 * @return the wire x-position in the local superlayer coordinate system
+	 */
+	private double calc_LocalWireX() {
+		double z1 = GeometryLoader.getWireMidpointZ(this.get_Superlayer(), 2, this.get_Wire());
+		double z0 = GeometryLoader.getWireMidpointZ(this.get_Superlayer(), 1, this.get_Wire());
+		double deltaz = Math.abs(z1-z0);
+		double xMin = 0.; //GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(1).getComponent(0).getMidpoint().x();
+		
+		double x = xMin + (this.get_Wire()-1)*2*deltaz*Math.tan(Math.PI/6);
+		if(this.get_Layer()%2==1)
+			x+=deltaz*Math.tan(Math.PI/6);
+		return x;
+	}
+	
+	/**
+	 * 
+	 * @param leftRightAmb the left-right ambiguity (-1 or 1)
+	 * @param cosTrkAngle the cosine of the track angle
+	 * @return the hit x-position in the local superlayer coordinate system that updateHitPositionWithTime(cosTrkAngle, true) sets 
+	 * for a copy of this hit used in hit-based tracking (TrkgStatus = 0) with the given left-right ambiguity; this hit is not modified
+	 */
+	public double calc_LocalXWithTime(int leftRightAmb, double cosTrkAngle) {
+		double d = 0;
+		if(this.get_Time()>0)
+			d = this.calc_TimeToDistance(cosTrkAngle, 0);
+		return this.calc_LocalWireX() + leftRightAmb*d;
+	}
+	
 /*
 	public void projectToMidPlane(boolean Timebased) {
 		double z = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(this.get_Layer()-1).getComponent(this.get_Wire()-1).getMidpoint().z();
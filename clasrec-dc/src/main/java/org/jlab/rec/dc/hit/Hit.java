@@ -214,10 +214,7 @@ public class Hit implements Comparable<Hit>{
 	public double calcLocY(int layer, int wire) {
 		
 		// in old mc, layer 1 is closer to the beam than layer 2, in hardware it is the opposite
-		double  brickwallPattern = GeometryLoader.dcDetector.getSector(0).getSuperlayer(0).getLayer(1).getComponent(1).getMidpoint().x()
-				- GeometryLoader.dcDetector.getSector(0).getSuperlayer(0).getLayer(0).getComponent(1).getMidpoint().x();
-		
-		double brickwallSign = Math.signum(brickwallPattern);
+		double brickwallSign = GeometryLoader.getBrickwallSign();
 		
 		//center of the cell asfcn wire num
 		//double y= (double)wire*(1.+0.25*Math.sin(Math.PI/3.)/(1.+Math.sin(Math.PI/6.)));
@@ -248,13 +245,7 @@ public class Hit implements Comparable<Hit>{
 	 */
 	public double get_CellSize() {
 		// fix cell size = w_{i+1} -w_{i}
-		double layerDiffAtMPln  = GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(0).getComponent(0).getMidpoint().x()
-	                     - GeometryLoader.dcDetector.getSector(0).getSuperlayer(this.get_Superlayer()-1).getLayer(0).getComponent(1).getMidpoint().x();
-		
-		//double cellSize = 0.5*Math.cos(Math.toRadians(6.)*Math.abs(layerDiffAtMPln*Math.cos(Math.toRadians(6.)));
-		double cellSize = 0.5*Math.abs(layerDiffAtMPln);
-		
-		return cellSize;
+		return GeometryLoader.getCellSize(this.get_Superlayer());
 	}
 	/**
 	 * 
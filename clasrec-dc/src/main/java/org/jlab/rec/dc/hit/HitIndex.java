@@ -0,0 +1,104 @@
+package org.jlab.rec.dc.hit;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jlab.rec.dc.Constants;
+
+/**
+ * An index of the hits of an event by (sector, superlayer, layer, wire).
+ * For each wire the index keeps the position of the last hit on that wire in the input list (or bank row),
+ * and for each layer the number of hits in the layer, so that the hits near a given wire are found without scanning all the hits.
+ * The index can be reused from one event to the next.
+ * @author ziegler
+ *
+ */
+public class HitIndex {
+
+	private static final int NWIRES = Constants.NWIRE+2; // wires 0 ... NWIRE+1 are indexed
+	private static final int NLAYERS = Constants.NSECT*Constants.NSLAY*Constants.NLAYR;
+
+	private final int[] lastHit = new int[NLAYERS*NWIRES];
+	private final int[] nbOfHitsInLayer = new int[NLAYERS];
+
+	public HitIndex() {
+		this.clear();
+	}
+
+	/**
+	 * Clears the index
+	 */
+	public void clear() {
+		Arrays.fill(lastHit, -1);
+		Arrays.fill(nbOfHitsInLayer, 0);
+	}
+
+	/**
+	 * Indexes the hits of a list; the index of a hit is its position in the list
+	 * @param hits the list of hits
+	 */
+	public void fill(List<? extends Hit> hits) {
+		this.clear();
+		for(int i = 0; i<hits.size(); i++) {
+			Hit hit = hits.get(i);
+			this.add(i, hit.get_Sector(), hit.get_Superlayer(), hit.get_Layer(), hit.get_Wire());
+		}
+	}
+
+	/**
+	 * Indexes the rows of a hit bank; the index of a hit is its row number
+	 * @param sector the sector column (1...6)
+	 * @param superlayer the superlayer column (1...6)
+	 * @param layer the layer column (1...6)
+	 * @param wire the wire column
+	 */
+	public void fill(int[] sector, int[] superlayer, int[] layer, int[] wire) {
+		this.clear();
+		for(int i = 0; i<sector.length; i++)
+			this.add(i, sector[i], superlayer[i], layer[i], wire[i]);
+	}
+
+	private void add(int i, int sector, int superlayer, int layer, int wire) {
+		int ly = layerIndex(sector, superlayer, layer);
+		if(ly<0)
+			return;
+		nbOfHitsInLayer[ly]++;
+		if(wire>=0 && wire<NWIRES)
+			lastHit[ly*NWIRES+wire] = i;
+	}
+
+	private static int layerIndex(int sector, int superlayer, int layer) {
+		if(sector<1 || sector>Constants.NSECT || superlayer<1 || superlayer>Constants.NSLAY || layer<1 || layer>Constants.NLAYR)
+			return -1;
+		return ((sector-1)*Constants.NSLAY + superlayer-1)*Constants.NLAYR + layer-1;
+	}
+
+	/**
+	 *
+	 * @param sector the sector (1...6)
+	 * @param superlayer the superlayer (1...6)
+	 * @param layer the layer (1...6)
+	 * @return the number of hits in the layer
+	 */
+	public int get_NbOfHitsInLayer(int sector, int superlayer, int layer) {
+		int ly = layerIndex(sector, superlayer, layer);
+		if(ly<0)
+			return 0;
+		return nbOfHitsInLayer[ly];
+	}
+
+	/**
+	 *
+	 * @param sector the sector (1...6)
+	 * @param superlayer the superlayer (1...6)
+	 * @param layer the layer (1...6)
+	 * @param wire the wire
+	 * @return the index of the last hit on the wire, -1 if the wire has no hit
+	 */
+	public int get_LastHit(int sector, int superlayer, int layer, int wire) {
+		int ly = layerIndex(sector, superlayer, layer);
+		if(ly<0 || wire<0 || wire>=NWIRES)
+			return -1;
+		return lastHit[ly*NWIRES+wire];
+	}
+}
@@ -0,0 +1,181 @@
+package org.jlab.rec.dc.hit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.cross.Cross;
+
+/**
+ * The occupancy of the DC sectors, used to run the hit-based tracking in a degraded mode in high background events.
+ * <p>
+ * A sector is overloaded if it has more than Constants.MAXNBHITSPERSECTOR hits; this is known from the hit counts before any clustering.
+ * The hits of an overloaded sector are pruned with tighter cuts, and the number of cross lists fitted in the sector is bounded.
+ * A sector with more than Constants.MAXNBCROSSES crosses is kept in the event but is not used in the track candidate search.
+ * The status of each sector is written out, so that no event is dropped without a trace.
+ * @author ziegler
+ *
+ */
+public class SectorOccupancy {
+
+	/**
+	 * the sector status values
+	 */
+	public static final int NORMAL = 0;
+	public static final int OVERLOADED = 1;
+	public static final int TRACKINGSKIPPED = 2;
+
+	private final int[] nbOfHits = new int[Constants.NSECT];
+	private final int[] status = new int[Constants.NSECT];
+
+	private final HitIndex hitIndex = new HitIndex();
+	private final boolean[] killedWires = new boolean[Constants.NSECT*Constants.NSLAY*Constants.NLAYR*(Constants.NWIRE+2)];
+
+	/**
+	 * Counts the hits in each sector and sets the status of the overloaded sectors
+	 * @param hits the hits in the event
+	 */
+	public void fill(List<Hit> hits) {
+		for(int s = 0; s<Constants.NSECT; s++) {
+			nbOfHits[s] = 0;
+			status[s] = NORMAL;
+		}
+		for(Hit hit : hits) {
+			if(hit.get_Sector()<1 || hit.get_Sector()>Constants.NSECT)
+				continue;
+			nbOfHits[hit.get_Sector()-1]++;
+		}
+		for(int s = 0; s<Constants.NSECT; s++)
+			if(nbOfHits[s]>Constants.MAXNBHITSPERSECTOR)
+				status[s] = OVERLOADED;
+	}
+
+	/**
+	 *
+	 * @return true if a sector is overloaded
+	 */
+	public boolean hasOverloadedSector() {
+		for(int s = 0; s<Constants.NSECT; s++)
+			if(status[s]!=NORMAL)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Removes from the overloaded sectors the hits in columns of more than Constants.DEGRADEDMAXCOLUMNSIZE contiguous wires in a layer;
+	 * such columns are made by showers and low momentum background rather than by tracks.
+	 * The shorter columns are left to the standard pruning.
+	 * @param hits the list of hits, from which the pruned hits are removed
+	 * @return the number of removed hits
+	 */
+	public int pruneOverloadedSectors(List<Hit> hits) {
+		if(this.hasOverloadedSector()==false)
+			return 0;
+
+		hitIndex.fill(hits);
+		int nwires = Constants.NWIRE+2;
+		boolean hasKilledWires = false;
+		for(int s = 1; s<=Constants.NSECT; s++) {
+			if(status[s-1]==NORMAL)
+				continue;
+			for(int sl = 1; sl<=Constants.NSLAY; sl++)
+				for(int l = 1; l<=Constants.NLAYR; l++) {
+					int offset = (((s-1)*Constants.NSLAY + sl-1)*Constants.NLAYR + l-1)*nwires;
+					if(hitIndex.get_NbOfHitsInLayer(s, sl, l)<=Constants.DEGRADEDMAXCOLUMNSIZE) {
+						for(int w = 0; w<nwires; w++)
+							killedWires[offset+w] = false;
+						continue;
+					}
+					int w = 0;
+					while(w<nwires) {
+						if(hitIndex.get_LastHit(s, sl, l, w)==-1) {
+							killedWires[offset+w] = false;
+							w++;
+							continue;
+						}
+						int end = w;
+						while(end<nwires && hitIndex.get_LastHit(s, sl, l, end)!=-1)
+							end++;
+						boolean kill = end-w > Constants.DEGRADEDMAXCOLUMNSIZE;
+						hasKilledWires |= kill;
+						for(; w<end; w++)
+							killedWires[offset+w] = kill;
+					}
+				}
+		}
+		if(hasKilledWires==false)
+			return 0;
+
+		List<Hit> keptHits = new ArrayList<Hit>(hits.size());
+		for(Hit hit : hits) {
+			int s = hit.get_Sector();
+			if(s>=1 && s<=Constants.NSECT && status[s-1]!=NORMAL && hit.get_Wire()>=0 && hit.get_Wire()<nwires
+					&& killedWires[(((s-1)*Constants.NSLAY + hit.get_Superlayer()-1)*Constants.NLAYR + hit.get_Layer()-1)*nwires + hit.get_Wire()])
+				continue;
+			keptHits.add(hit);
+		}
+		int nbOfRemovedHits = hits.size()-keptHits.size();
+		hits.clear();
+		hits.addAll(keptHits);
+
+		return nbOfRemovedHits;
+	}
+
+	/**
+	 * Removes from the list of crosses used in the track candidate search the crosses of the sectors with more than Constants.MAXNBCROSSES crosses,
+	 * and flags these sectors
+	 * @param crossesInSector the crosses in each sector
+	 * @return the crosses of the other sectors
+	 */
+	public List<Cross> selectCrossesForTracking(List<List<Cross>> crossesInSector) {
+		List<Cross> crosses = new ArrayList<Cross>();
+		for(int s = 0; s<crossesInSector.size(); s++) {
+			if(crossesInSector.get(s).size()>Constants.MAXNBCROSSES) {
+				status[s] = TRACKINGSKIPPED;
+				continue;
+			}
+			crosses.addAll(crossesInSector.get(s));
+		}
+		return crosses;
+	}
+
+	/**
+	 * Flags a sector in which the track candidate search is skipped
+	 * @param sector the sector (1...6)
+	 */
+	public void set_TrackingSkipped(int sector) {
+		if(sector<1 || sector>Constants.NSECT)
+			return;
+		status[sector-1] = TRACKINGSKIPPED;
+	}
+
+	/**
+	 * The number of cross lists of an overloaded sector is bounded by Constants.DEGRADEDMAXNBCROSSLISTS, so that the time spent fitting the
+	 * track candidates of the sector is bounded; the bound is applied in the cross list search
+	 * @param sector the sector (1...6)
+	 * @return the maximum number of cross lists in the sector
+	 */
+	public int get_MaxNbOfCrossLists(int sector) {
+		if(sector<1 || sector>Constants.NSECT || status[sector-1]==NORMAL)
+			return Integer.MAX_VALUE;
+		return Constants.DEGRADEDMAXNBCROSSLISTS;
+	}
+
+	/**
+	 *
+	 * @param sector the sector (1...6)
+	 * @return the number of hits in the sector
+	 */
+	public int get_NbOfHits(int sector) {
+		return nbOfHits[sector-1];
+	}
+
+	/**
+	 *
+	 * @param sector the sector (1...6)
+	 * @return the status of the sector: NORMAL, OVERLOADED or TRACKINGSKIPPED
+	 */
+	public int get_Status(int sector) {
+		return status[sector-1];
+	}
+}
@@ -0,0 +1,127 @@
+package org.jlab.rec.dc.monitoring;
+
+/**
+ * A histogram of non-negative long values with logarithmic buckets of constant relative width, in the spirit of HDR histograms.
+ * <p>
+ * Each power of two is divided into 2^SUBBITS sub-buckets, so that the values are recorded with a relative precision of 2^-SUBBITS
+ * over the whole range.  Recording a value is a few bit operations and an array increment; the memory does not depend on the number
+ * of recorded values.  The count, sum and maximum are exact.  A histogram is not thread safe.
+ * @author ziegler
+ *
+ */
+public class LogHistogram {
+
+	private static final int SUBBITS = 5;
+	private static final int NSUB = 1<<SUBBITS;			// the number of sub-buckets per power of two
+	private static final int MAXEXPONENT = 47;			// the values are clamped to 2^(MAXEXPONENT+1)-1
+	private static final long MAXVALUE = (1L<<(MAXEXPONENT+1))-1;
+	private static final int NBUCKETS = (MAXEXPONENT-SUBBITS+2)*NSUB;
+
+	private final long[] counts = new long[NBUCKETS];
+	private long count;
+	private long sum;
+	private long max;
+
+	private static int bucketIndex(long value) {
+		if(value < 2*NSUB)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUBBITS;
+		return (shift+1)*NSUB + (int) (value>>>shift) - NSUB;
+	}
+
+	/**
+	 *
+	 * @return the middle of the range of values of a bucket
+	 */
+	private static long bucketValue(int index) {
+		if(index < 2*NSUB)
+			return index;
+		int shift = index/NSUB - 1;
+		long lowerBound = ((long) (NSUB + index%NSUB))<<shift;
+		return lowerBound + (1L<<(shift-1));
+	}
+
+	/**
+	 * Records a value
+	 * @param value the value; negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if(value < 0)
+			value = 0;
+		if(value > MAXVALUE)
+			value = MAXVALUE;
+		counts[bucketIndex(value)]++;
+		count++;
+		sum += value;
+		if(value > max)
+			max = value;
+	}
+
+	/**
+	 * Adds the values recorded in another histogram
+	 * @param other the other histogram
+	 */
+	public void add(LogHistogram other) {
+		for(int i = 0; i < NBUCKETS; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		sum += other.sum;
+		if(other.max > max)
+			max = other.max;
+	}
+
+	/**
+	 * Clears the histogram
+	 */
+	public void reset() {
+		for(int i = 0; i < NBUCKETS; i++)
+			counts[i] = 0;
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+	/**
+	 *
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 *
+	 * @return the mean of the recorded values
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum/count;
+	}
+
+	/**
+	 *
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 *
+	 * @param percentile the percentile (0...100)
+	 * @return the value below which the given percentage of the recorded values fall, within the histogram precision
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if(count == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile/100.*count);
+		if(rank < 1)
+			rank = 1;
+		long cumulated = 0;
+		for(int i = 0; i < NBUCKETS; i++) {
+			cumulated += counts[i];
+			if(cumulated >= rank)
+				return Math.min(bucketValue(i), max);
+		}
+		return max;
+	}
+}
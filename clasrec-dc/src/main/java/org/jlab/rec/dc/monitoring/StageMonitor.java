@@ -0,0 +1,339 @@
+package org.jlab.rec.dc.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jlab.evio.clas12.EvioDataBank;
+import org.jlab.evio.clas12.EvioDataEvent;
+import org.jlab.rec.dc.Constants;
+
+/**
+ * The per-stage timing and object counters of a DC reconstruction service.
+ * <p>
+ * A service owns one monitor per instance (i.e. per thread in the EventParallelRunner chains).  The monitor of the event being
+ * processed is attached to the thread, so that the stages and counters can be recorded from the reconstruction classes with the
+ * static methods start, stop and count; these return immediately if Constants.useStageMonitor is not set or if no event is being
+ * monitored in the thread.  The wall and CPU times of each stage and the counters are summed over the event, then recorded in
+ * histograms.  The histograms of all the monitors of a service are merged and printed at shutdown, and the stage times of each
+ * event can be written to a timing bank.
+ * A task of the event run in another thread (e.g. a sector task of the hit-based tracking) is monitored by a task monitor attached to 
+ * its thread, whose stage times and counters are added to the event when the task is done; the stage times of concurrent tasks are summed.
+ * @author ziegler
+ *
+ */
+public class StageMonitor {
+
+	/**
+	 * the stages
+	 */
+	public static final int READ = 0;
+	public static final int CLUSTERS = 1;
+	public static final int SEGMENTS = 2;
+	public static final int CROSSES = 3;
+	public static final int CROSSLISTS = 4;
+	public static final int TRACKS = 5;
+	public static final int SECTORS = 6;
+	public static final int BANKS = 7;
+	public static final int EVENT = 8;
+	private static final String[] STAGENAMES = new String[] {"read", "clusters", "segments", "crosses", "cross lists", "tracks",
+		"sector tasks", "banks", "event"};
+
+	/**
+	 * the counters
+	 */
+	public static final int NHITS = 0;
+	public static final int NCLUSTERS = 1;
+	public static final int NSEGMENTS = 2;
+	public static final int NCROSSES = 3;
+	public static final int NCROSSLISTS = 4;
+	public static final int NCANDIDATES = 5;
+	public static final int NKFITERATIONS = 6;
+	public static final int NSWIMS = 7;
+	public static final int NFIELDLOOKUPS = 8;
+	private static final String[] COUNTERNAMES = new String[] {"hits", "clusters", "segments", "crosses", "cross lists", "candidates",
+		"KF iterations", "swims", "field lookups"};
+
+	private static final int NSTAGES = STAGENAMES.length;
+	private static final int NCOUNTERS = COUNTERNAMES.length;
+
+	private static final ThreadLocal<StageMonitor> current = new ThreadLocal<StageMonitor>();
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final List<StageMonitor> monitors = new ArrayList<StageMonitor>();
+	private static boolean isShutdownHookAdded = false;
+	// set once the missing timing bank has been reported
+	private static boolean isTimingBankMissing = false;
+
+	private final String serviceName;
+	private final String bankName;
+	private final boolean measureCpuTime;
+
+	// the stage times and counters of the current event
+	private final long[] wallStart = new long[NSTAGES];
+	private final long[] cpuStart = new long[NSTAGES];
+	private final long[] wallTime = new long[NSTAGES];
+	private final long[] cpuTime = new long[NSTAGES];
+	private final long[] counters = new long[NCOUNTERS];
+
+	private final LogHistogram[] wallHistos = new LogHistogram[NSTAGES];
+	private final LogHistogram[] cpuHistos = new LogHistogram[NSTAGES];
+	private final LogHistogram[] counterHistos = new LogHistogram[NCOUNTERS];
+
+	/**
+	 *
+	 * @param serviceName the name of the service, under which the summaries of its monitors are merged
+	 * @param bankName the name of the timing bank
+	 */
+	public StageMonitor(String serviceName, String bankName) {
+		this.serviceName = serviceName;
+		this.bankName = bankName;
+		this.measureCpuTime = threadBean.isCurrentThreadCpuTimeSupported();
+		for(int s = 0; s < NSTAGES; s++) {
+			wallHistos[s] = new LogHistogram();
+			cpuHistos[s] = new LogHistogram();
+		}
+		for(int c = 0; c < NCOUNTERS; c++)
+			counterHistos[c] = new LogHistogram();
+
+		register(this);
+	}
+
+	private static synchronized void register(StageMonitor monitor) {
+		monitors.add(monitor);
+		if(isShutdownHookAdded)
+			return;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				printSummary();
+			}
+		});
+		isShutdownHookAdded = true;
+	}
+
+	/**
+	 * Starts monitoring an event in the current thread
+	 */
+	public void beginEvent() {
+		for(int s = 0; s < NSTAGES; s++) {
+			wallTime[s] = 0;
+			cpuTime[s] = 0;
+		}
+		for(int c = 0; c < NCOUNTERS; c++)
+			counters[c] = 0;
+		current.set(this);
+		this.startStage(EVENT);
+	}
+
+	/**
+	 * Ends the monitoring of the event, records the stage times and counters and writes the timing bank if Constants.STAGEMONITORBANK is set
+	 * @param event the event
+	 */
+	public void endEvent(EvioDataEvent event) {
+		this.stopStage(EVENT);
+		current.remove();
+		for(int s = 0; s < NSTAGES; s++) {
+			wallHistos[s].record(wallTime[s]);
+			if(measureCpuTime)
+				cpuHistos[s].record(cpuTime[s]);
+		}
+		for(int c = 0; c < NCOUNTERS; c++)
+			counterHistos[c].record(counters[c]);
+
+		if(Constants.STAGEMONITORBANK && event != null) {
+			EvioDataBank bank = this.fillTimingBank(event);
+			if(bank != null)
+				event.appendBanks(bank);
+		}
+	}
+
+	/**
+	 * Creates the monitor of a task of the event monitored in the current thread, to be run in another thread
+	 * @return the task monitor, null if no event is monitored in the current thread
+	 */
+	public static StageMonitor createTaskMonitor() {
+		if(Constants.useStageMonitor == false)
+			return null;
+		StageMonitor monitor = current.get();
+		if(monitor == null)
+			return null;
+		return new StageMonitor(monitor.serviceName, monitor.bankName, monitor.measureCpuTime);
+	}
+
+	/**
+	 * Starts monitoring a task in the current thread
+	 */
+	public void beginTask() {
+		current.set(this);
+	}
+
+	/**
+	 * Ends the monitoring of the task in the current thread
+	 */
+	public void endTask() {
+		current.remove();
+	}
+
+	/**
+	 * Adds the stage times and counters of a completed task to the event monitored in the current thread
+	 * @param task the task monitor, can be null
+	 */
+	public static void addTask(StageMonitor task) {
+		if(task == null)
+			return;
+		StageMonitor monitor = current.get();
+		if(monitor == null)
+			return;
+		for(int s = 0; s < NSTAGES; s++) {
+			monitor.wallTime[s] += task.wallTime[s];
+			monitor.cpuTime[s] += task.cpuTime[s];
+		}
+		for(int c = 0; c < NCOUNTERS; c++)
+			monitor.counters[c] += task.counters[c];
+	}
+
+	private void startStage(int stage) {
+		wallStart[stage] = System.nanoTime();
+		if(measureCpuTime)
+			cpuStart[stage] = threadBean.getCurrentThreadCpuTime();
+	}
+
+	private void stopStage(int stage) {
+		wallTime[stage] += System.nanoTime() - wallStart[stage];
+		if(measureCpuTime)
+			cpuTime[stage] += threadBean.getCurrentThreadCpuTime() - cpuStart[stage];
+	}
+
+	/**
+	 * Starts a stage of the event monitored in the current thread
+	 * @param stage the stage
+	 */
+	public static void start(int stage) {
+		if(Constants.useStageMonitor == false)
+			return;
+		StageMonitor monitor = current.get();
+		if(monitor != null)
+			monitor.startStage(stage);
+	}
+
+	/**
+	 * Stops a stage of the event monitored in the current thread; the stage time is added to the time of the stage in the event
+	 * @param stage the stage
+	 */
+	public static void stop(int stage) {
+		if(Constants.useStageMonitor == false)
+			return;
+		StageMonitor monitor = current.get();
+		if(monitor != null)
+			monitor.stopStage(stage);
+	}
+
+	/**
+	 * Adds to a counter of the event monitored in the current thread
+	 * @param counter the counter
+	 * @param n the number added
+	 */
+	public static void count(int counter, long n) {
+		if(Constants.useStageMonitor == false)
+			return;
+		StageMonitor monitor = current.get();
+		if(monitor != null)
+			monitor.counters[counter] += n;
+	}
+
+	/**
+	 *
+	 * @param event the event
+	 * @return the bank of the wall and CPU times (in microseconds) of the stages of the event, null if the bank is not in the dictionary
+	 */
+	public EvioDataBank fillTimingBank(EvioDataEvent event) {
+		EvioDataBank bank = (EvioDataBank) event.getDictionary().createBank(bankName, NSTAGES);
+		if(bank == null) {
+			if(isTimingBankMissing == false)
+				System.err.println(bankName+" is not in the bank dictionary -- the stage times are not written");
+			isTimingBankMissing = true;
+			return null;
+		}
+		for(int s = 0; s < NSTAGES; s++) {
+			bank.setInt("stage", s, s);
+			bank.setDouble("wallTime", s, wallTime[s]/1000.);
+			bank.setDouble("cpuTime", s, cpuTime[s]/1000.);
+		}
+		return bank;
+	}
+
+	/**
+	 * Prints the summary of the stage times and counters of all the monitors, merged per service
+	 */
+	public static synchronized void printSummary() {
+		Map<String, StageMonitor> merged = new LinkedHashMap<String, StageMonitor>();
+		for(StageMonitor monitor : monitors) {
+			StageMonitor sum = merged.get(monitor.serviceName);
+			if(sum == null) {
+				sum = new StageMonitor(monitor);
+				merged.put(monitor.serviceName, sum);
+			}
+			sum.add(monitor);
+		}
+		for(StageMonitor sum : merged.values())
+			sum.print();
+	}
+
+	/**
+	 * An empty, unregistered monitor with the names of another monitor, used to merge monitors
+	 */
+	private StageMonitor(StageMonitor monitor) {
+		this.serviceName = monitor.serviceName;
+		this.bankName = monitor.bankName;
+		this.measureCpuTime = monitor.measureCpuTime;
+		for(int s = 0; s < NSTAGES; s++) {
+			wallHistos[s] = new LogHistogram();
+			cpuHistos[s] = new LogHistogram();
+		}
+		for(int c = 0; c < NCOUNTERS; c++)
+			counterHistos[c] = new LogHistogram();
+	}
+
+	/**
+	 * An unregistered monitor without histograms, used for the tasks of an event
+	 */
+	private StageMonitor(String serviceName, String bankName, boolean measureCpuTime) {
+		this.serviceName = serviceName;
+		this.bankName = bankName;
+		this.measureCpuTime = measureCpuTime;
+	}
+
+	private void add(StageMonitor monitor) {
+		for(int s = 0; s < NSTAGES; s++) {
+			wallHistos[s].add(monitor.wallHistos[s]);
+			cpuHistos[s].add(monitor.cpuHistos[s]);
+		}
+		for(int c = 0; c < NCOUNTERS; c++)
+			counterHistos[c].add(monitor.counterHistos[c]);
+	}
+
+	private void print() {
+		long nEvents = wallHistos[EVENT].getCount();
+		if(nEvents == 0)
+			return;
+		System.out.println("*********  "+serviceName+" stage times for "+nEvents+" events (ms per event: mean, median, 99%, max; cpu mean)  *********");
+		for(int s = 0; s < NSTAGES; s++) {
+			LogHistogram h = wallHistos[s];
+			if(h.getMax() == 0)
+				continue;
+			System.out.println(String.format("  %-14s %10.3f %10.3f %10.3f %10.3f   cpu %10.3f", STAGENAMES[s], h.getMean()/1.e6,
+					h.getValueAtPercentile(50)/1.e6, h.getValueAtPercentile(99)/1.e6, h.getMax()/1.e6, cpuHistos[s].getMean()/1.e6));
+		}
+		System.out.println("*********  "+serviceName+" counts per event (mean, median, 99%, max)  *********");
+		for(int c = 0; c < NCOUNTERS; c++) {
+			LogHistogram h = counterHistos[c];
+			if(h.getMax() == 0)
+				continue;
+			System.out.println(String.format("  %-14s %10.1f %10d %10d %10d", COUNTERNAMES[c], h.getMean(),
+					h.getValueAtPercentile(50), h.getValueAtPercentile(99), h.getMax()));
+		}
+	}
+}
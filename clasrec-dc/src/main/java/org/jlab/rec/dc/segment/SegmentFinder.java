@@ -8,6 +8,7 @@ import org.jlab.evio.clas12.EvioDataBank;
 import org.jlab.rec.dc.Constants;
 import org.jlab.rec.dc.GeometryLoader;
 import org.jlab.rec.dc.cluster.FittedCluster;
+import org.jlab.rec.dc.hit.HitIndex;
 import org.jlab.rec.dc.trajectory.SegmentTrajectory;
 
 /**
@@ -17,12 +18,22 @@ import org.jlab.rec.dc.trajectory.SegmentTrajectory;
  */
 public class SegmentFinder {
 
+	// the index of the DC::dgtz bank rows used in calibration runs
+	private final HitIndex dgtzIndex = new HitIndex();
+
 	/**
 	 * @param allClusters  the list of fitted clusters
 	 * @return the list of segments obtained from the clusters
 	 */
 	public List<Segment> get_Segments(List<FittedCluster> allClusters, DataEvent event) {
 		List<Segment> segList = new ArrayList<Segment>();
+		
+		if(Constants.isCalibrationRun) {
+			// index all the hits once to obtain layer efficiency
+			EvioDataBank bankDGTZ = (EvioDataBank) event.getBank("DC::dgtz");
+			dgtzIndex.fill(bankDGTZ.getInt("sector"), bankDGTZ.getInt("superlayer"), bankDGTZ.getInt("layer"), bankDGTZ.getInt("wire"));
+		}
+		
 		for(FittedCluster fClus : allClusters) {
 			
 			if(fClus.size()>Constants.MAXCLUSSIZE)
@@ -36,15 +47,6 @@ public class SegmentFinder {
 			seg.set_fitPlane();	
 			
 			if(Constants.isCalibrationRun) {
-				// get all the hits to obtain layer efficiency
-				EvioDataBank bankDGTZ = (EvioDataBank) event.getBank("DC::dgtz");
-		        
-				int[] hitno = bankDGTZ.getInt("hitn");
-		        int[] sector = bankDGTZ.getInt("sector");
-				int[] slayer = bankDGTZ.getInt("superlayer");
-				int[] layer = bankDGTZ.getInt("layer");
-				int[] wire = bankDGTZ.getInt("wire");
-				
 				// Get the Segment Trajectory
 				SegmentTrajectory trj = new SegmentTrajectory();
 				trj.set_SegmentId(seg.get_Id());
@@ -59,27 +61,22 @@ public class SegmentFinder {
 						matchedHits[i1][i2] = -1;
 				
 				for(int l = 0; l<6; l++) {
-					double z = GeometryLoader.dcDetector.getSector(0).getSuperlayer(seg.get_Superlayer()-1).getLayer(l).getComponent(0).getMidpoint().z();
+					double z = GeometryLoader.getWireMidpointZ(seg.get_Superlayer(), l+1, 1);
 					double trkX = seg.get_fittedCluster().get_clusterLineFitSlopeMP()*z+seg.get_fittedCluster().get_clusterLineFitInterceptMP();				
 					
 					if(trkX==0)
 						continue; // should always get a cluster fit
 					int trjWire = trj.getWireOnTrajectory(seg.get_Superlayer(), l+1, trkX);
 					
-					double x = GeometryLoader.dcDetector.getSector(0).getSuperlayer(seg.get_Superlayer()-1).getLayer(l).getComponent(trjWire-1).getMidpoint().x();
+					double x = GeometryLoader.getWireMidpointX(seg.get_Superlayer(), l+1, trjWire);
 					double cosTrkAngle = 1./Math.sqrt(1.+fClus.get_clusterLineFitSlope()*fClus.get_clusterLineFitSlope());		
 					double calc_doca = (x-trkX)*cosTrkAngle*Math.cos(Math.toRadians(6.));
 					trkDocas[l] = calc_doca;
 					
-					for(int j = 0; j< hitno.length; j++) {
-						if(sector[j]== seg.get_Sector() && slayer[j]== seg.get_Superlayer()) {
-							if(layer[j]==l+1) {
-								for(int wo =0; wo<2; wo++)
-									if( Math.abs(trjWire-wire[j])==wo)
-										matchedHits[wo][l] = j;
-							}
-						}
-					}
+					// the last hit row on the trajectory wire and on its neighbours
+					matchedHits[0][l] = dgtzIndex.get_LastHit(seg.get_Sector(), seg.get_Superlayer(), l+1, trjWire);
+					matchedHits[1][l] = Math.max(dgtzIndex.get_LastHit(seg.get_Sector(), seg.get_Superlayer(), l+1, trjWire-1), 
+							dgtzIndex.get_LastHit(seg.get_Sector(), seg.get_Superlayer(), l+1, trjWire+1));
 					matchHits[l] = -1;
 					for(int wo =0; wo<2; wo++)
 						if(matchedHits[wo][l] !=-1) {
@@ -0,0 +1,242 @@
+package org.jlab.rec.dc.services;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jlab.clasrec.main.DetectorReconstruction;
+import org.jlab.clasrec.utils.ServiceConfiguration;
+import org.jlab.evio.clas12.EvioDataEvent;
+import org.jlab.evio.clas12.EvioDataSync;
+import org.jlab.evio.clas12.EvioSource;
+
+/**
+ * Runs a chain of reconstruction services (e.g. DCHB, DCTB, CVT, BST, FMT) over the events of a file, with several events processed concurrently.
+ * <p>
+ * Each worker thread uses its own instances of the services of the chain, so that the per-instance state (event counters,
+ * noise analysis, swimmers, fitters...) is never shared.  The static geometry, calibration constants, field maps and configuration
+ * ({@code Constants}, {@code GeometryLoader}, {@code TableLoader}, the swimmer field maps...) are loaded once, serially, when the
+ * service instances are configured and initialized, and are only read while events are processed.  The services must therefore
+ * be configured and initialized through this runner before {@link #run}.
+ * <p>
+ * The output events are written in input order.
+ * @author ziegler
+ *
+ */
+public class EventParallelRunner {
+
+	private final int nbOfThreads;
+	// the idle service chains; a worker takes a chain, processes an event through it, and puts it back
+	private final BlockingQueue<List<DetectorReconstruction>> chains;
+	private final List<List<DetectorReconstruction>> allChains = new ArrayList<List<DetectorReconstruction>>();
+
+	/**
+	 * @param nbOfThreads the number of events processed concurrently
+	 * @param serviceClassNames the fully qualified class names of the services of the chain, in processing order
+	 * @throws ReflectiveOperationException if a service cannot be instantiated
+	 */
+	public EventParallelRunner(int nbOfThreads, String... serviceClassNames) throws ReflectiveOperationException {
+		this.nbOfThreads = nbOfThreads;
+		chains = new ArrayBlockingQueue<List<DetectorReconstruction>>(nbOfThreads);
+
+		for(int t = 0; t < nbOfThreads; t++) {
+			List<DetectorReconstruction> chain = new ArrayList<DetectorReconstruction>(serviceClassNames.length);
+			for(String className : serviceClassNames)
+				chain.add((DetectorReconstruction) Class.forName(className).newInstance());
+			allChains.add(chain);
+		}
+	}
+
+	/**
+	 * Configures all the service instances, one after the other
+	 * @param config the service configuration
+	 */
+	public void configure(ServiceConfiguration config) {
+		for(List<DetectorReconstruction> chain : allChains)
+			for(DetectorReconstruction service : chain)
+				service.configure(config);
+	}
+
+	/**
+	 * Initializes all the service instances, one after the other; the first instance of each service loads the shared geometry,
+	 * constants and fields, which the other instances reuse
+	 */
+	public void init() {
+		for(List<DetectorReconstruction> chain : allChains)
+			for(DetectorReconstruction service : chain)
+				service.init();
+		chains.clear();
+		chains.addAll(allChains);
+	}
+
+	/**
+	 * Processes the events of the input file through the service chain
+	 * @param inputFile the input file
+	 * @param outputFile the output file; the events are not written if null
+	 * @param maxEvents the maximum number of events to process; all events if &lt;= 0
+	 * @return the number of processed events
+	 * @throws InterruptedException if the runner is interrupted
+	 * @throws ExecutionException if a service throws an exception
+	 */
+	public int run(String inputFile, String outputFile, int maxEvents) throws InterruptedException, ExecutionException {
+
+		EvioSource reader = new EvioSource();
+		reader.open(inputFile);
+
+		EvioDataSync writer = null;
+		if(outputFile != null) {
+			writer = new EvioDataSync();
+			writer.open(outputFile);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(nbOfThreads, new ThreadFactory() {
+			int threadNb = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "event-worker-"+(++threadNb));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		// the events in flight, in input order; bounded so that the reader does not run ahead of the workers
+		ArrayDeque<Future<EvioDataEvent>> inFlight = new ArrayDeque<Future<EvioDataEvent>>();
+		int maxInFlight = 2*nbOfThreads;
+
+		int counter = 0;
+		long t0 = System.currentTimeMillis();
+		try {
+			while(reader.hasEvent() && (maxEvents <= 0 || counter < maxEvents)) {
+				final EvioDataEvent event = (EvioDataEvent) reader.getNextEvent();
+				inFlight.add(pool.submit(new Callable<EvioDataEvent>() {
+					@Override
+					public EvioDataEvent call() throws InterruptedException {
+						List<DetectorReconstruction> chain = chains.take();
+						try {
+							for(DetectorReconstruction service : chain)
+								service.processEvent(event);
+						} finally {
+							chains.put(chain);
+						}
+						return event;
+					}
+				}));
+				counter++;
+
+				while(inFlight.size() >= maxInFlight)
+					this.write(inFlight.poll().get(), writer);
+
+				if(counter%1000 == 0)
+					this.printRate(counter, t0);
+			}
+			while(inFlight.isEmpty() == false)
+				this.write(inFlight.poll().get(), writer);
+		} finally {
+			pool.shutdownNow();
+			if(writer != null)
+				writer.close();
+		}
+		this.printRate(counter, t0);
+
+		return counter;
+	}
+
+	private void write(EvioDataEvent event, EvioDataSync writer) {
+		if(writer != null)
+			writer.writeEvent(event);
+	}
+
+	private void printRate(int counter, long t0) {
+		double seconds = (System.currentTimeMillis() - t0)/1000.;
+		System.out.println("processed "+counter+" events in "+seconds+" s -- "+(float) (counter/Math.max(seconds, 1.e-3))+" events/s with "+nbOfThreads+" threads");
+	}
+
+	/**
+	 * Makes the service configuration from the configuration items of the command line, SECTION:item=value, and from the lines 
+	 * SECTION item value of the configuration files given as -config file; the lines starting with # are comments
+	 * @param args the configuration arguments
+	 * @return the service configuration
+	 * @throws IOException if a configuration file cannot be read
+	 */
+	static ServiceConfiguration parseConfiguration(List<String> args) throws IOException {
+		ServiceConfiguration config = new ServiceConfiguration();
+		for(int i = 0; i < args.size(); i++) {
+			String arg = args.get(i);
+			if(arg.equals("-config")) {
+				if(++i == args.size())
+					throw new IllegalArgumentException("missing file after -config");
+				BufferedReader in = new BufferedReader(new FileReader(args.get(i)));
+				try {
+					String line;
+					while((line = in.readLine()) != null) {
+						line = line.trim();
+						if(line.isEmpty() || line.startsWith("#"))
+							continue;
+						String[] tokens = line.split("\\s+", 3);
+						if(tokens.length < 3)
+							throw new IllegalArgumentException("bad configuration line in "+args.get(i)+": "+line);
+						config.addItem(tokens[0], tokens[1], tokens[2]);
+					}
+				} finally {
+					in.close();
+				}
+				continue;
+			}
+			int colon = arg.indexOf(':');
+			int equal = arg.indexOf('=');
+			if(colon <= 0 || equal < colon+2)
+				throw new IllegalArgumentException("bad configuration item: "+arg+" (expected SECTION:item=value)");
+			config.addItem(arg.substring(0, colon), arg.substring(colon+1, equal), arg.substring(equal+1));
+		}
+		return config;
+	}
+
+	/**
+	 * usage: EventParallelRunner nbOfThreads inputFile outputFile maxEvents service1 [service2 ...] [-config file] [SECTION:item=value ...]
+	 * e.g. EventParallelRunner 8 in.evio out.evio 0 org.jlab.rec.dc.services.HitBasedTracking org.jlab.rec.dc.services.TimeBasedTracking
+	 * MAG:torus=-1.0 DC:sectorParallel=true
+	 * <p>
+	 * The services are configured with the configuration items before they are initialized.
+	 * @param args the arguments
+	 * @throws Exception if the processing fails
+	 */
+	public static void main(String[] args) throws Exception {
+
+		if(args.length < 5) {
+			System.err.println("usage: EventParallelRunner nbOfThreads inputFile outputFile maxEvents service1 [service2 ...] [-config file] [SECTION:item=value ...]");
+			return;
+		}
+		int nbOfThreads = Integer.parseInt(args[0]);
+		String inputFile = args[1];
+		String outputFile = args[2];
+		int maxEvents = Integer.parseInt(args[3]);
+		// the services are the class names up to the first configuration argument
+		List<String> services = new ArrayList<String>();
+		List<String> configArgs = new ArrayList<String>();
+		for(int i = 4; i < args.length; i++) {
+			if(configArgs.isEmpty() && args[i].equals("-config") == false && args[i].indexOf('=') < 0)
+				services.add(args[i]);
+			else
+				configArgs.add(args[i]);
+		}
+		ServiceConfiguration config = parseConfiguration(configArgs);
+
+		System.err.println(" \n[PROCESSING FILE] : " + inputFile);
+
+		EventParallelRunner runner = new EventParallelRunner(nbOfThreads, services.toArray(new String[services.size()]));
+		runner.configure(config);
+		runner.init();
+		runner.run(inputFile, outputFile, maxEvents);
+	}
+}
@@ -0,0 +1,85 @@
+package org.jlab.rec.dc.services;
+
+import java.util.List;
+
+import org.jlab.evio.clas12.EvioDataEvent;
+import org.jlab.rec.dc.hit.FittedHit;
+import org.jlab.rec.dc.track.Track;
+
+/**
+ * The in-memory handoff of the hit-based tracking results to the time-based tracking, used when the two services process the
+ * same event one after the other in the same thread (as in the EventParallelRunner chains).
+ * The hit-based service publishes its hit list, with the hits associated to the clusters, and its track candidates after writing 
+ * its banks; the time-based service takes them for the same event instead of reading the hits back from the HitBasedTrkg::HBHits 
+ * bank, and re-fits the crosses of the hit-based candidates, made of the same segments, instead of searching for new cross lists.
+ * If the handoff is for another event, or was not published, the time-based service reads the bank.
+ * @author ziegler
+ *
+ */
+public class HitBasedHandoff {
+
+	private static final ThreadLocal<HitBasedHandoff> handoff = new ThreadLocal<HitBasedHandoff>() {
+		@Override
+		protected HitBasedHandoff initialValue() {
+			return new HitBasedHandoff();
+		}
+	};
+
+	private EvioDataEvent event;
+	private List<FittedHit> hits;
+	private List<Track> tracks;
+
+	/**
+	 * Publishes the hit-based hits and track candidates of an event for the time-based tracking running next in this thread
+	 * @param event the event
+	 * @param hits the hit-based hits, as written to the HB hits bank
+	 * @param tracks the hit-based track candidates, as written to the HB tracks bank, null if none was found
+	 */
+	public static void publish(EvioDataEvent event, List<FittedHit> hits, List<Track> tracks) {
+		HitBasedHandoff h = handoff.get();
+		h.event = event;
+		h.hits = hits;
+		h.tracks = tracks;
+	}
+
+	/**
+	 * Clears the handoff of this thread
+	 */
+	public static void clear() {
+		publish(null, null, null);
+	}
+
+	/**
+	 * Takes the hit-based results published for an event in this thread; the handoff of the thread is cleared
+	 * @param event the event
+	 * @return the hit-based results, null if none was published for the event
+	 */
+	public static HitBasedHandoff take(EvioDataEvent event) {
+		HitBasedHandoff h = handoff.get();
+		HitBasedHandoff taken = null;
+		if(h.event==event && h.hits!=null) {
+			taken = new HitBasedHandoff();
+			taken.event = h.event;
+			taken.hits = h.hits;
+			taken.tracks = h.tracks;
+		}
+		clear();
+		return taken;
+	}
+
+	/**
+	 * 
+	 * @return the hit-based hits
+	 */
+	public List<FittedHit> get_Hits() {
+		return hits;
+	}
+
+	/**
+	 * 
+	 * @return the hit-based track candidates, null if none was found
+	 */
+	public List<Track> get_Tracks() {
+		return tracks;
+	}
+}
@@ -0,0 +1,200 @@
+package org.jlab.rec.dc.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.cluster.ClusterCleanerUtilities;
+import org.jlab.rec.dc.cluster.ClusterFinder;
+import org.jlab.rec.dc.cluster.ClusterFitter;
+import org.jlab.rec.dc.cluster.FittedCluster;
+import org.jlab.rec.dc.cross.Cross;
+import org.jlab.rec.dc.cross.CrossList;
+import org.jlab.rec.dc.cross.CrossListFinder;
+import org.jlab.rec.dc.cross.CrossMaker;
+import org.jlab.rec.dc.hit.Hit;
+import org.jlab.rec.dc.hit.SectorOccupancy;
+import org.jlab.rec.dc.monitoring.StageMonitor;
+import org.jlab.rec.dc.segment.Segment;
+import org.jlab.rec.dc.segment.SegmentFinder;
+import org.jlab.rec.dc.track.Track;
+import org.jlab.rec.dc.track.TrackCandListFinder;
+
+/**
+ * The hit-based tracking chain (clustering, segment finding, cross making and track candidate finding) for the hits of one sector.
+ * The sectors are independent, so that the tasks of the six sectors can be run concurrently; each task uses its own
+ * cluster fitter, swimmer and Kalman filter engine, and only reads the shared geometry, constants and field maps.
+ * The IDs of the objects found in a sector are local to the sector; they are renumbered when the sectors are merged.
+ * The stages and counters of a task are recorded in a task monitor, added to the monitor of the event when all the tasks are done.
+ * @author ziegler
+ *
+ */
+public class HitBasedSectorTracking implements Callable<HitBasedSectorTracking> {
+
+	private final int sector;
+	private final List<Hit> hits;
+	private final SectorOccupancy occupancy;
+	private final StageMonitor monitor;
+
+	List<FittedCluster> clusters = new ArrayList<FittedCluster>();
+	List<Segment> segments = new ArrayList<Segment>();
+	List<Cross> crosses = new ArrayList<Cross>();
+	List<Track> trkcands = new ArrayList<Track>();
+	/**
+	 * the number of cross candidates made in the sector, used to number the crosses as in the serial mode
+	 */
+	int nbOfCrossCandidates = 0;
+	/**
+	 * true if the sector has more crosses than Constants.MAXNBCROSSES
+	 */
+	boolean tooManyCrosses = false;
+
+	/**
+	 *
+	 * @param sector the sector (1...6)
+	 * @param hits the hits in the sector
+	 */
+	public HitBasedSectorTracking(int sector, List<Hit> hits) {
+		this(sector, hits, null);
+	}
+
+	/**
+	 *
+	 * @param sector the sector (1...6)
+	 * @param hits the hits in the sector
+	 * @param occupancy the sector occupancy used to bound the track candidate search in the degraded mode, null if not in the degraded mode
+	 */
+	public HitBasedSectorTracking(int sector, List<Hit> hits, SectorOccupancy occupancy) {
+		this.sector = sector;
+		this.hits = hits;
+		this.occupancy = occupancy;
+		this.monitor = StageMonitor.createTaskMonitor();
+	}
+
+	/**
+	 *
+	 * @return the monitor of the task, null if the event is not monitored
+	 */
+	public StageMonitor get_Monitor() {
+		return monitor;
+	}
+
+	/**
+	 *
+	 * @return the sector (1...6)
+	 */
+	public int get_Sector() {
+		return sector;
+	}
+
+	@Override
+	public HitBasedSectorTracking call() {
+		if(monitor!=null)
+			monitor.beginTask();
+		try {
+			this.findTracks();
+		} finally {
+			if(monitor!=null)
+				monitor.endTask();
+		}
+		return this;
+	}
+
+	private void findTracks() {
+
+		if(hits.size()==0)
+			return;
+
+		ClusterFitter cf = new ClusterFitter();
+		ClusterCleanerUtilities ct = new ClusterCleanerUtilities();
+
+		//2) find the clusters from these hits
+		StageMonitor.start(StageMonitor.CLUSTERS);
+		ClusterFinder clusFinder = new ClusterFinder();
+		clusters = clusFinder.FindHitBasedClusters(hits, ct, cf);
+		StageMonitor.stop(StageMonitor.CLUSTERS);
+		StageMonitor.count(StageMonitor.NCLUSTERS, clusters.size());
+		if(clusters.size()==0)
+			return;
+
+		//3) find the segments from the fitted clusters
+		StageMonitor.start(StageMonitor.SEGMENTS);
+		SegmentFinder segFinder = new SegmentFinder();
+		segments =  segFinder.get_Segments(clusters, null);
+		StageMonitor.stop(StageMonitor.SEGMENTS);
+		StageMonitor.count(StageMonitor.NSEGMENTS, segments.size());
+		if(segments.size()==0)
+			return;
+
+		//4) make the crosses
+		StageMonitor.start(StageMonitor.CROSSES);
+		CrossMaker crossMake = new CrossMaker();
+		crosses = crossMake.find_Crosses(segments);
+		nbOfCrossCandidates = crossMake.get_NbOfCandidates();
+		StageMonitor.stop(StageMonitor.CROSSES);
+		StageMonitor.count(StageMonitor.NCROSSES, crosses.size());
+		if(crosses.size()==0)
+			return;
+		if(crosses.size()>Constants.MAXNBCROSSES) {
+			tooManyCrosses = true;
+			return;
+		}
+
+		//5) make list of crosses consistent with a track candidate
+		StageMonitor.start(StageMonitor.CROSSLISTS);
+		CrossListFinder crossLister = new CrossListFinder();
+		CrossList crosslist = crossLister.candCrossLists(crosses, occupancy);
+		StageMonitor.stop(StageMonitor.CROSSLISTS);
+		StageMonitor.count(StageMonitor.NCROSSLISTS, crosslist.size());
+		if(crosslist.size()==0)
+			return;
+
+		//6) find the list of  track candidates
+		StageMonitor.start(StageMonitor.TRACKS);
+		TrackCandListFinder trkcandFinder = new TrackCandListFinder("HitBased");
+		trkcands = trkcandFinder.getTrackCands(crosslist) ;
+		StageMonitor.stop(StageMonitor.TRACKS);
+		StageMonitor.count(StageMonitor.NCANDIDATES, trkcands.size());
+
+	}
+
+	/**
+	 * Merges the results of the sector tasks in sector order and renumbers the clusters (from 1), segments, crosses and track candidates (from 0)
+	 * so that the IDs are unique in the event and do not depend on the order in which the tasks were run.
+	 * The crosses are numbered as in the serial mode, over all the cross candidates of the preceding sectors, so that their IDs keep the gaps
+	 * left by the candidates rejected by the sector acceptance cut
+	 * @param sectorTasks the completed tasks, in sector order
+	 * @param clusters the list filled with the clusters
+	 * @param segments the list filled with the segments
+	 * @param crosses the list filled with the crosses
+	 * @param trkcands the list filled with the track candidates
+	 */
+	public static void merge(List<HitBasedSectorTracking> sectorTasks, List<FittedCluster> clusters, List<Segment> segments,
+			List<Cross> crosses, List<Track> trkcands) {
+
+		int crossIdOffset = 0;
+		for(HitBasedSectorTracking task : sectorTasks) {
+			clusters.addAll(task.clusters);
+			segments.addAll(task.segments);
+			for(Cross cross : task.crosses)
+				cross.set_Id(cross.get_Id()+crossIdOffset);
+			crosses.addAll(task.crosses);
+			trkcands.addAll(task.trkcands);
+			crossIdOffset += task.nbOfCrossCandidates;
+		}
+
+		int cid = 1;
+		for(FittedCluster clus : clusters)
+			clus.set_Id(cid++);
+		// a segment has the ID of its cluster
+		for(Segment seg : segments) {
+			seg.set_Id(seg.get_fittedCluster().get_Id());
+			if(seg.get_Trajectory()!=null)
+				seg.get_Trajectory().set_SegmentId(seg.get_Id());
+		}
+		int tid = 0;
+		for(Track trk : trkcands)
+			trk.set_Id(tid++);
+	}
+}
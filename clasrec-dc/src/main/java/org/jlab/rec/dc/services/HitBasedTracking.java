@@ -2,6 +2,11 @@ package org.jlab.rec.dc.services;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.jlab.clasrec.main.DetectorReconstruction;
 import org.jlab.clasrec.utils.ServiceConfiguration;
@@ -9,6 +14,7 @@ import org.jlab.evio.clas12.EvioDataBank;
 import org.jlab.evio.clas12.EvioDataEvent;
 import org.jlab.rec.dc.CalibrationConstantsLoader;
 import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.DCSnapshot;
 import org.jlab.rec.dc.GeometryLoader;
 import org.jlab.rec.dc.banks.HitReader;
 import org.jlab.rec.dc.banks.RecoBankWriter;
@@ -16,17 +22,21 @@ import org.jlab.rec.dc.cluster.ClusterCleanerUtilities;
 import org.jlab.rec.dc.cluster.ClusterFinder;
 import org.jlab.rec.dc.cluster.ClusterFitter;
 import org.jlab.rec.dc.cluster.FittedCluster;
+import org.jlab.rec.dc.cluster.LayerEfficiencyEngine;
 import org.jlab.rec.dc.cross.Cross;
 import org.jlab.rec.dc.cross.CrossList;
 import org.jlab.rec.dc.cross.CrossListFinder;
 import org.jlab.rec.dc.cross.CrossMaker;
 import org.jlab.rec.dc.hit.FittedHit;
 import org.jlab.rec.dc.hit.Hit;
+import org.jlab.rec.dc.hit.SectorOccupancy;
+import org.jlab.rec.dc.monitoring.StageMonitor;
 import org.jlab.rec.dc.segment.Segment;
 import org.jlab.rec.dc.segment.SegmentFinder;
 import org.jlab.rec.dc.track.Track;
 import org.jlab.rec.dc.track.TrackCandListFinder;
 import org.jlab.rec.dc.trajectory.DCSwimmer;
+import org.jlab.rec.dc.trajectory.FieldGridLoader;
 
 import cnuphys.snr.NoiseReductionParameters;
 import cnuphys.snr.clas12.Clas12NoiseAnalysis;
@@ -54,6 +64,12 @@ public class HitBasedTracking extends DetectorReconstruction {
     // init SNR 
     Clas12NoiseResult results = new Clas12NoiseResult(); 
 	Clas12NoiseAnalysis noiseAnalysis = new Clas12NoiseAnalysis();
+	// the layer efficiency engine used in calibration runs
+	LayerEfficiencyEngine layerEffEngine = new LayerEfficiencyEngine();
+	// the sector occupancy used in the degraded mode
+	SectorOccupancy occupancy = new SectorOccupancy();
+	// the stage timing and counters, created when the monitoring is on
+	StageMonitor monitor;
 
 	
 	
@@ -71,22 +87,45 @@ public class HitBasedTracking extends DetectorReconstruction {
     
 	@Override
 	public void processEvent(EvioDataEvent event) {
+		if(Constants.useStageMonitor==false) {
+			this.reconstruct(event);
+			return;
+		}
+		if(monitor==null)
+			monitor = new StageMonitor("DCHB", "HitBasedTrkg::HBTiming");
+		monitor.beginEvent();
+		this.reconstruct(event);
+		monitor.endEvent(event);
+	}
+	
+	/**
+	 * Appends the status bank of the sectors, if the bank is in the dictionary
+	 * @param event the event
+	 * @param rbc the bank writer
+	 */
+	private void appendHBStatusBank(EvioDataEvent event, RecoBankWriter rbc) {
+		EvioDataBank statusbank = rbc.fillHBStatusBank(event, occupancy);
+		if(statusbank!=null)
+			event.appendBanks(statusbank);
+	}
+	
+	private void reconstruct(EvioDataEvent event) {
 		//if(event.hasBank("GenPart::true")==true)
 		//	Constants.isSimulation = true;
 		
 		eventNb++;		
 		List<FittedHit> fhits = new ArrayList<FittedHit>();
-		List<FittedCluster> clusters = new ArrayList<FittedCluster>();
-		List<Segment> segments = new ArrayList<Segment>();
-		List<Cross> crosses = new ArrayList<Cross>();
 		
-		List<Track> trkcands = new ArrayList<Track>();
+		if(Constants.useFusedHBTB==true)
+			HitBasedHandoff.clear();
 		
 		//instantiate bank writer
 		RecoBankWriter rbc = new RecoBankWriter();
 		
+		StageMonitor.start(StageMonitor.READ);
 		HitReader hitRead = new HitReader();
 		hitRead.fetch_DCHits(event, noiseAnalysis, parameters, results);
+		StageMonitor.stop(StageMonitor.READ);
 
 		if(Constants.DEBUGPRINTMODE==true)
 			System.out.println("*********  HIT-BASED TRACKING  ********* \n event number "+eventNb);
@@ -97,120 +136,305 @@ public class HitBasedTracking extends DetectorReconstruction {
 		
 		if(Constants.DEBUGPRINTMODE==true)
 			System.out.println("Nb of hits "+hits.size());
+		StageMonitor.count(StageMonitor.NHITS, hits.size());
 		//II) process the hits
 
 		//1) exit if hit list is empty
 		if(hits.size()==0 ) {
+			// the sectors are flagged as normal, as in the events with hits
+			if(Constants.useDegradedMode==true) {
+				occupancy.fill(hits);
+				this.appendHBStatusBank(event, rbc);
+			}
 			return;
 		}
 
 		fhits = rbc.createRawHitList(hits);
-
-		//2) find the clusters from these hits
-			ClusterFinder clusFinder = new ClusterFinder();
-			clusters = clusFinder.FindHitBasedClusters(hits, ct, cf);
-			
-			
-			EvioDataBank effbank = (EvioDataBank) event.getDictionary().createBank("HitBasedTrkg::LayerEffs",0);
-			
-			if(Constants.DEBUGPRINTMODE==true)  
-				System.out.println("Nb of clusters "+clusters.size());
-			
-			if(clusters.size()==0) {				
-				rbc.fillAllHBBanks(event, rbc, fhits, null, null, null, null,effbank);
-				return;
-			}
 		
-			if(Constants.LAYEREFFS) 
-				effbank = clusFinder.getLayerEfficiencies(clusters, hits, ct, cf, event);
-			
-			
-			rbc.updateListsListWithClusterInfo(fhits, clusters);
-			
-			//3) find the segments from the fitted clusters
-			SegmentFinder segFinder = new SegmentFinder();
-			segments =  segFinder.get_Segments(clusters, event);
-			
-			if(Constants.DEBUGPRINTMODE==true)  
-				System.out.println("Nb of segments "+segments.size());
-			if(segments.size()==0) { // need 6 segments to make a trajectory
-				
-				rbc.fillAllHBBanks(event, rbc, fhits, clusters, null, null, null, effbank);
-				return;
-			}
-								
-			CrossMaker crossMake = new CrossMaker();
-			crosses = crossMake.find_Crosses(segments);
-			
-			
-			if(Constants.DEBUGPRINTMODE==true)  
-				System.out.println("Nb of crosses "+crosses.size());
-			if(crosses.size()==0 ) {
-				
-				rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, null, null, effbank);
-				return;
-			}
-			
+		// in the degraded mode the overloaded sectors are found from the hit counts and pruned before the clustering
+		if(Constants.useDegradedMode==true) {
+			occupancy.fill(hits);
+			int nbOfPrunedHits = occupancy.pruneOverloadedSectors(hits);
+			if(Constants.DEBUGPRINTMODE==true && nbOfPrunedHits>0)
+				System.out.println("High background event: "+nbOfPrunedHits+" hits pruned in the overloaded sectors");
+		}
+		
+		// the sectors are processed concurrently; the layer efficiencies and calibration banks need the whole event and are only made in the serial mode
+		List<Track> trkcands = null;
+		if(Constants.useSectorParallelHB==true && Constants.LAYEREFFS==false && Constants.isCalibrationRun==false) {
+			trkcands = this.processEventBySector(event, rbc, hits, fhits);
+		} else {
+			trkcands = this.processHits(event, rbc, hits, fhits);
+		}
+		
+		if(Constants.useDegradedMode==true)
+			this.appendHBStatusBank(event, rbc);
+		
+		// the hits and track candidates are passed in memory to the time-based tracking
+		if(Constants.useFusedHBTB==true)
+			HitBasedHandoff.publish(event, fhits, trkcands);
+	}
+	
+	/**
+	 * Runs the hit-based tracking chain on the hits of the event and fills the banks
+	 * @param event the event
+	 * @param rbc the bank writer
+	 * @param hits the hits in the event
+	 * @param fhits the raw hit list
+	 * @return the track candidates, null if none was found
+	 */
+	private List<Track> processHits(EvioDataEvent event, RecoBankWriter rbc, List<Hit> hits, List<FittedHit> fhits) {
+		List<FittedCluster> clusters = new ArrayList<FittedCluster>();
+		List<Segment> segments = new ArrayList<Segment>();
+		List<Cross> crosses = new ArrayList<Cross>();
+		List<Track> trkcands = new ArrayList<Track>();
+		
+	//2) find the clusters from these hits
+		StageMonitor.start(StageMonitor.CLUSTERS);
+		ClusterFinder clusFinder = new ClusterFinder();
+		clusters = clusFinder.FindHitBasedClusters(hits, ct, cf);
+		StageMonitor.stop(StageMonitor.CLUSTERS);
+		StageMonitor.count(StageMonitor.NCLUSTERS, clusters.size());
+		
+		
+		EvioDataBank effbank = (EvioDataBank) event.getDictionary().createBank("HitBasedTrkg::LayerEffs",0);
+		
+		if(Constants.DEBUGPRINTMODE==true)  
+			System.out.println("Nb of clusters "+clusters.size());
+		
+		if(clusters.size()==0) {				
+			rbc.fillAllHBBanks(event, rbc, fhits, null, null, null, null,effbank);
+			return null;
+		}
+	
+		if(Constants.LAYEREFFS && Constants.useIncrementalLayerEffs) 
+			effbank = layerEffEngine.getLayerEfficiencies(clusters, hits, clusFinder, event);
+		if(Constants.LAYEREFFS && !Constants.useIncrementalLayerEffs) 
+			effbank = clusFinder.getLayerEfficiencies(clusters, hits, ct, cf, event);
+		
+		
+		rbc.updateListsListWithClusterInfo(fhits, clusters);
+		
+		//3) find the segments from the fitted clusters
+		StageMonitor.start(StageMonitor.SEGMENTS);
+		SegmentFinder segFinder = new SegmentFinder();
+		segments =  segFinder.get_Segments(clusters, event);
+		StageMonitor.stop(StageMonitor.SEGMENTS);
+		StageMonitor.count(StageMonitor.NSEGMENTS, segments.size());
+		
+		if(Constants.DEBUGPRINTMODE==true)  
+			System.out.println("Nb of segments "+segments.size());
+		if(segments.size()==0) { // need 6 segments to make a trajectory
 			
-			//if(Constants.DEBUGPRINTMODE==true)  System.out.println("I found "+segments.size()+ " segments and "+crosses.size()+" crosses at event "+eventNumber);
-			//5) make list of crosses consistent with a track candidate
-			CrossListFinder crossLister = new CrossListFinder();
+			rbc.fillAllHBBanks(event, rbc, fhits, clusters, null, null, null, effbank);
+			return null;
+		}
+							
+		StageMonitor.start(StageMonitor.CROSSES);
+		CrossMaker crossMake = new CrossMaker();
+		crosses = crossMake.find_Crosses(segments);
+		StageMonitor.stop(StageMonitor.CROSSES);
+		StageMonitor.count(StageMonitor.NCROSSES, crosses.size());
+		
+		
+		if(Constants.DEBUGPRINTMODE==true)  
+			System.out.println("Nb of crosses "+crosses.size());
+		if(crosses.size()==0 ) {
 			
-			List<List<Cross>> CrossesInSector = crossLister.get_CrossesInSectors(crosses);
-			for(int s =0; s< 6; s++) {
-				if(CrossesInSector.get(s).size()>Constants.MAXNBCROSSES) {
-						//crosses.removeAll(CrossesInSector.get(s));
-					if(Constants.DEBUGPRINTMODE==true) 
-						System.err.println("Too many crosses in sector "+(s+1)+" -- high background event !!!");
-					return;
-				}
+			rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, null, null, effbank);
+			return null;
+		}
+		
+		
+		//if(Constants.DEBUGPRINTMODE==true)  System.out.println("I found "+segments.size()+ " segments and "+crosses.size()+" crosses at event "+eventNumber);
+		//5) make list of crosses consistent with a track candidate
+		CrossListFinder crossLister = new CrossListFinder();
+		
+		List<List<Cross>> CrossesInSector = crossLister.get_CrossesInSectors(crosses);
+		// the crosses used in the track candidate search
+		List<Cross> crossesForTracking = crosses;
+		if(Constants.useDegradedMode==true) {
+			// the sectors with too many crosses are kept in the banks but skipped in the track candidate search
+			crossesForTracking = occupancy.selectCrossesForTracking(CrossesInSector);
+			CrossesInSector.clear();
+		}
+		for(int s =0; s< CrossesInSector.size(); s++) {
+			if(CrossesInSector.get(s).size()>Constants.MAXNBCROSSES) {
+					//crosses.removeAll(CrossesInSector.get(s));
+				if(Constants.DEBUGPRINTMODE==true) 
+					System.err.println("Too many crosses in sector "+(s+1)+" -- high background event !!!");
+				return null;
 			}
+		}
+		if(Constants.DEBUGPRINTMODE==true)  
+			System.out.println("Nb of crosses "+crosses.size());
+		
+		StageMonitor.start(StageMonitor.CROSSLISTS);
+		CrossList crosslist = crossLister.candCrossLists(crossesForTracking, Constants.useDegradedMode==true ? occupancy : null);
+		StageMonitor.stop(StageMonitor.CROSSLISTS);
+		StageMonitor.count(StageMonitor.NCROSSLISTS, crosslist.size());
+		
+		if(crosslist.size()==0) {
 			if(Constants.DEBUGPRINTMODE==true)  
-				System.out.println("Nb of crosses "+crosses.size());
+				System.out.println("No cross list found !!!");
 			
-			CrossList crosslist = crossLister.candCrossLists(crosses);
-			
-			if(crosslist.size()==0) {
-				if(Constants.DEBUGPRINTMODE==true)  
-					System.out.println("No cross list found !!!");
-				
-				rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses, null, effbank);
-				return;
-			}
+			rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses, null, effbank);
+			return null;
+		}
 
+		
+		
+		
+		
+		//6) find the list of  track candidates
+		StageMonitor.start(StageMonitor.TRACKS);
+		TrackCandListFinder trkcandFinder = new TrackCandListFinder("HitBased");
+		trkcands = trkcandFinder.getTrackCands(crosslist) ;
+		StageMonitor.stop(StageMonitor.TRACKS);
+		StageMonitor.count(StageMonitor.NCANDIDATES, trkcands.size());
+		
 			
+		if(Constants.DEBUGPRINTMODE==true)  
+			System.out.println("Nb of tracks "+trkcands.size());
+		if(trkcands.size()==0) {
 			
-			
-			
-			//6) find the list of  track candidates
-			TrackCandListFinder trkcandFinder = new TrackCandListFinder("HitBased");
-			trkcands = trkcandFinder.getTrackCands(crosslist) ;
-			
-				
-			if(Constants.DEBUGPRINTMODE==true)  
-				System.out.println("Nb of tracks "+trkcands.size());
-			if(trkcands.size()==0) {
-				
-				rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses, null,effbank); // no cand found, stop here and save the hits, the clusters, the segments, the crosses
-				return;
+			rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses, null,effbank); // no cand found, stop here and save the hits, the clusters, the segments, the crosses
+			return null;
+		}
+		// track found
+		
+		
+		rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses, trkcands, effbank);
+		if(Constants.DEBUGPRINTMODE==true)
+			System.out.println("all DCHB banks should be appended !!!");
+		
+		recNb++;
+		if(Constants.DEBUGPRINTMODE==true) {
+			System.out.println("      *************************  ");
+		    System.out.println("         Effciency  (%)  "+((float) recNb*100/(float)eventNb));
+		    System.out.println("      *************************  ");
+		}
+		return trkcands;
+	}
+
+	// the pool running the sector tasks, shared by the service instances
+	private static ExecutorService sectorPool;
+	
+	private static synchronized ExecutorService getSectorPool() {
+		if(sectorPool==null) {
+			sectorPool = Executors.newFixedThreadPool(Constants.NBSECTORTHREADS, new ThreadFactory() {
+				int threadNb = 0;
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "DCHB-sector-"+(++threadNb));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sectorPool;
+	}
+	
+	/**
+	 * Runs the hit-based tracking chain sector by sector in the sector pool, and merges the results in sector order 
+	 * before filling the banks.  The clusters are renumbered consecutively in sector order; the crosses and, without the overlap 
+	 * resolver, the track candidates have the same IDs as in the serial mode.  With the overlap resolver the candidates are ranked 
+	 * within each sector instead of over the event, so that their order and IDs can differ from the serial mode.
+	 * If a sector task fails, the event is processed in the serial mode.
+	 * @param event the event
+	 * @param rbc the bank writer
+	 * @param hits the hits in the event
+	 * @param fhits the raw hit list
+	 * @return the track candidates, null if none was found
+	 */
+	private List<Track> processEventBySector(EvioDataEvent event, RecoBankWriter rbc, List<Hit> hits, List<FittedHit> fhits) {
+		
+		List<List<Hit>> hitsInSector = new ArrayList<List<Hit>>(6);
+		for(int s =0; s< 6; s++) 
+			hitsInSector.add(new ArrayList<Hit>());
+		for(Hit hit : hits)
+			hitsInSector.get(hit.get_Sector()-1).add(hit);
+		
+		List<Future<HitBasedSectorTracking>> futures = new ArrayList<Future<HitBasedSectorTracking>>(6);
+		for(int s =0; s< 6; s++) 
+			futures.add(getSectorPool().submit(new HitBasedSectorTracking(s+1, hitsInSector.get(s), 
+					Constants.useDegradedMode==true ? occupancy : null)));
+		
+		List<HitBasedSectorTracking> sectorTasks = new ArrayList<HitBasedSectorTracking>(6);
+		boolean failed = false;
+		StageMonitor.start(StageMonitor.SECTORS);
+		try {
+			// all the tasks are waited for, so that none is still using the hits if the event is processed again
+			for(Future<HitBasedSectorTracking> future : futures) {
+				try {
+					sectorTasks.add(future.get());
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					failed = true;
+				}
 			}
-			// track found
-			
-			
-			rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses, trkcands, effbank);
-			if(Constants.DEBUGPRINTMODE==true)
-				System.out.println("all DCHB banks should be appended !!!");
-			
-			recNb++;
-			if(Constants.DEBUGPRINTMODE==true) {
-				System.out.println("      *************************  ");
-			    System.out.println("         Effciency  (%)  "+((float) recNb*100/(float)eventNb));
-			    System.out.println("      *************************  ");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			StageMonitor.stop(StageMonitor.SECTORS);
+		}
+		// a failed sector task does not lose the event: it is processed in the serial mode
+		if(failed) {
+			return this.processHits(event, rbc, hits, fhits);
+		}
+		// the stage times and counters of the sector tasks are added to the event
+		for(HitBasedSectorTracking task : sectorTasks)
+			StageMonitor.addTask(task.get_Monitor());
+		
+		for(HitBasedSectorTracking task : sectorTasks) {
+			if(task.tooManyCrosses) {
+				if(Constants.DEBUGPRINTMODE==true) 
+					System.err.println("Too many crosses in sector "+task.get_Sector()+" -- high background event !!!");
+				// in the degraded mode the crosses of the sector are kept in the banks
+				if(Constants.useDegradedMode==false)
+					return null;
+				occupancy.set_TrackingSkipped(task.get_Sector());
 			}
 		}
+		
+		List<FittedCluster> clusters = new ArrayList<FittedCluster>();
+		List<Segment> segments = new ArrayList<Segment>();
+		List<Cross> crosses = new ArrayList<Cross>();
+		List<Track> trkcands = new ArrayList<Track>();
+		HitBasedSectorTracking.merge(sectorTasks, clusters, segments, crosses, trkcands);
+		
+		EvioDataBank effbank = (EvioDataBank) event.getDictionary().createBank("HitBasedTrkg::LayerEffs",0);
+		
+		if(Constants.DEBUGPRINTMODE==true)  
+			System.out.println("Nb of clusters "+clusters.size()+" segments "+segments.size()+" crosses "+crosses.size()+" tracks "+trkcands.size());
+		
+		if(clusters.size()==0) {				
+			rbc.fillAllHBBanks(event, rbc, fhits, null, null, null, null,effbank);
+			return null;
+		}
+		rbc.updateListsListWithClusterInfo(fhits, clusters);
+		
+		if(segments.size()==0) {
+			rbc.fillAllHBBanks(event, rbc, fhits, clusters, null, null, null, effbank);
+			return null;
+		}
+		if(crosses.size()==0 || trkcands.size()==0) {
+			rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses.size()==0 ? null : crosses, null, effbank);
+			return null;
+		}
+		rbc.fillAllHBBanks(event, rbc, fhits, clusters, segments, crosses, trkcands, effbank);
+		
+		recNb++;
+		return trkcands;
+	}
 
 		@Override
 		public void init() {
+			// Load the geometry tables and calibration constants from the local snapshot
+			if (Constants.SNAPSHOTDIR != null) {
+				DCSnapshot.load();
+			}
 			// Load the Geometry
 			if (GeometryLoader.isGeometryLoaded == false) {
 				GeometryLoader.Load();
@@ -230,6 +454,14 @@ public class HitBasedTracking extends DetectorReconstruction {
 			if (Initialization.areFieldsLoaded == false) {
 				Initialization.getMagneticFields();
 			}
+			// Load the field grid
+			if (Constants.useFieldGrid && FieldGridLoader.FIELDGRIDLOADED == false) {
+				FieldGridLoader.Load(Initialization.rcompositeField);
+			}
+			// Save the snapshot for the next start
+			if (Constants.SNAPSHOTDIR != null) {
+				DCSnapshot.save();
+			}
 			
 		}
 			@Override
@@ -262,6 +494,78 @@ public class HitBasedTracking extends DetectorReconstruction {
 				if(config.hasItem("MAG", "solenoid")) {
 					Constants.SOLSCALE = config.asDouble("MAG", "solenoid")	;	System.out.println("************************* solenoid scale = "+Constants.SOLSCALE)		;	
 				}
+				if(config.hasItem("MAG", "fieldGrid")) {
+					Constants.useFieldGrid = Boolean.parseBoolean(config.asString("MAG", "fieldGrid"));
+				}
+				if(config.hasItem("MAG", "fieldGridSpacing")) {
+					Constants.FIELDGRIDSPACING = config.asDouble("MAG", "fieldGridSpacing");
+				}
+				if(config.hasItem("MAG", "fieldGridCache")) {
+					Constants.FIELDGRIDCACHEFILE = config.asString("MAG", "fieldGridCache").trim();
+				}
+				if(config.hasItem("MAG", "fieldGridValidate")) {
+					Constants.FIELDGRIDVALIDATE = Boolean.parseBoolean(config.asString("MAG", "fieldGridValidate"));
+				}
+				if(config.hasItem("DC", "sectorParallel")) {
+					Constants.useSectorParallelHB = Boolean.parseBoolean(config.asString("DC", "sectorParallel"));
+				}
+				if(config.hasItem("DC", "sectorThreads")) {
+					Constants.NBSECTORTHREADS = Integer.parseInt(config.asString("DC", "sectorThreads").trim());
+				}
+				if(config.hasItem("DC", "adaptiveIntBdl")) {
+					Constants.useAdaptiveIntBdl = Boolean.parseBoolean(config.asString("DC", "adaptiveIntBdl"));
+				}
+				if(config.hasItem("DC", "intBdlTolerance")) {
+					Constants.INTBDLTOLERANCE = config.asDouble("DC", "intBdlTolerance");
+				}
+				if(config.hasItem("DC", "singlePassTrajectorySwim")) {
+					Constants.useSinglePassTrajectorySwim = Boolean.parseBoolean(config.asString("DC", "singlePassTrajectorySwim"));
+				}
+				if(config.hasItem("DC", "occupancyBitmapClustering")) {
+					Constants.useOccupancyBitmapClustering = Boolean.parseBoolean(config.asString("DC", "occupancyBitmapClustering"));
+				}
+				if(config.hasItem("DC", "stageMonitor")) {
+					Constants.useStageMonitor = Boolean.parseBoolean(config.asString("DC", "stageMonitor"));
+				}
+				if(config.hasItem("DC", "stageMonitorBank")) {
+					Constants.STAGEMONITORBANK = Boolean.parseBoolean(config.asString("DC", "stageMonitorBank"));
+				}
+				if(config.hasItem("DC", "overlapResolver")) {
+					Constants.useOverlapResolver = Boolean.parseBoolean(config.asString("DC", "overlapResolver"));
+				}
+				if(config.hasItem("DC", "snapshotDir")) {
+					Constants.SNAPSHOTDIR = config.asString("DC", "snapshotDir").trim();
+				}
+				if(config.hasItem("DC", "fusedHBTB")) {
+					Constants.useFusedHBTB = Boolean.parseBoolean(config.asString("DC", "fusedHBTB"));
+				}
+				if(config.hasItem("DC", "degradedMode")) {
+					Constants.useDegradedMode = Boolean.parseBoolean(config.asString("DC", "degradedMode"));
+				}
+				if(config.hasItem("DC", "maxHitsPerSector")) {
+					Constants.MAXNBHITSPERSECTOR = Integer.parseInt(config.asString("DC", "maxHitsPerSector").trim());
+				}
+				if(config.hasItem("DC", "degradedMaxColumnSize")) {
+					Constants.DEGRADEDMAXCOLUMNSIZE = Integer.parseInt(config.asString("DC", "degradedMaxColumnSize").trim());
+				}
+				if(config.hasItem("DC", "degradedMaxCrossLists")) {
+					Constants.DEGRADEDMAXNBCROSSLISTS = Integer.parseInt(config.asString("DC", "degradedMaxCrossLists").trim());
+				}
+				if(config.hasItem("DC", "houghEngine")) {
+					Constants.useHoughEngine = Boolean.parseBoolean(config.asString("DC", "houghEngine"));
+				}
+				if(config.hasItem("DC", "houghPeakSuppression")) {
+					Constants.HOUGHPEAKSUPPRESSION = Boolean.parseBoolean(config.asString("DC", "houghPeakSuppression"));
+				}
+				if(config.hasItem("DC", "sectorBucketedCrossLists")) {
+					Constants.useSectorBucketedCrossLists = Boolean.parseBoolean(config.asString("DC", "sectorBucketedCrossLists"));
+				}
+				if(config.hasItem("DC", "crossListChordDirCos")) {
+					Constants.CROSSLISTCHORDDIRCOSANGLE = config.asDouble("DC", "crossListChordDirCos");
+				}
+				if(config.hasItem("DC", "crossListMaxDeltaY")) {
+					Constants.CROSSLISTMAXDELTAY = config.asDouble("DC", "crossListMaxDeltaY");
+				}
 				
 				
 				
@@ -278,6 +582,9 @@ public class HitBasedTracking extends DetectorReconstruction {
 						Constants.isCalibrationRun = true;
 					System.out.println("CALIBRATION BNKS "+Constants.isCalibrationRun);
 				}
+				if(config.hasItem("LAYEREFFS", "incremental")) {
+					Constants.useIncrementalLayerEffs = Boolean.parseBoolean(config.asString("LAYEREFFS", "incremental"));
+				}
 			
 				
 				
@@ -8,6 +8,7 @@ import org.jlab.clasrec.utils.ServiceConfiguration;
 import org.jlab.evio.clas12.EvioDataEvent;
 import org.jlab.rec.dc.CalibrationConstantsLoader;
 import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.DCSnapshot;
 import org.jlab.rec.dc.GeometryLoader;
 import org.jlab.rec.dc.banks.HitReader;
 import org.jlab.rec.dc.banks.RecoBankWriter;
@@ -20,12 +21,14 @@ import org.jlab.rec.dc.cross.CrossList;
 import org.jlab.rec.dc.cross.CrossListFinder;
 import org.jlab.rec.dc.cross.CrossMaker;
 import org.jlab.rec.dc.hit.FittedHit;
+import org.jlab.rec.dc.monitoring.StageMonitor;
 import org.jlab.rec.dc.segment.Segment;
 import org.jlab.rec.dc.segment.SegmentFinder;
 import org.jlab.rec.dc.timetodistance.TableLoader;
 import org.jlab.rec.dc.track.Track;
 import org.jlab.rec.dc.track.TrackCandListFinder;
 import org.jlab.rec.dc.track.TrackMicroMegasMatching;
+import org.jlab.rec.dc.trajectory.FieldGridLoader;
 import org.jlab.rec.dc.trajectory.Vertex;
 
 /**
@@ -53,9 +56,23 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 	
 	ClusterFitter cf = new ClusterFitter();
     ClusterCleanerUtilities ct = new ClusterCleanerUtilities();
+    // the stage timing and counters, created when the monitoring is on
+    StageMonitor monitor;
     
 	@Override
 	public void processEvent(EvioDataEvent event) {
+		if(Constants.useStageMonitor==false) {
+			this.reconstruct(event);
+			return;
+		}
+		if(monitor==null)
+			monitor = new StageMonitor("DCTB", "TimeBasedTrkg::TBTiming");
+		monitor.beginEvent();
+		this.reconstruct(event);
+		monitor.endEvent(event);
+	}
+	
+	private void reconstruct(EvioDataEvent event) {
 				
 		List<FittedHit> fhits = new ArrayList<FittedHit>();
 		
@@ -70,14 +87,27 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 		if(Constants.DEBUGPRINTMODE==true)
 			System.out.println("*********  TIME-BASED TRACKING  *********");
 		
+		StageMonitor.start(StageMonitor.READ);
 		HitReader hitRead = new HitReader();
-		hitRead.read_HBHits(event);
+		// the hits and track candidates passed in memory by the hit-based tracking, if it ran on this event in this thread and wrote its banks
+		HitBasedHandoff hbresults = null;
+		if(Constants.useFusedHBTB==true)
+			hbresults = HitBasedHandoff.take(event);
+		if(hbresults!=null && event.hasBank("HitBasedTrkg::HBHits")==false)
+			hbresults = null;
+		if(hbresults!=null) {
+			hitRead.read_HBHits(hbresults.get_Hits());
+		} else {
+			hitRead.read_HBHits(event);
+		}
+		StageMonitor.stop(StageMonitor.READ);
 
 		List<FittedHit> hits = new ArrayList<FittedHit>();
 		//I) get the hits
 		hits = hitRead.get_HBHits();
 		if(Constants.DEBUGPRINTMODE==true)
 			System.out.println(" This is TimeBased Tracking. ...\n Getting HB hits from previous service : Nb of hits = "+hits.size());
+		StageMonitor.count(StageMonitor.NHITS, hits.size());
 		//II) process the hits
 
 		//1) exit if hit list is empty
@@ -86,9 +116,12 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 		}
 		
 		//2) find the clusters from these hits
+		StageMonitor.start(StageMonitor.CLUSTERS);
 		ClusterFinder clusFinder = new ClusterFinder();
 		
 		clusters = clusFinder.FindTimeBasedClusters(hits, cf, ct);
+		StageMonitor.stop(StageMonitor.CLUSTERS);
+		StageMonitor.count(StageMonitor.NCLUSTERS, clusters.size());
 		
 		if(clusters.size()==0) {
 			rbc.fillAllTBBanks(event, rbc, hits, null, null, null, null);
@@ -110,8 +143,11 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 		
 		
 		//3) find the segments from the fitted clusters
+		StageMonitor.start(StageMonitor.SEGMENTS);
 		SegmentFinder segFinder = new SegmentFinder();
 		segments =  segFinder.get_Segments(clusters, event);
+		StageMonitor.stop(StageMonitor.SEGMENTS);
+		StageMonitor.count(StageMonitor.NSEGMENTS, segments.size());
 		
 		
 	
@@ -136,8 +172,11 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 			}
 		}
 		
+		StageMonitor.start(StageMonitor.CROSSES);
 		CrossMaker crossMake = new CrossMaker();
 		crosses = crossMake.find_Crosses(segments);
+		StageMonitor.stop(StageMonitor.CROSSES);
+		StageMonitor.count(StageMonitor.NCROSSES, crosses.size());
 		
 		if(Constants.DEBUGPRINTMODE==true)  
 			System.out.println("Nb of crosses "+crosses.size());
@@ -155,7 +194,16 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 		if(Constants.DEBUGPRINTMODE==true)  
 			System.out.println("Nb of crosses "+crosses.size());
 		
-		CrossList crosslist = crossLister.candCrossLists(crosses);
+		StageMonitor.start(StageMonitor.CROSSLISTS);
+		// with the hit-based results in memory the crosses of the hit-based candidates are re-fitted, without a new search
+		CrossList crosslist = null;
+		if(hbresults!=null) {
+			crosslist = crossLister.trackCrossLists(crosses, hbresults.get_Tracks());
+		} else {
+			crosslist = crossLister.candCrossLists(crosses);
+		}
+		StageMonitor.stop(StageMonitor.CROSSLISTS);
+		StageMonitor.count(StageMonitor.NCROSSLISTS, crosslist.size());
 		
 		if(crosslist.size()==0) {
 			if(Constants.DEBUGPRINTMODE==true)  
@@ -167,8 +215,11 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 			
 		
 		//6) find the list of  track candidates
+		StageMonitor.start(StageMonitor.TRACKS);
 		TrackCandListFinder trkcandFinder = new TrackCandListFinder("TimeBased");
 		trkcands = trkcandFinder.getTrackCands(crosslist) ;
+		StageMonitor.stop(StageMonitor.TRACKS);
+		StageMonitor.count(StageMonitor.NCANDIDATES, trkcands.size());
 		
 		if(Constants.DEBUGPRINTMODE==true)  
 			System.out.println("Nb of tracks "+trkcands.size());
@@ -213,6 +264,10 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 	
 	@Override
 	public void init() {
+		// Load the geometry tables, calibration constants and time-to-distance tables from the local snapshot
+		if (Constants.SNAPSHOTDIR != null) {
+			DCSnapshot.load();
+		}
 		// Load the Geometry
 		if (GeometryLoader.isGeometryLoaded == false) {
 			GeometryLoader.Load();
@@ -232,10 +287,18 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 			if (Initialization.areFieldsLoaded == false) {
 				Initialization.getMagneticFields();		
 			}
+		// Load the field grid
+			if (Constants.useFieldGrid && FieldGridLoader.FIELDGRIDLOADED == false) {
+				FieldGridLoader.Load(Initialization.rcompositeField);
+			}
 	    // Load the time-to-distance function
 			if( TableLoader.T2DLOADED == false) {
 				TableLoader.Fill();
 			}
+		// Save the snapshot for the next start
+			if (Constants.SNAPSHOTDIR != null) {
+				DCSnapshot.save();
+			}
 			
 	}
 	@Override
@@ -249,6 +312,91 @@ public class TimeBasedTracking  extends DetectorReconstruction {
 			System.out.println("\n\n********** KALMAN ON " + kFlag + "  *************");
 
 		}
+		if(config.hasItem("DCTB", "kfStepping")) {
+			String stepping = config.asString("DCTB", "kfStepping");
+			
+			Constants.useAdaptiveKFStepping = stepping.trim().equalsIgnoreCase("adaptive");			
+			System.out.println("\n\n********** KALMAN ADAPTIVE STEPPING " + Constants.useAdaptiveKFStepping + "  *************");
+
+		}
+		if(config.hasItem("DCTB", "kfStepTolerance")) {
+			Constants.KFSTEPTOLERANCE = config.asDouble("DCTB", "kfStepTolerance");
+		}
+		if(config.hasItem("DCTB", "kfMaxStepSize")) {
+			Constants.KFMAXSTEPSIZE = config.asDouble("DCTB", "kfMaxStepSize");
+		}
+		if(config.hasItem("DCTB", "kfIterations")) {
+			String iterations = config.asString("DCTB", "kfIterations");
+			
+			Constants.useKFIterationDriver = iterations.trim().equalsIgnoreCase("converged");			
+			System.out.println("\n\n********** KALMAN CONVERGENCE-DRIVEN ITERATIONS " + Constants.useKFIterationDriver + "  *************");
+		}
+		if(config.hasItem("DCTB", "kfMaxIterations")) {
+			Constants.KFMAXITERATIONS = Integer.parseInt(config.asString("DCTB", "kfMaxIterations").trim());
+		}
+		if(config.hasItem("DCTB", "kfConvTolerance")) {
+			Constants.KFCONVTOLERANCE = config.asDouble("DCTB", "kfConvTolerance");
+		}
+		if(config.hasItem("MAG", "fieldGrid")) {
+			Constants.useFieldGrid = Boolean.parseBoolean(config.asString("MAG", "fieldGrid"));
+		}
+		if(config.hasItem("MAG", "fieldGridSpacing")) {
+			Constants.FIELDGRIDSPACING = config.asDouble("MAG", "fieldGridSpacing");
+		}
+		if(config.hasItem("MAG", "fieldGridCache")) {
+			Constants.FIELDGRIDCACHEFILE = config.asString("MAG", "fieldGridCache").trim();
+		}
+		if(config.hasItem("MAG", "fieldGridValidate")) {
+			Constants.FIELDGRIDVALIDATE = Boolean.parseBoolean(config.asString("MAG", "fieldGridValidate"));
+		}
+		if(config.hasItem("DC", "adaptiveIntBdl")) {
+			Constants.useAdaptiveIntBdl = Boolean.parseBoolean(config.asString("DC", "adaptiveIntBdl"));
+		}
+		if(config.hasItem("DC", "intBdlTolerance")) {
+			Constants.INTBDLTOLERANCE = config.asDouble("DC", "intBdlTolerance");
+		}
+		if(config.hasItem("DC", "singlePassTrajectorySwim")) {
+			Constants.useSinglePassTrajectorySwim = Boolean.parseBoolean(config.asString("DC", "singlePassTrajectorySwim"));
+		}
+		if(config.hasItem("DC", "stageMonitor")) {
+			Constants.useStageMonitor = Boolean.parseBoolean(config.asString("DC", "stageMonitor"));
+		}
+		if(config.hasItem("DC", "stageMonitorBank")) {
+			Constants.STAGEMONITORBANK = Boolean.parseBoolean(config.asString("DC", "stageMonitorBank"));
+		}
+		if(config.hasItem("DC", "overlapResolver")) {
+			Constants.useOverlapResolver = Boolean.parseBoolean(config.asString("DC", "overlapResolver"));
+		}
+		if(config.hasItem("DC", "snapshotDir")) {
+			Constants.SNAPSHOTDIR = config.asString("DC", "snapshotDir").trim();
+		}
+		if(config.hasItem("DC", "fusedHBTB")) {
+			Constants.useFusedHBTB = Boolean.parseBoolean(config.asString("DC", "fusedHBTB"));
+		}
+		if(config.hasItem("DC", "occupancyBitmapClustering")) {
+			Constants.useOccupancyBitmapClustering = Boolean.parseBoolean(config.asString("DC", "occupancyBitmapClustering"));
+		}
+		if(config.hasItem("DC", "houghEngine")) {
+			Constants.useHoughEngine = Boolean.parseBoolean(config.asString("DC", "houghEngine"));
+		}
+		if(config.hasItem("DC", "houghPeakSuppression")) {
+			Constants.HOUGHPEAKSUPPRESSION = Boolean.parseBoolean(config.asString("DC", "houghPeakSuppression"));
+		}
+		if(config.hasItem("DC", "sectorBucketedCrossLists")) {
+			Constants.useSectorBucketedCrossLists = Boolean.parseBoolean(config.asString("DC", "sectorBucketedCrossLists"));
+		}
+		if(config.hasItem("DC", "crossListChordDirCos")) {
+			Constants.CROSSLISTCHORDDIRCOSANGLE = config.asDouble("DC", "crossListChordDirCos");
+		}
+		if(config.hasItem("DC", "crossListMaxDeltaY")) {
+			Constants.CROSSLISTMAXDELTAY = config.asDouble("DC", "crossListMaxDeltaY");
+		}
+		if(config.hasItem("DCTB", "timeToDistanceGrid")) {
+			Constants.useTimeToDistanceGrid = Boolean.parseBoolean(config.asString("DCTB", "timeToDistanceGrid").trim());
+		}
+		if(config.hasItem("DCTB", "t2dCacheFile")) {
+			Constants.T2DCACHEFILE = config.asString("DCTB", "t2dCacheFile").trim();
+		}
 		if(config.hasItem("DCTB", "useMicroMegas")) {
 			String MMFlag = config.asString("DCTB", "useMicroMegas");
 			
@@ -1,7 +1,17 @@
 package org.jlab.rec.dc.timetodistance;
 
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jlab.rec.dc.Constants;
+import org.jlab.rec.dc.DCSnapshot;
 
 
 public class TableLoader {
@@ -11,7 +21,9 @@ public class TableLoader {
 	}
 
 	public static double[][][] DISTFROMTIME = new double[6][2][640]; // alpha Bfield time bins
+	public static int[][] LASTFILLEDBIN = new int[6][2]; // the last filled time bin in each B-field and alpha table
 	public static boolean T2DLOADED = false;
+	private static final int T2DFILEVERSION = 1;
 	static int minBinIdxB = 0;
 	static int maxBinIdxB = 5;
 	static int minBinIdxAlpha = 0;
@@ -24,6 +36,12 @@ public class TableLoader {
 	public static synchronized void Fill() {
 	    	
 			if (T2DLOADED) return;
+			
+			if(Constants.T2DCACHEFILE != null && read(Constants.T2DCACHEFILE)) {
+				T2DLOADED = true;
+				System.out.println("DC time-to-distance tables read from "+Constants.T2DCACHEFILE);
+				return;
+			}
 			double dmax = 1.35; // chamber specific --> 3 tables for each region
 			double dmax0 = dmax*Math.cos(Math.toRadians(30.));
 			double v0 = 0.005; //cm/ns is the saturated drift velocity
@@ -38,8 +56,7 @@ public class TableLoader {
 			double minVelDriftDist = 0.615;
 			double stepSize = 0.0010;
 			
-			DecimalFormat df = new DecimalFormat("#");
-			df.setRoundingMode(RoundingMode.CEILING);
+			double[] nm = calcnm( deltanm, minVelDriftDist);
 			
 			for(int ibfield =0; ibfield<6; ibfield++) {
 			
@@ -50,7 +67,6 @@ public class TableLoader {
 					double x = (double)(idist+1)*stepSize;
 					double xhat = x/dmax;
 					double xhat0 = x/dmax0;
-					double[] nm = calcnm( deltanm, minVelDriftDist);
 					double b = (tmax - dmax/v0)/(1.-nm[1]/nm[0]);
 					double a = -b*nm[1]/nm[0];
 					double time = x/v0+a*Math.pow(xhat,nm[0])+b*Math.pow(xhat, nm[1]);
@@ -72,8 +88,8 @@ public class TableLoader {
 				     double time0deg=x/v0+a0deg*Math.pow(xhat0,nm[1])+b0deg*Math.pow(xhat0,nm[0]);					    		 
 				    // now add in the extra time due to the non-zero bfield					    		 
 				     double time0degbfield=time0deg+deltatime_bfield_0deg;
-				     int bin0 = Integer.parseInt(df.format(time0degbfield/2.) ) -1;
-				     int bin = Integer.parseInt(df.format(timebfield/2.) ) -1;
+				     int bin0 = (int) Math.ceil(time0degbfield/2.) -1;
+				     int bin = (int) Math.ceil(timebfield/2.) -1;
 				    
 				     if(bin<0)
 				    	 bin=0;
@@ -106,9 +122,101 @@ public class TableLoader {
 				}
 			
 			}
-					
+			setLastFilledBins();
+			
+			if(Constants.T2DCACHEFILE != null)
+				write(Constants.T2DCACHEFILE);
+			
 			T2DLOADED = true;
 	 }
+	 
+	 private static void setLastFilledBins() {
+		 for(int ibfield =0; ibfield<6; ibfield++) {
+			 for(int ialpha =0; ialpha<2; ialpha++) {
+				 int last = 0;
+				 for(int bin = 0; bin<DISTFROMTIME[ibfield][ialpha].length; bin++) {
+					 if(DISTFROMTIME[ibfield][ialpha][bin]!=0)
+						 last = bin;
+				 }
+				 LASTFILLEDBIN[ibfield][ialpha] = last;
+			 }
+		 }
+	 }
+	 
+	 /**
+	  * Writes the tables to a binary file
+	  * @param fileName the file name
+	  */
+	 public static void write(String fileName) {
+		 try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			 writeSnapshot(out);
+			 System.out.println("DC time-to-distance tables written to "+fileName);
+		 } catch (IOException e) {
+			 System.err.println("DC time-to-distance tables could not be written to "+fileName+": "+e.getMessage());
+		 }
+	 }
+	 
+	 /**
+	  * Reads the tables from a binary file written by write(fileName); the file is memory mapped
+	  * @param fileName the file name
+	  * @return true if the tables were read
+	  */
+	 public static boolean read(String fileName) {
+		 if(!new File(fileName).exists())
+			 return false;
+		 try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+			 ByteBuffer in = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			 if(readSnapshot(in)==false) {
+				 System.err.println("DC time-to-distance table file "+fileName+" has the wrong format -- refilling");
+				 return false;
+			 }
+			 return true;
+		 } catch (IOException | BufferUnderflowException e) {
+			 System.err.println("DC time-to-distance table file "+fileName+" could not be read: "+e);
+			 return false;
+		 }
+	 }
+	 
+	 /**
+	  * Writes the tables to a binary stream
+	  * @param out the output stream
+	  * @throws IOException if the tables cannot be written
+	  */
+	 public static void writeSnapshot(DataOutputStream out) throws IOException {
+		 out.writeInt(T2DFILEVERSION);
+		 out.writeInt(DISTFROMTIME.length);
+		 out.writeInt(DISTFROMTIME[0].length);
+		 out.writeInt(DISTFROMTIME[0][0].length);
+		 for(int ibfield =0; ibfield<DISTFROMTIME.length; ibfield++) 
+			 for(int ialpha =0; ialpha<DISTFROMTIME[0].length; ialpha++) 
+				 DCSnapshot.putDoubles(out, DISTFROMTIME[ibfield][ialpha]);
+		 out.writeInt(maxBinIdxT0);
+		 out.writeInt(maxBinIdxT);
+	 }
+	 
+	 /**
+	  * Reads the tables from a buffer written by writeSnapshot(out)
+	  * @param in the buffer
+	  * @return true if the tables were read, false if the buffer has the wrong format
+	  */
+	 public static boolean readSnapshot(ByteBuffer in) {
+		 if(in.getInt()!=T2DFILEVERSION || in.getInt()!=DISTFROMTIME.length 
+				 || in.getInt()!=DISTFROMTIME[0].length || in.getInt()!=DISTFROMTIME[0][0].length) 
+			 return false;
+		 double[][][] table = new double[DISTFROMTIME.length][DISTFROMTIME[0].length][];
+		 for(int ibfield =0; ibfield<table.length; ibfield++) 
+			 for(int ialpha =0; ialpha<table[0].length; ialpha++) 
+				 table[ibfield][ialpha] = DCSnapshot.getDoubles(in, DISTFROMTIME[0][0].length);
+		 int maxT0 = in.getInt();
+		 int maxT = in.getInt();
+		 
+		 DISTFROMTIME = table;
+		 maxBinIdxT0 = maxT0;
+		 maxBinIdxT = maxT;
+		 setLastFilledBins();
+		 T2DLOADED = true;
+		 return true;
+	 }
 	 private static double[] calcnm(int deltanm, double minVelDriftDist) {
 		
 		   double[] nm = new double[2];
@@ -0,0 +1,77 @@
+package org.jlab.rec.dc.timetodistance;
+
+/**
+ * A class to obtain the distance from the time by interpolating the tables filled by the TableLoader.
+ * The tables are indexed by B-field (0 to 2.5 T in 0.5 T bins), local angle alpha (0 and 30 degrees) and time (2 ns bins).
+ * The interpolation is linear in each of the three variables; it reads the tables only and does not allocate, so it can be used concurrently
+ * once the tables are filled.
+ * @author ziegler
+ *
+ */
+public class TimeToDistanceEstimator {
+
+	private TimeToDistanceEstimator() {
+	}
+
+	private static final double BFIELDBINWIDTH = 0.5; // in Tesla
+	private static final double ALPHABINWIDTH = Math.toRadians(30.); // in radians
+	private static final double TIMEBINWIDTH = 2.; // in ns
+
+	/**
+	 *
+	 * @param B the magnitude of the B-field in Tesla
+	 * @param alpha the local angle of the track in the cell in radians
+	 * @param t the time in ns
+	 * @return the distance in cm interpolated on the grid of the time-to-distance tables
+	 */
+	public static double interpolate(double B, double alpha, double t) {
+
+		if(TableLoader.T2DLOADED == false || t <= 0)
+			return 0;
+
+		// B-field bin
+		double fB = Math.abs(B)/BFIELDBINWIDTH;
+		if(fB > TableLoader.maxBinIdxB)
+			fB = TableLoader.maxBinIdxB;
+		int iB = (int) fB;
+		if(iB == TableLoader.maxBinIdxB)
+			iB = TableLoader.maxBinIdxB - 1;
+		double wB = fB - iB;
+
+		// the cell has a hexagonal symmetry: fold the angle into [0, 30] degrees
+		double a = Math.abs(alpha) % (2*ALPHABINWIDTH);
+		if(a > ALPHABINWIDTH)
+			a = 2*ALPHABINWIDTH - a;
+		double wA = a/ALPHABINWIDTH;
+
+		double d00 = interpolateInTime(iB, 0, t);
+		double d01 = interpolateInTime(iB, 1, t);
+		double d10 = interpolateInTime(iB+1, 0, t);
+		double d11 = interpolateInTime(iB+1, 1, t);
+
+		double d0 = d00 + wA*(d01 - d00);
+		double d1 = d10 + wA*(d11 - d10);
+
+		return d0 + wB*(d1 - d0);
+	}
+
+	/**
+	 * Linear interpolation between the centers of the time bins; beyond the last filled bin the maximum distance is returned.
+	 */
+	private static double interpolateInTime(int iB, int iA, double t) {
+
+		double[] table = TableLoader.DISTFROMTIME[iB][iA];
+		int maxBin = TableLoader.LASTFILLEDBIN[iB][iA];
+
+		// bin i covers ]2i, 2i+2] ns; its center is at 2i+1 ns
+		double f = t/TIMEBINWIDTH - 0.5;
+		if(f <= 0)
+			return table[0]*t/(0.5*TIMEBINWIDTH);
+		int i = (int) f;
+		if(i >= maxBin)
+			return table[maxBin];
+		double w = f - i;
+
+		return table[i] + w*(table[i+1] - table[i]);
+	}
+}
@@ -35,20 +35,23 @@ public class KalFit {
 	/**
 	 *  Field instantiated using the torus and the solenoid
 	*/
-	public DCSwimmer dcSwim = new DCSwimmer(Initialization.rcompositeField, Initialization.compositeField);
+	public DCSwimmer dcSwim;
+	/**
+	 * The Kalman filter engine holding the state vector and its covariance matrix
+	 */
+	private KalFitEngine kfEngine;
 	/**
 	 * The state vector is a 5-vector (x,y,px/pz,py/pz, q/p) evalutated at a constant z in the tilted sector coordinate system.	
+	 * This is the state vector array of the Kalman filter engine.
 	 */
 	public double[] stateVec; 
 	
-	private double[][] stateJac; // the state vector Jacobian
-	
-	public Matrix covMat; // the track covariance matrix
-	
-	private Matrix noiseMat; // the noise matrix
+	public Matrix covMat; // the track covariance matrix, set at the end of the fit
 	
 	private double resVal; // the track residuals at the measurement sites
 	
+	private final double[] B = new double[3]; // the field at the current step
+	
 	
 	private double[][] measVecs; // the array of measurements (1-D for fits to the wires, 4-D for fits to the crosses)
 	private double[][] measVecErrs; // the errors on the measuremnts
@@ -67,6 +70,21 @@ public class KalFit {
 	 * @param fitsTo the fit method = fits to the wires is the default and only working method at the moment
 	 */
 	public KalFit(Track trkcand, String fitsTo) {
+		this(trkcand, fitsTo, new DCSwimmer(Initialization.rcompositeField, Initialization.compositeField), new KalFitEngine());
+	}
+	
+	/**
+	 * The constructor using a given swimmer and Kalman filter engine, which can be reused from one fit to the next
+	 * @param trkcand the track candidate
+	 * @param fitsTo the fit method = fits to the wires is the default and only working method at the moment
+	 * @param swimmer the swimmer
+	 * @param engine the Kalman filter engine
+	 */
+	public KalFit(Track trkcand, String fitsTo, DCSwimmer swimmer, KalFitEngine engine) {
+		
+		dcSwim = swimmer;
+		kfEngine = engine;
+		stateVec = kfEngine.stateVec;
 		
 		if(trkcand==null)
 			return;
@@ -132,8 +150,10 @@ public class KalFit {
 		
 		int iterNb = 0;
 		int nSteps = 100;			// some default
-		if(measVecs[0].length<36-2*6) //we allow for 2 missing layers in each superlayer
+		if(measVecs[0].length<36-2*6) { //we allow for 2 missing layers in each superlayer
+			covMat = this.getcovMat();
 			return;
+		}
 		while(iterNb < nbOfIterations) {
 			
 			//going forward
@@ -150,18 +170,60 @@ public class KalFit {
 		
 		//transPortToPlane((int) (measVecs[0][0]/stepSize),  measVecs[0][0], 0);
 		// transport the parameters to Region 3 middle plane
-		double zR3MP = GeometryLoader.dcDetector.getSector(0).getRegionMiddlePlane(2).point().z();
+		double zR3MP = GeometryLoader.getRegionMiddlePlaneZ(3);
 		
 		//transPortToPlane((int) (Math.abs(measVecs[0][0]-zR3MP)/stepSize),  measVecs[0][0], zR3MP);
 		transPortToPlane((int) (Math.abs(measVecs[0][measVecs[0].length-1]-zR3MP)/stepSize),  measVecs[0][measVecs[0].length-1], zR3MP);
 		//System.out.println(" KF trans R3 ");this.printInfo(stateVec);
 		KF_p = 1./Math.abs(stateVec[4]);
+		covMat = this.getcovMat();
 		
 		if(KF_p < Constants.MINTRKMOM) 
 			return;
 		KF_q = (int) Math.signum(stateVec[4]);
 		
 	}
+	
+	/**
+	 * Re-initializes the fit for a new iteration, warm-started from the result of the previous one: the fitted state at the Region 3 
+	 * middle plane is swum back to the first measurement site and the covariance matrix is reset from the track candidate cross errors.
+	 * The measurement vectors are kept.
+	 * @param trkcand the track candidate
+	 * @return false if the previous state cannot be swum back to the first measurement site
+	 */
+	public boolean warmStart(Track trkcand) {
+		
+		if(stateVec[4]==0 || Double.isNaN(stateVec[4]))
+			return false;
+		
+		double zR3MP = GeometryLoader.getRegionMiddlePlaneZ(3);
+		double p = 1./Math.abs(stateVec[4]);
+		int q = (int) Math.signum(stateVec[4]);
+		double pz = p / Math.sqrt(stateVec[2]*stateVec[2] + stateVec[3]*stateVec[3] + 1);
+		
+		// swim back towards the target
+		dcSwim.SetSwimParameters(stateVec[0],stateVec[1],zR3MP,
+				-pz*stateVec[2],-pz*stateVec[3],-pz,
+				 -q);
+		double[] VecAtFirstMeasSite = dcSwim.SwimToPlane(measVecs[0][0]);
+		if(VecAtFirstMeasSite==null || VecAtFirstMeasSite[5]==0)
+			return false;
+		
+		setStateVecFromTrackCand(q, p, 
+				VecAtFirstMeasSite[0],VecAtFirstMeasSite[1],
+				VecAtFirstMeasSite[3]/VecAtFirstMeasSite[5],VecAtFirstMeasSite[4]/VecAtFirstMeasSite[5]);
+		setcovMat(trkcand.get(0).get_PointErr().x(), trkcand.get(0).get_PointErr().y(), trkcand.get(0).get_DirErr().x(), trkcand.get(0).get_DirErr().y(), trkcand.get(0).get_DirErr().z(), p);
+		
+		chi2 = 0;
+		thehitChisq = Double.POSITIVE_INFINITY;
+		nbOfTransportSteps = 0;
+		adaptiveStepSize = Double.NaN;
+		KF_p = Double.NaN;
+		KF_q = q;
+		
+		return true;
+	}
+	
 	double thehitChisq = Double.POSITIVE_INFINITY;
 	/**
 	 * Fitlters the state and associated covariance matrix at measurement site i
@@ -170,7 +232,6 @@ public class KalFit {
 	public void filter(int i) {
 		if(measVecs[0].length>23) { // require at least four hits in a given superlayer
 			
-			double[] K = new double[5];
 			//double V = Constants.CELLRESOL; // 
 			
 			int i1 = i+1;
@@ -179,60 +240,19 @@ public class KalFit {
 				i1 = measVecs[0].length-2;
 			
 			double V = measVecErrs[0][i1] ;
-			double[] h =  h(stateVec, (int) measVecs[2][i1]);
+			double h0 = 1;
+			double h1 = h1((int) measVecs[2][i1]);
 			
-			double[][] HTGH =  new double[][] {
-					{h[0]*h[0]/V,h[0]*h[1]/V,0,0,0},
-					{h[1]*h[0]/V,h[1]*h[1]/V,0,0,0},
-					{0,0,0,0,0},
-					{0,0,0,0,0},
-					{0,0,0,0,0}
-			}; 
-			
-			Matrix Ci = null;
-			
-			if(this.isNonsingular(covMat)==false) {
+			// the gain matrix and the filtered covariance matrix
+			if(kfEngine.updateCov(h0, h1, V, this.GainScaleFac)==false) {
 				//System.out.println("Covariance Matrix is non-invertible - quit filter!");
 				return;
 			}
-			try {
-				Ci = covMat.inverse();
-			} catch (Exception e) {
-				
-				return;
-				
-			}
-			
-			Matrix Ca = null;
-			try {
-				Ca = Ci.plus(new Matrix(HTGH));
-			} catch (Exception e) {
-				return;
-			}
-			if(Ca!=null)
-				if(this.isNonsingular(Ca)==false) {
-					//System.out.println("Covariance Matrix is non-invertible - quit filter!");
-					return;
-				}
-			if(Ca!=null) {
-				if(Ca.inverse()!=null) {
-				Matrix CaInv = Ca.inverse();
-				covMat = CaInv;
-				//System.err.println("Error: e");
-				} else {
-				return;
-				}
-			} else {
-				return;
-			}
 			
-			for(int j = 0; j < 5; j++) {
-				// the gain matrix
-				K[j] = this.GainScaleFac*(h[0]*covMat.get(j, 0) + h[1]*covMat.get(j, 1))/V;				
-			}
 			resVal = measVecs[1][i1] - get_Proj(stateVec, (int) measVecs[2][i1]);
 			
-			double c2 = ((1 - (h[0]*K[0] + h[1]*K[1]))*(1 - (h[0]*K[0] + h[1]*K[1]))*resVal*resVal/V);
+			double hK = h0*kfEngine.getGain(0) + h1*kfEngine.getGain(1);
+			double c2 = ((1 - hK)*(1 - hK)*resVal*resVal/V);
 			if(c2<thehitChisq) {
 				thehitChisq = c2;
 				KF_p = 1./Math.abs(stateVec[4]); // temp patch ---> fix this.
@@ -240,11 +260,8 @@ public class KalFit {
 			chi2 += c2;
 			
 			if(chi2<10) {
-				for(int j = 0; j < 5; j++) {
-					// the filtered state
-					stateVec[j]+=K[j]*resVal;
-					
-				}
+				// the filtered state
+				kfEngine.updateState(resVal);
 			}
 		}
 	}
@@ -258,19 +275,14 @@ public class KalFit {
 			System.out.println(C.get(k, 0)+"	"+C.get(k, 1)+"	"+C.get(k, 2)+"	"+C.get(k, 3)+"	"+C.get(k, 4));
 		}
 	}
+	private static final double TAN6 = Math.tan(Math.toRadians(6.));
 	/**
-	 * The state projector - it projects the state onto the measurement
-	 * @param stateV the state vector
-	 * @param s the superlayer of the measurement (0..1) 
-	 * @return a double array correspoding to the 2 entries of the projector matrix
+	 * The state projector - it projects the state onto the measurement.  The x entry of the projector is 1.
+	 * @param s the wire tilt of the measurement (-1, 0, 1) 
+	 * @return the y entry of the projector matrix
 	 */
-	private double[] h(double[] stateV, int s) {
-		double[] hMatrix = new double[2];
-		
-		hMatrix[0] = 1;
-		hMatrix[1] = - Math.tan((Math.toRadians(s*6.)));
-		
-		return hMatrix;
+	private double h1(int s) {
+		return - s*TAN6;
 	}
 	
 	/**
@@ -281,7 +293,7 @@ public class KalFit {
 	 */
 	private double get_Proj(double[] stateV, int s) {
 		
-		double val = stateV[0] - Math.tan((Math.toRadians(s*6.)))*stateV[1];
+		double val = stateV[0] - s*TAN6*stateV[1];
 		return val;
 	}
 
@@ -293,6 +305,11 @@ public class KalFit {
 	 */
 	public void transPortToPlane(int nsteps, double z0, double z) {
 		
+		if(Constants.useAdaptiveKFStepping) {
+			transPortToPlaneAdaptive(z0, z);
+			return;
+		}
+		
 		double s = (z - z0)/(double) nsteps;
 		
 		swimDir = (int) Math.signum(s);
@@ -301,56 +318,93 @@ public class KalFit {
 		
 		for(int i = 0; i< nsteps; i++) {
 
-			transStateVec(stateVec[0],stateVec[1],stateVec[2],stateVec[3], stateVec[4], Z_i, s); 
+			dcSwim.Bfield(stateVec[0],stateVec[1],Z_i, B);
+			kfEngine.transportState(s, B[0], B[1], B[2]); 
 			Q(stateVec[0],stateVec[1],stateVec[2],stateVec[3], stateVec[4], Z_i, s); 
 			Z_i +=s;		
 			
-			propagateCovMat();
+			kfEngine.propagateCov();
 			if(swimDir>0)
-				covMat.plusEquals(noiseMat);
+				kfEngine.addNoise();
 		}
+		nbOfTransportSteps+=nsteps;
 	}
 	
+	/**
+	 * the number of transport steps taken in the fit
+	 */
+	public int nbOfTransportSteps = 0;
+	
+	private final double[] B1 = new double[3]; // the field at the end of a trial step
+	private final double[] XY1 = new double[2]; // the position at the end of a trial step
+	private double adaptiveStepSize = Double.NaN; // the current adaptive step size, carried from one site to the next
 	
 	/**
-	 * Propagates the covariance matrix
+	 * Transport the state and associated Jacobian to the measurement site plane using steps adapted to the field variation.
+	 * For a trial step h the field is evaluated at both ends of the step, and the position error made by neglecting the field 
+	 * variation along the step, 0.5*|q/p|*C*(1+tx^2+ty^2)*|B1-B0|*h^2, is compared to the tolerance Constants.KFSTEPTOLERANCE.
+	 * Accepted steps are done using the average field; large steps are taken in low-field and uniform-field regions.
+	 * The multiple scattering noise is scaled by the step length in units of the nominal step size.
+	 * @param z0 the starting z 
+	 * @param z the ending z
 	 */
-	private void propagateCovMat() {
-		if(this.getStateJac() == null || covMat == null)
+	public void transPortToPlaneAdaptive(double z0, double z) {
+		
+		double dz = z - z0;
+		if(dz==0)
 			return;
 		
-		double[][] u = new double[5][5];
-		double[][] c = new double[covMat.getRowDimension()][covMat.getColumnDimension()];		
-		double[][] C = new double[covMat.getRowDimension()][covMat.getColumnDimension()];
+		swimDir = (int) Math.signum(dz);
 		
-		for(int rw = 0; rw< covMat.getRowDimension(); rw++) {
-			for(int cl = 0; cl< covMat.getColumnDimension(); cl++) {
-				c[rw][cl] = covMat.get(rw, cl);
-			}
-			
-		}
+		if(Double.isNaN(adaptiveStepSize))
+			adaptiveStepSize = stepSize;
 		
-		 //covMat = FCF^T; u = FC;
-		for(int j = 0; j < 5; j++) {
-			u[0][j] = c[0][j] + c[2][j]*stateJac[0][2] + c[3][j]*stateJac[0][3] + c[4][j]*stateJac[0][4];
-			u[1][j] = c[1][j] + c[2][j]*stateJac[1][2] + c[3][j]*stateJac[1][3] + c[4][j]*stateJac[1][4];
-			u[2][j] = c[2][j] + c[3][j]*stateJac[2][3] + c[4][j]*stateJac[2][4];
-			u[3][j] = c[2][j]*stateJac[3][2] + c[3][j] + c[4][j]*stateJac[3][4];
-			u[4][j] = c[4][j];		
-		}
+		double Z_i = z0;
+		dcSwim.Bfield(stateVec[0],stateVec[1],Z_i, B);
 		
-		for(int i = 0; i < 5; i++) {
-			C[i][0] = u[i][0] + u[i][2]*stateJac[0][2] + u[i][3]*stateJac[0][3] + u[i][4]*stateJac[0][4];
-			C[i][1] = u[i][1] + u[i][2]*stateJac[1][2] + u[i][3]*stateJac[1][3] + u[i][4]*stateJac[1][4];
-			C[i][2] = u[i][2] + u[i][3]*stateJac[2][3] + u[i][4]*stateJac[2][4];
-			C[i][3] = u[i][2]*stateJac[3][2] + u[i][3] + u[i][4]*stateJac[3][4];
-			C[i][4] = u[i][4];
+		while(swimDir*(z-Z_i)>0) {
+			double remaining = Math.abs(z-Z_i);
+			double h = Math.min(adaptiveStepSize, remaining);
+			
+			double tt = 1 + stateVec[2]*stateVec[2] + stateVec[3]*stateVec[3];
+			double err = Double.POSITIVE_INFINITY;
+			
+			while(true) {
+				double s = swimDir*h;
+				kfEngine.predictPosition(s, B[0], B[1], B[2], XY1);
+				dcSwim.Bfield(XY1[0],XY1[1],Z_i+s, B1);
+				
+				double dBx = B1[0]-B[0];
+				double dBy = B1[1]-B[1];
+				double dBz = B1[2]-B[2];
+				err = 0.5*Math.abs(stateVec[4])*C*tt*Math.sqrt(dBx*dBx+dBy*dBy+dBz*dBz)*h*h;
+				
+				if(err<=Constants.KFSTEPTOLERANCE || h<=Constants.KFMINSTEPSIZE)
+					break;
+				// shrink the step
+				h = Math.max(Constants.KFMINSTEPSIZE, h*Math.max(0.2, 0.9*Math.sqrt(Constants.KFSTEPTOLERANCE/err)));
+			}
+			
+			double s = swimDir*h;
+			kfEngine.transportState(s, 0.5*(B[0]+B1[0]), 0.5*(B[1]+B1[1]), 0.5*(B[2]+B1[2])); 
+			Q(stateVec[0],stateVec[1],stateVec[2],stateVec[3], stateVec[4], Z_i, s); 
+			Z_i = (h==remaining) ? z : Z_i+s;
+			
+			kfEngine.propagateCov();
+			if(swimDir>0)
+				kfEngine.addNoise(h/stepSize);
+			
+			B[0] = B1[0];
+			B[1] = B1[1];
+			B[2] = B1[2];
+			nbOfTransportSteps++;
+			
+			// grow the step for the next one
+			double grow = (err>0) ? 0.9*Math.sqrt(Constants.KFSTEPTOLERANCE/err) : 5.;
+			adaptiveStepSize = Math.min(Constants.KFMAXSTEPSIZE, Math.max(Constants.KFMINSTEPSIZE, h*Math.min(5., grow)));
 		}
-		
-		Matrix Cpropagated = new Matrix(C);	
-		covMat = Cpropagated;	
-	
 	}
+	
 	/**
 	 * prints the stateVector at a given z - used for debugging
 	 * @param stateVec2 the state vector
@@ -370,103 +424,17 @@ public class KalFit {
 	 * @param ty uy/uz (ux,uy,uz) is the unit cross direction vector obtained from pattern recognition 
 	 */
 	private void setStateVecFromTrackCand(int q, double p, double x, double y, double tx, double ty) {
-		stateVec = new double[] {x, y, tx, ty, (double)q/p };
+		kfEngine.setState(x, y, tx, ty, (double)q/p);
 	}
 
 	/**
-	 * transports the state vector and associated 
-	 * @param x0
-	 * @param y0
-	 * @param tx0
-	 * @param ty0
-	 * @param Q
-	 * @param z0
-	 * @param s
+	 * 
+	 * @return a copy of the current covariance matrix of the fit
 	 */
-	private void transStateVec(double x0, double y0, double tx0, double ty0, double Q, double z0, double s) {		
-		
-		double[] B = getFieldAt(x0,y0,z0); 
-		double[] A = A(tx0,ty0,B[0],B[1],B[2]);
-		
-		double x = x0 + tx0*s + 0.5*Q*C*A[0]*s*s;
-		double y = y0 + ty0*s + 0.5*Q*C*A[1]*s*s;
-		double tx = tx0 + Q*C*A[0]*s;
-		double ty = ty0 + Q*C*A[1]*s;
-		
-		double[] transpStateVec = new double[] {x,y,tx,ty,Q};	
-		
-		double[] dA = delA_delt(tx0,ty0,B[0],B[1],B[2]);
-		
-		double delx_deltx0 = s;
-		double dely_deltx0 = 0.5*Q*C*s*s*dA[2];
-		double deltx_delty0 = Q*C*s*dA[1];
-		double delx_delQ = 0.5*C*s*s*A[0];
-		double deltx_delQ = C*s*A[0];
-		double delx_delty0 = 0.5*Q*C*s*s*dA[1];
-		double dely_delty0 = s;
-		double delty_deltx0 = Q*C*s*dA[2];
-		double dely_delQ = 0.5*C*s*s*A[1];
-		double delty_delQ = C*s*A[1];				
-		
-		double[][] transpStateJacobian =  new double[][] {
-				{1,0,delx_deltx0,delx_delty0,delx_delQ},
-				{0,1,dely_deltx0,dely_delty0,dely_delQ},
-				{0,0,1,deltx_delty0,deltx_delQ},
-				{0,0,delty_deltx0,1,delty_delQ},
-				{0,0,0,0,1}
-		}; 
-		
-		stateVec = transpStateVec;
-		
-		setStateJac(transpStateJacobian);
-	}
-	
-	
-	
-	
-	
-	//delAx_deltx = delA_delt[0]; delAx_delty = delA_delt[1]; delAy_deltx = delA_delt[2]; delAy_delty = delA_delt[3];
-	private double[] delA_delt(double tx, double ty, double Bx, double By, double Bz) {
-		
-		double C2 = 1 + tx*tx + ty*ty;
-		double C = Math.sqrt(C2);
-		double Ax = C*(ty*(tx*Bx + Bz) - (1+tx*tx)*By);
-		double Ay = C*(-tx*(ty*By + Bz) + (1+ty*ty)*Bx);
-		
-		double delAx_deltx = tx*Ax/C2 +C*(ty*Bx - 2*tx*By);
-		double delAx_delty = ty*Ax/C2 +C*(tx*Bx + Bz);
-		double delAy_deltx = tx*Ay/C2 +C*(-ty*By - Bz);
-		double delAy_delty = ty*Ay/C2 +C*(-tx*By + 2*ty*Bx);
-		
-		return new double[] {delAx_deltx,delAx_delty,delAy_deltx,delAy_delty};
-	}
-	
-	// Ax = A[0]; Ay = A[1]
-	private double[] A(double tx, double ty, double Bx, double By, double Bz) {
-		
-		double C = Math.sqrt(1 + tx*tx + ty*ty);
-		double Ax = C*(ty*(tx*Bx + Bz) - (1+tx*tx)*By);
-		double Ay = C*(-tx*(ty*By + Bz) + (1+ty*ty)*Bx);
-		return new double[] {Ax, Ay};
-	}
-	
-	private double[] getFieldAt(double x, double y, double z) {
-		Point3D bf = dcSwim.Bfield(x,y,z);
-	
-		return new double[] {bf.x(), bf.y(),bf.z()};
-	}
-
-	public double[][] getStateJac() {
-		return stateJac;
-	}
-
-	public void setStateJac(double[][] stateJac) {
-		this.stateJac = stateJac;
-	}
-	
-	
 	public Matrix getcovMat() {
-		return covMat;
+		Matrix C = new Matrix(5,5);
+		kfEngine.copyCovTo(C.getArray());
+		return C;
 	}
 
 	public void setcovMat(double ex, double ey, double ez, double etx, double ety, double p) { // use the uncertainty in the cross in region 1 to determine the init covMat
@@ -474,13 +442,7 @@ public class KalFit {
 		//double p2 = (px*px+py*py+pz*pz);
 		// the error matrix is estimated from the uncertainty in the cross in region 1
 		double p2 = p*p;
-		covMat = new Matrix( new double[][]{
-				{ex*ex,  			0, 									0,         						  	0,         							 	0},
-				{0, 				ey*ey, 								0,         							0,         								0},
-				{0, 				0, 		  							etx*etx,							0,										0},
-				{0, 				0, 									0, 									ety*ety, 							    0},
-				{0, 				0, 									0,         							0,							           0.25*p2}
-		});
+		kfEngine.setDiagonalCov(ex*ex, ey*ey, etx*etx, ety*ety, 0.25*p2);
 			/*
 			 * covMat = new Matrix( new double[][]{
 					{0.0025,  			0, 									0,         						  	0,         						 	0},
@@ -724,14 +686,7 @@ public class KalFit {
 	    double cov_tyty = (1+ty0*ty0)*(1 + tx0*tx0 + ty0*ty0)*sctRMS*sctRMS;
 	    double cov_txty = tx0*ty0*(1 + tx0*tx0 + ty0*ty0)*sctRMS*sctRMS;
 	   
-	    Matrix Q = new Matrix( new double[][]{
-				{0,     			0, 									0,   	  	0,        0},
-				{0, 				0,  						    	0,        0,        0},
-				{0, 				0, 		  							cov_txtx,							cov_txty,							0},
-				{0, 				0, 									cov_txty, 							cov_tyty, 							0},
-				{0, 				0, 									0,         							0,							        0}
-		});
-	    noiseMat = Q;
+	    kfEngine.setNoise(cov_txtx, cov_txty, cov_tyty);
 	}
     
 	 
@@ -774,15 +729,6 @@ public class KalFit {
 		return (1/z)*Math.sqrt(term1*term1 + term2*term2);
 	}
 	
-	private boolean isNonsingular(Matrix mat) {
-		
-	      for (int j = 0; j < mat.getColumnDimension(); j++) {
-	         if (mat.get(j, j) == 0)
-	            return false;
-	      }
-	      return true;
-	   }
-	
 	
 	 static double piMass = 0.13957018;
 	 static double KMass  = 0.493677;
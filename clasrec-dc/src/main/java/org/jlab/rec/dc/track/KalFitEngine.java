@@ -0,0 +1,301 @@
+package org.jlab.rec.dc.track;
+
+/**
+ * A fixed-size Kalman filter engine for the DC track fit.  The state vector is the 5-vector (x,y,tx,ty,q/p)
+ * evaluated at a constant z in the tilted sector coordinate system, and the symmetric 5x5 covariance matrix
+ * is stored as its packed upper triangle in a flat array of 15 doubles.
+ * All operations (transport, covariance propagation, process noise, filtering) are done in place, so that
+ * one engine instance can be reused for all the steps of a fit, and for all the fits of a track finder.
+ * An engine instance is not thread-safe.
+ * @author ziegler
+ *
+ */
+public class KalFitEngine {
+
+	/**
+	 * the state vector (x,y,tx,ty,q/p)
+	 */
+	public final double[] stateVec = new double[5];
+	/**
+	 * the packed upper triangle of the covariance matrix; element (i,j), i<=j, is stored at index IDX[i][j]
+	 */
+	public final double[] cov = new double[15];
+
+	/**
+	 * index of the element (i,j) of a symmetric 5x5 matrix in the packed array
+	 */
+	static final int[][] IDX = new int[][] {
+			{ 0, 1, 2, 3, 4},
+			{ 1, 5, 6, 7, 8},
+			{ 2, 6, 9,10,11},
+			{ 3, 7,10,12,13},
+			{ 4, 8,11,13,14}
+	};
+
+	// the non-trivial elements of the transport Jacobian; the diagonal is 1 and the other elements are 0
+	private double j02, j03, j04;
+	private double j12, j13, j14;
+	private double j23, j24;
+	private double j32, j34;
+
+	// the non-zero elements of the process noise matrix
+	private double q22, q23, q33;
+
+	// the Kalman gain of the last filtered measurement
+	private final double[] gain = new double[5];
+
+	// scratch arrays used in the covariance propagation
+	private final double[] c = new double[25];
+	private final double[] u = new double[25];
+
+	/**
+	 * Sets the state vector
+	 * @param x x
+	 * @param y y
+	 * @param tx tan(theta_x)
+	 * @param ty tan(theta_y)
+	 * @param Q_ov_P the charge over the momentum
+	 */
+	public void setState(double x, double y, double tx, double ty, double Q_ov_P) {
+		stateVec[0] = x;
+		stateVec[1] = y;
+		stateVec[2] = tx;
+		stateVec[3] = ty;
+		stateVec[4] = Q_ov_P;
+	}
+
+	/**
+	 * Sets a diagonal covariance matrix
+	 * @param c00 variance in x
+	 * @param c11 variance in y
+	 * @param c22 variance in tx
+	 * @param c33 variance in ty
+	 * @param c44 variance in q/p
+	 */
+	public void setDiagonalCov(double c00, double c11, double c22, double c33, double c44) {
+		for(int k = 0; k < 15; k++)
+			cov[k] = 0;
+		cov[IDX[0][0]] = c00;
+		cov[IDX[1][1]] = c11;
+		cov[IDX[2][2]] = c22;
+		cov[IDX[3][3]] = c33;
+		cov[IDX[4][4]] = c44;
+	}
+
+	/**
+	 *
+	 * @param i row index
+	 * @param j column index
+	 * @return the element (i,j) of the covariance matrix
+	 */
+	public double getCov(int i, int j) {
+		return cov[IDX[i][j]];
+	}
+
+	/**
+	 * Copies the covariance matrix into a 5x5 array
+	 * @param C the destination array
+	 */
+	public void copyCovTo(double[][] C) {
+		for(int i = 0; i < 5; i++) {
+			for(int j = 0; j < 5; j++) {
+				C[i][j] = cov[IDX[i][j]];
+			}
+		}
+	}
+
+	/**
+	 * Transports the state vector over a step s in z and computes the associated Jacobian
+	 * @param s the step size
+	 * @param Bx the x component of the field at the starting point
+	 * @param By the y component of the field at the starting point
+	 * @param Bz the z component of the field at the starting point
+	 */
+	public void transportState(double s, double Bx, double By, double Bz) {
+
+		double x0  = stateVec[0];
+		double y0  = stateVec[1];
+		double tx0 = stateVec[2];
+		double ty0 = stateVec[3];
+		double Q   = stateVec[4];
+
+		double C2 = 1 + tx0*tx0 + ty0*ty0;
+		double C  = Math.sqrt(C2);
+		double Ax = C*(ty0*(tx0*Bx + Bz) - (1+tx0*tx0)*By);
+		double Ay = C*(-tx0*(ty0*By + Bz) + (1+ty0*ty0)*Bx);
+
+		double delAx_delty = ty0*Ax/C2 + C*(tx0*Bx + Bz);
+		double delAy_deltx = tx0*Ay/C2 + C*(-ty0*By - Bz);
+
+		double QC = Q*KalFit.C;
+
+		stateVec[0] = x0 + tx0*s + 0.5*QC*Ax*s*s;
+		stateVec[1] = y0 + ty0*s + 0.5*QC*Ay*s*s;
+		stateVec[2] = tx0 + QC*Ax*s;
+		stateVec[3] = ty0 + QC*Ay*s;
+
+		j02 = s;
+		j03 = 0.5*QC*s*s*delAx_delty;
+		j04 = 0.5*KalFit.C*s*s*Ax;
+		j12 = 0.5*QC*s*s*delAy_deltx;
+		j13 = s;
+		j14 = 0.5*KalFit.C*s*s*Ay;
+		j23 = QC*s*delAx_delty;
+		j24 = KalFit.C*s*Ax;
+		j32 = QC*s*delAy_deltx;
+		j34 = KalFit.C*s*Ay;
+	}
+
+	/**
+	 * Predicts the position at the end of a step in z without modifying the state vector
+	 * @param s the step size
+	 * @param Bx the x component of the field at the starting point
+	 * @param By the y component of the field at the starting point
+	 * @param Bz the z component of the field at the starting point
+	 * @param xy the array filled with the predicted (x,y)
+	 */
+	public void predictPosition(double s, double Bx, double By, double Bz, double[] xy) {
+
+		double tx0 = stateVec[2];
+		double ty0 = stateVec[3];
+
+		double C  = Math.sqrt(1 + tx0*tx0 + ty0*ty0);
+		double Ax = C*(ty0*(tx0*Bx + Bz) - (1+tx0*tx0)*By);
+		double Ay = C*(-tx0*(ty0*By + Bz) + (1+ty0*ty0)*Bx);
+
+		double QC = stateVec[4]*KalFit.C;
+
+		xy[0] = stateVec[0] + tx0*s + 0.5*QC*Ax*s*s;
+		xy[1] = stateVec[1] + ty0*s + 0.5*QC*Ay*s*s;
+	}
+
+	/**
+	 * Propagates the covariance matrix C --> FCF^T using the Jacobian F of the last transport step
+	 */
+	public void propagateCov() {
+
+		for(int i = 0; i < 5; i++) {
+			for(int j = 0; j < 5; j++) {
+				c[5*i+j] = cov[IDX[i][j]];
+			}
+		}
+		// u = FC
+		for(int j = 0; j < 5; j++) {
+			u[j]    = c[j]    + c[10+j]*j02 + c[15+j]*j03 + c[20+j]*j04;
+			u[5+j]  = c[5+j]  + c[10+j]*j12 + c[15+j]*j13 + c[20+j]*j14;
+			u[10+j] = c[10+j] + c[15+j]*j23 + c[20+j]*j24;
+			u[15+j] = c[10+j]*j32 + c[15+j] + c[20+j]*j34;
+			u[20+j] = c[20+j];
+		}
+		// C = uF^T, upper triangle only
+		for(int i = 0; i < 5; i++) {
+			int r = 5*i;
+			if(i<=0)
+				cov[IDX[i][0]] = u[r] + u[r+2]*j02 + u[r+3]*j03 + u[r+4]*j04;
+			if(i<=1)
+				cov[IDX[i][1]] = u[r+1] + u[r+2]*j12 + u[r+3]*j13 + u[r+4]*j14;
+			if(i<=2)
+				cov[IDX[i][2]] = u[r+2] + u[r+3]*j23 + u[r+4]*j24;
+			if(i<=3)
+				cov[IDX[i][3]] = u[r+2]*j32 + u[r+3] + u[r+4]*j34;
+			cov[IDX[i][4]] = u[r+4];
+		}
+	}
+
+	/**
+	 * Sets the non-zero elements of the multiple scattering process noise matrix
+	 * @param cov_txtx the variance in tx
+	 * @param cov_txty the tx-ty covariance
+	 * @param cov_tyty the variance in ty
+	 */
+	public void setNoise(double cov_txtx, double cov_txty, double cov_tyty) {
+		q22 = cov_txtx;
+		q23 = cov_txty;
+		q33 = cov_tyty;
+	}
+
+	/**
+	 * Adds the process noise matrix to the covariance matrix
+	 */
+	public void addNoise() {
+		cov[IDX[2][2]] += q22;
+		cov[IDX[2][3]] += q23;
+		cov[IDX[3][3]] += q33;
+	}
+
+	/**
+	 * Adds the process noise matrix scaled by a weight to the covariance matrix
+	 * @param w the weight, e.g. the step length in units of the step length used to compute the noise
+	 */
+	public void addNoise(double w) {
+		cov[IDX[2][2]] += w*q22;
+		cov[IDX[2][3]] += w*q23;
+		cov[IDX[3][3]] += w*q33;
+	}
+
+	/**
+	 *
+	 * @return false if one of the diagonal elements of the covariance matrix is 0
+	 */
+	public boolean isNonsingular() {
+		for(int i = 0; i < 5; i++) {
+			if(cov[IDX[i][i]] == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Updates the covariance matrix with a 1-D measurement m = h0*x + h1*y of variance V,
+	 * using the closed-form gain K = CH^T/(HCH^T + V)
+	 * @param h0 the x entry of the projector
+	 * @param h1 the y entry of the projector
+	 * @param V the measurement variance
+	 * @param gainScaleFac the scale factor applied to the gain
+	 * @return false if the covariance matrix could not be updated
+	 */
+	public boolean updateCov(double h0, double h1, double V, double gainScaleFac) {
+		if(isNonsingular()==false)
+			return false;
+
+		double S = V;
+		for(int j = 0; j < 5; j++) {
+			// CH^T
+			gain[j] = h0*cov[IDX[j][0]] + h1*cov[IDX[j][1]];
+		}
+		S += h0*gain[0] + h1*gain[1];
+
+		if(!(S > 0))
+			return false;
+
+		// C = C - (CH^T)(HC)/S
+		for(int i = 0; i < 5; i++) {
+			for(int j = i; j < 5; j++) {
+				cov[IDX[i][j]] -= gain[i]*gain[j]/S;
+			}
+		}
+		for(int j = 0; j < 5; j++) {
+			gain[j] *= gainScaleFac/S;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param i the state vector index
+	 * @return the Kalman gain of the last update
+	 */
+	public double getGain(int i) {
+		return gain[i];
+	}
+
+	/**
+	 * Updates the state vector using the gain of the last update
+	 * @param res the residual at the measurement site
+	 */
+	public void updateState(double res) {
+		for(int j = 0; j < 5; j++) {
+			stateVec[j] += gain[j]*res;
+		}
+	}
+}
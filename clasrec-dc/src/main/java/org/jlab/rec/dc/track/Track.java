@@ -146,7 +146,37 @@ public class Track extends Trajectory implements Comparable<Track>{
 	private double _fitChisq;
 	public boolean fit_Successful;
 	
+	private int _nbOfKFSteps;
+	/**
+	 * 
+	 * @return the number of Kalman filter transport steps taken in fitting the track
+	 */
+	public int get_NbOfKFSteps() {
+		return _nbOfKFSteps;
+	}
+	/**
+	 * Sets the number of Kalman filter transport steps taken in fitting the track
+	 * @param _nbOfKFSteps the number of transport steps
+	 */
+	public void set_NbOfKFSteps(int _nbOfKFSteps) {
+		this._nbOfKFSteps = _nbOfKFSteps;
+	}
 	
+	private int _nbOfKFIterations;
+	/**
+	 * 
+	 * @return the number of Kalman filter iterations run in fitting the track
+	 */
+	public int get_NbOfKFIterations() {
+		return _nbOfKFIterations;
+	}
+	/**
+	 * Sets the number of Kalman filter iterations run in fitting the track
+	 * @param _nbOfKFIterations the number of iterations
+	 */
+	public void set_NbOfKFIterations(int _nbOfKFIterations) {
+		this._nbOfKFIterations = _nbOfKFIterations;
+	}
 	
 	public void set_FitChi2(double fitChisq) {
 		_fitChisq = fitChisq;		
@@ -2,12 +2,14 @@ package org.jlab.rec.dc.track;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import org.jlab.geom.prim.Point3D;
 import org.jlab.rec.dc.Constants;
 import org.jlab.rec.dc.cross.Cross;
 import org.jlab.rec.dc.cross.CrossList;
+import org.jlab.rec.dc.monitoring.StageMonitor;
 import org.jlab.rec.dc.services.Initialization;
 import org.jlab.rec.dc.trajectory.DCSwimmer;
 import org.jlab.rec.dc.trajectory.StateVec;
@@ -31,6 +33,26 @@ public class TrackCandListFinder {
 		trking = stat;
 	}
 	public DCSwimmer dcSwim = new DCSwimmer(Initialization.rcompositeField, Initialization.compositeField);
+	/**
+	 * the Kalman filter engine, reused for all the fits of the track candidates
+	 */
+	KalFitEngine kfEngine = new KalFitEngine();
+	/**
+	 * the overlap resolver used when Constants.useOverlapResolver is set
+	 */
+	TrackOverlapResolver overlapResolver = new TrackOverlapResolver();
+	
+	/**
+	 * A track candidate fitted from a list of crosses, before the swim to the target
+	 */
+	private static class TrackCandFit {
+		Track cand;
+		Trajectory traj;
+		TrajectoryFinder trjFind;
+		StateVec VecAtReg3MiddlePlane;
+		int printiterationNb;
+	}
+	
 	/**
 	 * 
 	 * @param crossList the input list of crosses
@@ -45,130 +67,257 @@ public class TrackCandListFinder {
 		if(Constants.DEBUGPRINTMODE)
 			System.out.println(" looking for tracks ....");
 		
+		List<TrackCandFit> fits = new ArrayList<TrackCandFit>();
 		for(int i = 0; i<crossList.size(); i++) {
-			Track cand = new Track();
-			List<Cross> crossesInTrk = crossList.get(i);
-			TrajectoryFinder trjFind = new TrajectoryFinder();
+			TrackCandFit fit = this.fitTrackCand(crossList.get(i));
+			if(fit == null)
+				continue;
+			if(Constants.useOverlapResolver) {
+				fits.add(fit);
+			} else {
+				this.addTrackCand(fit, cands);
+			}
+		}
+		
+		if(Constants.useOverlapResolver) {
+			// only the best candidates not overlapping with a kept candidate are swum to the target
+			Collections.sort(fits, new Comparator<TrackCandFit>() {
+				@Override
+				public int compare(TrackCandFit f1, TrackCandFit f2) {
+					return TrackOverlapResolver.RANKORDER.compare(f1.cand, f2.cand);
+				}
+			});
+			overlapResolver.clear();
+			for(TrackCandFit fit : fits) {
+				if(overlapResolver.isFree(fit.cand) == false)
+					continue;
+				if(this.addTrackCand(fit, cands))
+					overlapResolver.claim(fit.cand);
+			}
+		}
+		//this.setAssociatedIDs(cands);
+		return cands;
+	}
+	
+	/**
+	 * Finds the trajectory of a list of crosses and fits the track candidate (with the Kalman filter in time-based tracking)
+	 * @param crossesInTrk the list of crosses
+	 * @return the fitted candidate, null if the candidate fails
+	 */
+	private TrackCandFit fitTrackCand(List<Cross> crossesInTrk) {
+		Track cand = new Track();
+		TrajectoryFinder trjFind = new TrajectoryFinder();
+		
+		Trajectory traj = trjFind.findTrajectory(crossesInTrk);
+        if(traj == null) 
+        	return null;
+        
+		if(crossesInTrk.size()!=3) 
+			return null;
+						
+		cand.addAll(crossesInTrk);
+		
+		cand.set_Sector(crossesInTrk.get(0).get_Sector());
+		
+		cand.set_Region3CrossPoint();
+		cand.set_Region3CrossDir();
+		
+		cand.set_Trajectory(traj.get_Trajectory());
+		cand.set_IntegralBdl(traj.get_IntegralBdl());
+		
+		double theta3 = Math.atan(cand.get(2).get_Segment2().get_fittedCluster().get_clusterLineFitSlope());
+        double theta1 = Math.atan(cand.get(0).get_Segment2().get_fittedCluster().get_clusterLineFitSlope());
+        
+        double deltaTheta = theta3-theta1; 
+       
+        double iBdl = traj.get_IntegralBdl(); 
+        
+        double pxz = Math.abs(Constants.LIGHTVEL*iBdl/deltaTheta);
+        double thX = (cand.get(0).get_Dir().x()/cand.get(0).get_Dir().z());
+        double thY = (cand.get(0).get_Dir().y()/cand.get(0).get_Dir().z());
+        double py = Math.sqrt( (thX*thX+thY*thY+1)/(thX*thX+1) - 1 )*pxz;
+          
+        //positive charges bend outward for nominal GEMC field configuration
+		int q = (int) Math.signum(deltaTheta); 
+		
+		if(Constants.TORSCALE == 1) {
+			q*=-1;						
+		}
+		if(iBdl == 0 || (deltaTheta== 0)) {
+			System.err.print("Error in estimating track candidate trajectory: integral_B_dl not found, no trajectory...");
+		}
+
+		if(iBdl == 0 && deltaTheta == 0) 
+			return null;
+		
+		double p = Math.sqrt(pxz*pxz+py*py);
+		
+		if(p>Constants.MAXTRKMOM || p< Constants.MINTRKMOM)
+			return null;
+		
+		int totNbOfIterations = 30;
+		int iterationNb = 0;
+		int printiterationNb = 0;
+		cand.set_Q(q);
+		// momentum correction using the swam trajectory iBdl
+		cand.set_P(p);
+		
+		double fitChisq = Double.POSITIVE_INFINITY ;
+		
+		StateVec VecAtReg3MiddlePlane = new StateVec(cand.get(2).get_Point().x(),cand.get(2).get_Point().y(),
+				cand.get(2).get_Dir().x()/cand.get(2).get_Dir().z(), cand.get(2).get_Dir().y()/cand.get(2).get_Dir().z());
+		
+		StateVec VecAtReg1MiddlePlane = new StateVec(cand.get(0).get_Point().x(),cand.get(0).get_Point().y(),
+				cand.get(0).get_Dir().x()/cand.get(0).get_Dir().z(), cand.get(0).get_Dir().y()/cand.get(0).get_Dir().z());
+								
+		cand.set_StateVecAtReg1MiddlePlane(VecAtReg1MiddlePlane); 	
+		
+		if(trking == "TimeBased" && Constants.useKalmanFilter && Constants.useKFIterationDriver) {
 			
-			Trajectory traj = trjFind.findTrajectory(crossesInTrk);
-            if(traj == null) 
-            	continue;
-            
-			if(crossesInTrk.size()==3) {
-							
-				cand.addAll(crossesInTrk);
-				
-				cand.set_Sector(crossesInTrk.get(0).get_Sector());
-				
-				cand.set_Region3CrossPoint();
-				cand.set_Region3CrossDir();
+			StateVec fittedVec = this.runKalFitIterations(cand, Constants.KFMAXITERATIONS, true);
+			if(fittedVec!=null)
+				VecAtReg3MiddlePlane = fittedVec;
+			iterationNb = cand.get_NbOfKFIterations();
+			printiterationNb = iterationNb;
+		}
+		if(trking == "TimeBased" && Constants.useKalmanFilter && !Constants.useKFIterationDriver) {
+			
+			while(iterationNb < totNbOfIterations) {
 				
-				cand.set_Trajectory(traj.get_Trajectory());
-				cand.set_IntegralBdl(traj.get_IntegralBdl());
+				KalFit kf = new KalFit(cand, "wires", dcSwim, kfEngine);
+				if(kf.KalFitFail==true) {
+					break;
+				}
 				
-
-				if(cand.size()==3) {
-					double theta3 = Math.atan(cand.get(2).get_Segment2().get_fittedCluster().get_clusterLineFitSlope());
-			        double theta1 = Math.atan(cand.get(0).get_Segment2().get_fittedCluster().get_clusterLineFitSlope());
-			        
-			        double deltaTheta = theta3-theta1; 
-			       
-			        double iBdl = traj.get_IntegralBdl(); 
-			        
-			        double pxz = Math.abs(Constants.LIGHTVEL*iBdl/deltaTheta);
-			        double thX = (cand.get(0).get_Dir().x()/cand.get(0).get_Dir().z());
-			        double thY = (cand.get(0).get_Dir().y()/cand.get(0).get_Dir().z());
-			        double py = Math.sqrt( (thX*thX+thY*thY+1)/(thX*thX+1) - 1 )*pxz;
-			          
-			        //positive charges bend outward for nominal GEMC field configuration
-					int q = (int) Math.signum(deltaTheta); 
-					
-					if(Constants.TORSCALE == 1) {
-						q*=-1;						
-					}
-					if(iBdl == 0 || (deltaTheta== 0)) {
-						System.err.print("Error in estimating track candidate trajectory: integral_B_dl not found, no trajectory...");
-					}
-
-					if(iBdl != 0 || (deltaTheta != 0)) {
-						
-						double p = Math.sqrt(pxz*pxz+py*py);
-						
-						if(p>Constants.MAXTRKMOM || p< Constants.MINTRKMOM)
-							continue;
-						
-						int totNbOfIterations = 30;
-						int iterationNb = 0;
-						int printiterationNb = 0;
-						cand.set_Q(q);
-						// momentum correction using the swam trajectory iBdl
-						cand.set_P(p);
-						
-						double fitChisq = Double.POSITIVE_INFINITY ;
-						
-						StateVec VecAtReg3MiddlePlane = new StateVec(cand.get(2).get_Point().x(),cand.get(2).get_Point().y(),
-								cand.get(2).get_Dir().x()/cand.get(2).get_Dir().z(), cand.get(2).get_Dir().y()/cand.get(2).get_Dir().z());
-						
-						StateVec VecAtReg1MiddlePlane = new StateVec(cand.get(0).get_Point().x(),cand.get(0).get_Point().y(),
-								cand.get(0).get_Dir().x()/cand.get(0).get_Dir().z(), cand.get(0).get_Dir().y()/cand.get(0).get_Dir().z());
+				kf.runKalFit(); 
+				cand.set_NbOfKFSteps(cand.get_NbOfKFSteps()+kf.nbOfTransportSteps);
 												
-						cand.set_StateVecAtReg1MiddlePlane(VecAtReg1MiddlePlane); 	
-						
-						if(trking == "TimeBased" && Constants.useKalmanFilter) {
-							
-							while(iterationNb < totNbOfIterations) {
-								
-								KalFit kf = new KalFit(cand, "wires");
-								if(kf.KalFitFail==true) {
-									break;
-								}
-								
-								kf.runKalFit(); 
-																
-								if(kf.chi2>fitChisq || kf.chi2>Constants.MAXCHI2+1 || Math.abs(kf.chi2-fitChisq)<0.0000001) {
-									iterationNb = totNbOfIterations;
-									continue;
-								}
-								if(!Double.isNaN(kf.KF_p) && kf.KF_p>Constants.MINTRKMOM) {
-									cand.set_P(kf.KF_p);								
-									cand.set_Q(kf.KF_q);
-									cand.set_CovMat(kf.covMat);
-									
-									VecAtReg3MiddlePlane = new StateVec(kf.stateVec[0],kf.stateVec[1],kf.stateVec[2],kf.stateVec[3]);
-									
-									
-								}
-								fitChisq = kf.chi2;
-								iterationNb++;
-								printiterationNb++;
-								cand.set_FitChi2(fitChisq); 
-							}
-								
-						}	
-						this.setTrackPars(cand, traj, trjFind, VecAtReg3MiddlePlane, cand.get(2).get_Point().z());
-						
-						if(cand.fit_Successful==false)
-							continue;
-						
-						if((iterationNb>0 && cand.get_FitChi2()>Constants.MAXCHI2) || 
-								(iterationNb!=0 && cand.get_FitChi2()==0))
-							continue; // fails if after KF chisq exceeds cutoff or if KF fails 
-						if(Constants.DEBUGPRINTMODE)
-							System.out.println(" fit chis "+cand.get_FitChi2() + " at iteration "+printiterationNb);
-						cand.set_Id(cands.size());
-						
-							cands.add(cand);
-						
-					}
+				if(kf.chi2>fitChisq || kf.chi2>Constants.MAXCHI2+1 || Math.abs(kf.chi2-fitChisq)<0.0000001) {
+					iterationNb = totNbOfIterations;
+					continue;
 				}
+				if(!Double.isNaN(kf.KF_p) && kf.KF_p>Constants.MINTRKMOM) {
+					cand.set_P(kf.KF_p);								
+					cand.set_Q(kf.KF_q);
+					cand.set_CovMat(kf.covMat);
+					
+					VecAtReg3MiddlePlane = new StateVec(kf.stateVec[0],kf.stateVec[1],kf.stateVec[2],kf.stateVec[3]);
+					
+					
+				}
+				fitChisq = kf.chi2;
+				iterationNb++;
+				printiterationNb++;
+				cand.set_FitChi2(fitChisq); 
 			}
-		}
-		//this.setAssociatedIDs(cands);
-		return cands;
+			cand.set_NbOfKFIterations(printiterationNb);
+				
+		}	
+		
+		StageMonitor.count(StageMonitor.NKFITERATIONS, cand.get_NbOfKFIterations());
+		
+		if((iterationNb>0 && cand.get_FitChi2()>Constants.MAXCHI2) || 
+				(iterationNb!=0 && cand.get_FitChi2()==0))
+			return null; // fails if after KF chisq exceeds cutoff or if KF fails 
+		
+		TrackCandFit fit = new TrackCandFit();
+		fit.cand = cand;
+		fit.traj = traj;
+		fit.trjFind = trjFind;
+		fit.VecAtReg3MiddlePlane = VecAtReg3MiddlePlane;
+		fit.printiterationNb = printiterationNb;
+		return fit;
+	}
+	
+	/**
+	 * Swims a fitted candidate to the target and adds it to the list of candidates if the swim succeeds
+	 * @param fit the fitted candidate
+	 * @param cands the list of track candidates
+	 * @return true if the candidate is added
+	 */
+	private boolean addTrackCand(TrackCandFit fit, List<Track> cands) {
+		Track cand = fit.cand;
+		this.setTrackPars(cand, fit.traj, fit.trjFind, fit.VecAtReg3MiddlePlane, cand.get(2).get_Point().z());
+		
+		if(cand.fit_Successful==false)
+			return false;
+		
+		if(Constants.DEBUGPRINTMODE)
+			System.out.println(" fit chis "+cand.get_FitChi2() + " at iteration "+fit.printiterationNb+" KF steps "+cand.get_NbOfKFSteps()
+					+" iBdl field evaluations "+fit.traj.get_NbOfFieldEvalsForIntBdl());
+		cand.set_Id(cands.size());
+		
+		cands.add(cand);
+		return true;
 	}
 	
 
 	
+	// the scales below which the state vector changes are compared to absolute rather than relative values: x, y (cm), tx, ty, q/p (1/GeV)
+	private static final double[] KFCONVSTATESCALES = new double[] {1., 1., 1.e-3, 1.e-3, 1.e-3};
+	
+	/**
+	 * Runs the Kalman filter iterations on a track candidate.  The measurement vectors are set once; each iteration after the first one 
+	 * is warm-started from the state fitted in the previous iteration.  The iterations stop when the chi^2 increases, 
+	 * or when the relative changes of the chi^2 and of each state vector component are below Constants.KFCONVTOLERANCE.
+	 * The candidate momentum, charge, covariance matrix and chi^2 are updated with the results of each accepted iteration, 
+	 * and the number of iterations run is stored in the candidate.
+	 * @param cand the track candidate
+	 * @param maxNbOfIterations the maximum number of iterations
+	 * @param applyChi2Cut if true, an iteration with a chi^2 above Constants.MAXCHI2 stops the fit
+	 * @return the fitted state vector at the Region 3 middle plane, or null if no iteration was accepted
+	 */
+	public StateVec runKalFitIterations(Track cand, int maxNbOfIterations, boolean applyChi2Cut) {
+		
+		StateVec fittedVec = null;
+		int iterationNb = 0;
+		cand.set_NbOfKFIterations(0);
+		
+		KalFit kf = new KalFit(cand, "wires", dcSwim, kfEngine);
+		if(kf.KalFitFail==true) 
+			return null;
+		
+		double fitChisq = Double.POSITIVE_INFINITY;
+		double[] prevStateVec = new double[5];
+		
+		while(iterationNb < maxNbOfIterations) {
+			
+			if(iterationNb>0 && kf.warmStart(cand)==false) 
+				break;
+			
+			kf.runKalFit(); 
+			iterationNb++;
+			cand.set_NbOfKFIterations(iterationNb);
+			cand.set_NbOfKFSteps(cand.get_NbOfKFSteps()+kf.nbOfTransportSteps);
+			
+			if(kf.chi2>fitChisq || (applyChi2Cut && kf.chi2>Constants.MAXCHI2+1)) 
+				break;
+			
+			boolean converged = false;
+			if(iterationNb>1) {
+				converged = Math.abs(kf.chi2-fitChisq) <= Constants.KFCONVTOLERANCE*Math.max(fitChisq, 1.);
+				for(int k = 0; k<5 && converged; k++) 
+					converged = Math.abs(kf.stateVec[k]-prevStateVec[k]) <= Constants.KFCONVTOLERANCE*Math.max(Math.abs(prevStateVec[k]), KFCONVSTATESCALES[k]);
+			}
+			
+			if(!Double.isNaN(kf.KF_p) && kf.KF_p>Constants.MINTRKMOM) {
+				cand.set_P(kf.KF_p);								
+				cand.set_Q(kf.KF_q);
+				cand.set_CovMat(kf.covMat);
+				
+				fittedVec = new StateVec(kf.stateVec[0],kf.stateVec[1],kf.stateVec[2],kf.stateVec[3]);
+			}
+			fitChisq = kf.chi2;
+			cand.set_FitChi2(fitChisq); 
+			System.arraycopy(kf.stateVec, 0, prevStateVec, 0, 5);
+			
+			// no fitted state to start the next iteration from
+			if(converged || Double.isNaN(kf.KF_p)) 
+				break;
+		}
+		return fittedVec;
+	}
+	
 	public void setTrackPars(Track cand, Trajectory traj, TrajectoryFinder trjFind, StateVec stateVec, double z) {
 		double pz = cand.get_P() / Math.sqrt(stateVec.tanThetaX()*stateVec.tanThetaX() + stateVec.tanThetaY()*stateVec.tanThetaY() + 1);
 		
@@ -224,6 +373,11 @@ public class TrackCandListFinder {
 
 	public void removeOverlappingTracks(List<Track> trkcands) {
 		
+		if(Constants.useOverlapResolver) {
+			overlapResolver.resolve(trkcands);
+			Collections.sort(trkcands);
+			return;
+		}
 		Collections.sort(trkcands);
 		for(int i =1; i<trkcands.size(); i++) {
 			
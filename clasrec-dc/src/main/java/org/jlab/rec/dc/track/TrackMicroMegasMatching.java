@@ -259,13 +259,19 @@ public class TrackMicroMegasMatching {
 		if(Constants.DEBUGPRINTMODE)
 			System.out.println("refitting with Micromegas!!!");
 		
+		if(Constants.useKFIterationDriver) {
+			StateVec fittedVec = candFind.runKalFitIterations(cand, totNbOfIterations, false);
+			candFind.setTrackPars(cand, null, null, (fittedVec==null) ? new StateVec() : fittedVec, cand.get(2).get_Point().z());
+			return;
+		}
+		
 		int iterationNb =0;
 		double fitChisq = Double.POSITIVE_INFINITY;
 		StateVec VecAtReg3MiddlePlane = new StateVec();
 		
 		while(iterationNb < totNbOfIterations) {
 			
-			KalFit kf = new KalFit(cand, "wires");
+			KalFit kf = new KalFit(cand, "wires", candFind.dcSwim, candFind.kfEngine);
 			if(kf.KalFitFail==true) {
 				break;
 			}
@@ -287,6 +293,7 @@ public class TrackMicroMegasMatching {
 			iterationNb++;
 			
 			cand.set_FitChi2(fitChisq);
+			cand.set_NbOfKFIterations(iterationNb);
 		}
 			
 		
@@ -0,0 +1,114 @@
+package org.jlab.rec.dc.track;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jlab.rec.dc.cross.Cross;
+
+/**
+ * Resolves the overlaps between DC track candidates.
+ * <p>
+ * The crosses and segments are resources shared by the candidates; two candidates overlap if they share a cross or a segment.
+ * The candidates are ranked by fit quality, and a candidate is kept only if none of its crosses and segments is used by a
+ * better candidate already kept (a greedy maximum-weight independent set of the overlap graph).  The result does not depend on
+ * the order of the input list, and the cost is linear in the number of candidates after the sort.
+ * A resolver can be reused from one candidate list to the next.
+ * @author ziegler
+ *
+ */
+public class TrackOverlapResolver {
+
+	private final Set<Integer> usedCrosses = new HashSet<Integer>();
+	private final Set<Integer> usedSegments = new HashSet<Integer>();
+
+	/**
+	 * Orders the candidates by decreasing fit quality: the candidates fitted with the Kalman filter by increasing chi2, then the others
+	 * by increasing sum of the chi2 of the cluster fits of their segments
+	 */
+	public static final Comparator<Track> RANKORDER = new Comparator<Track>() {
+		@Override
+		public int compare(Track t1, Track t2) {
+			boolean kf1 = isKalmanFitted(t1);
+			boolean kf2 = isKalmanFitted(t2);
+			if(kf1 != kf2)
+				return kf1 ? -1 : 1;
+			if(kf1)
+				return Double.compare(t1.get_FitChi2(), t2.get_FitChi2());
+			return Double.compare(getSegmentsChisq(t1), getSegmentsChisq(t2));
+		}
+	};
+
+	private static boolean isKalmanFitted(Track cand) {
+		return cand.get_NbOfKFIterations()>0 && cand.get_FitChi2()>0;
+	}
+
+	/**
+	 *
+	 * @param cand the track candidate
+	 * @return the sum of the chi2 of the cluster fits of the segments of the candidate
+	 */
+	public static double getSegmentsChisq(Track cand) {
+		double chisq = 0;
+		for(Cross cross : cand) {
+			chisq += cross.get_Segment1().get_fittedCluster().get_Chisq();
+			chisq += cross.get_Segment2().get_fittedCluster().get_Chisq();
+		}
+		return chisq;
+	}
+
+	/**
+	 * Releases all the crosses and segments
+	 */
+	public void clear() {
+		usedCrosses.clear();
+		usedSegments.clear();
+	}
+
+	/**
+	 *
+	 * @param cand the track candidate
+	 * @return true if none of the crosses and segments of the candidate is used by a kept candidate
+	 */
+	public boolean isFree(Track cand) {
+		for(Cross cross : cand) {
+			if(usedCrosses.contains(cross.get_Id()) || usedSegments.contains(cross.get_Segment1().get_Id())
+					|| usedSegments.contains(cross.get_Segment2().get_Id()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the crosses and segments of a kept candidate as used
+	 * @param cand the track candidate
+	 */
+	public void claim(Track cand) {
+		for(Cross cross : cand) {
+			usedCrosses.add(cross.get_Id());
+			usedSegments.add(cross.get_Segment1().get_Id());
+			usedSegments.add(cross.get_Segment2().get_Id());
+		}
+	}
+
+	/**
+	 * Keeps the best candidates which do not overlap
+	 * @param trkcands the track candidates, from which the overlapping candidates are removed; the list is left in rank order
+	 */
+	public void resolve(List<Track> trkcands) {
+		List<Track> ranked = new ArrayList<Track>(trkcands);
+		Collections.sort(ranked, RANKORDER);
+
+		this.clear();
+		trkcands.clear();
+		for(Track cand : ranked) {
+			if(this.isFree(cand) == false)
+				continue;
+			this.claim(cand);
+			trkcands.add(cand);
+		}
+	}
+}
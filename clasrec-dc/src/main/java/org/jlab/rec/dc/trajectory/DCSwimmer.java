@@ -11,6 +11,7 @@ import cnuphys.swim.Swimmer;
 
 import org.jlab.rec.dc.Constants;
 import org.jlab.rec.dc.GeometryLoader;
+import org.jlab.rec.dc.monitoring.StageMonitor;
 
 
 /**
@@ -102,7 +103,7 @@ public class DCSwimmer {
 		double z0 =0;
 		
 		if(superlayerIdx!=-1 && layerIdx!=-1) 
-			z0 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(superlayerIdx).getLayer(layerIdx).getPlane().point().z();
+			z0 = GeometryLoader.getLayerPlaneZ(superlayerIdx+1, layerIdx+1);
 		
 		// x,y,z in m = swimmer units
 		 _x0  = x0/100;
@@ -144,6 +145,7 @@ public class DCSwimmer {
 
 		
 	public  double[] SwimToPlane(double z_cm) {
+		StageMonitor.count(StageMonitor.NSWIMS, 1);
 		double z = z_cm/100; // the magfield method uses meters
 		double[] value = new double[8];
 		double accuracy = 20e-6; //20 microns
@@ -217,6 +219,7 @@ public class DCSwimmer {
 		
 	
 		public  double[] SwimToCylinder(double cylRad) {
+				StageMonitor.count(StageMonitor.NSWIMS, 1);
 				
 				double[] value = new double[8];
 				// using adaptive stepsize
@@ -243,6 +246,140 @@ public class DCSwimmer {
 				
 		}
 
+		/**
+		 * A swim stopper that records the track state at the crossings of a list of planes of constant z, ordered in increasing z,
+		 * and stops the integration after the last plane.  The state at a crossing is obtained by cubic Hermite interpolation
+		 * in path length between the integration steps bracketing the plane.
+		 */
+		private class PlaneListSwimStopper implements IStopper {
+
+			private double[] _planeZ;  // plane z in m
+			private int _nbOfPlanes;
+			private double[] _buffer;  // x (cm), y (cm), tanThetaX, tanThetaY per crossed plane
+			private int _nbOfCrossings;
+			
+			private final double[] _prevY = new double[6];
+			private double _prevT;
+			private boolean _hasPrev;
+			private double _finalT;
+			
+			private void reset(double[] planeZ, int nbOfPlanes, double[] buffer) {
+				_planeZ = planeZ;
+				_nbOfPlanes = nbOfPlanes;
+				_buffer = buffer;
+				_nbOfCrossings = 0;
+				_hasPrev = false;
+				_finalT = 0;
+			}
+			
+			@Override
+			public boolean stopIntegration(double t, double[] y) {
+				
+				if(_hasPrev == false) {
+					// skip the planes upstream of the starting point
+					while(_nbOfCrossings<_nbOfPlanes && _planeZ[_nbOfCrossings]<=y[2]) {
+						_buffer[4*_nbOfCrossings] = Double.NaN;
+						_nbOfCrossings++;
+					}
+				} else {
+					while(_nbOfCrossings<_nbOfPlanes && _prevY[2]<_planeZ[_nbOfCrossings] && _planeZ[_nbOfCrossings]<=y[2]) {
+						this.recordCrossing(_planeZ[_nbOfCrossings], t - _prevT, y, 4*_nbOfCrossings);
+						_nbOfCrossings++;
+					}
+				}
+				
+				System.arraycopy(y, 0, _prevY, 0, 6);
+				_prevT = t;
+				_hasPrev = true;
+				_finalT = t;
+				
+				return (_nbOfCrossings == _nbOfPlanes);
+			}
+			
+			private void recordCrossing(double zPlane, double h, double[] y, int offset) {
+				double z0 = _prevY[2];
+				double z1 = y[2];
+				double dz0 = h*_prevY[5];
+				double dz1 = h*y[5];
+				// start from the linear estimate of the crossing and refine on the cubic
+				double u = (zPlane - z0)/(z1 - z0);
+				for(int i = 0; i<3; i++) {
+					double u2 = u*u;
+					double f = (2*u2*u - 3*u2 + 1)*z0 + (u2*u - 2*u2 + u)*dz0 + (-2*u2*u + 3*u2)*z1 + (u2*u - u2)*dz1 - zPlane;
+					double df = (6*u2 - 6*u)*z0 + (3*u2 - 4*u + 1)*dz0 + (-6*u2 + 6*u)*z1 + (3*u2 - 2*u)*dz1;
+					if(df == 0)
+						break;
+					double du = f/df;
+					u -= du;
+					if(Math.abs(du)<1.e-9)
+						break;
+				}
+				if(u<0 || u>1) 
+					u = (zPlane - z0)/(z1 - z0);
+				
+				double u2 = u*u;
+				double h00 = 2*u2*u - 3*u2 + 1;
+				double h10 = u2*u - 2*u2 + u;
+				double h01 = -2*u2*u + 3*u2;
+				double h11 = u2*u - u2;
+				
+				double x = h00*_prevY[0] + h10*h*_prevY[3] + h01*y[0] + h11*h*y[3];
+				double yy = h00*_prevY[1] + h10*h*_prevY[4] + h01*y[1] + h11*h*y[4];
+				double ux = (1-u)*_prevY[3] + u*y[3];
+				double uy = (1-u)*_prevY[4] + u*y[4];
+				double uz = (1-u)*_prevY[5] + u*y[5];
+				
+				_buffer[offset] = x*100; // convert back to cm
+				_buffer[offset+1] = yy*100;
+				_buffer[offset+2] = ux/uz;
+				_buffer[offset+3] = uy/uz;
+			}
+			
+			@Override
+			public double getFinalT() {
+				return _finalT;
+			}
+			@Override
+			public void setFinalT(double finalT) {
+				_finalT = finalT;
+			}
+		}
+		
+		private final PlaneListSwimStopper planeListStopper = new PlaneListSwimStopper();
+		private double[] planeZ = new double[36];  // the plane z values in m, reused from one swim to the next
+		
+		/**
+		 * Swims once from the current swim parameters through a list of planes of constant z, 
+		 * recording the track state at each plane crossing.  The swim uses the adaptive step size, as SwimToPlane.
+		 * @param z_cm the plane z values in cm, in increasing order
+		 * @param nbOfPlanes the number of planes
+		 * @param buffer the array (of length at least 4*nbOfPlanes) filled with x (cm), y (cm), tanThetaX, tanThetaY at each plane;
+		 * x is NaN for a plane upstream of the starting point
+		 * @return the number of planes filled in the buffer; less than nbOfPlanes if the track stopped before the last plane
+		 */
+		public int SwimToPlanes(double[] z_cm, int nbOfPlanes, double[] buffer) {
+			
+			if(_pTot<Constants.MINTRKMOM  ) // fiducial cut 
+				return 0;
+			
+			if(planeZ.length<nbOfPlanes)
+				planeZ = new double[nbOfPlanes];
+			for(int i = 0; i<nbOfPlanes; i++)
+				planeZ[i] = z_cm[i]/100; // the swimmer uses meters
+			
+			planeListStopper.reset(planeZ, nbOfPlanes, buffer);
+			StageMonitor.count(StageMonitor.NSWIMS, 1);
+			
+			try {
+				swimmer.swim(_charge, _x0, _y0, _z0, _pTot, _theta, _phi, planeListStopper, _maxPathLength, Constants.SWIMSTEPSIZE, 
+						Swimmer.CLAS_Tolerance, hdata);
+			} catch (RungeKuttaException e) {
+				e.printStackTrace();
+			}
+			
+			return planeListStopper._nbOfCrossings;
+		}
+
 	public static double CLAS_Tolerance[];
 	static {
 		double xscale = 1.0;  //position scale order of meters
@@ -267,6 +404,13 @@ public class DCSwimmer {
 	 * @return Field in Tesla at that point in the tilted coordinate system
 	 */
 	public Point3D Bfield(double x_cm, double y_cm, double z_cm) {
+		StageMonitor.count(StageMonitor.NFIELDLOOKUPS, 1);
+		
+		if(Constants.useFieldGrid && FieldGridLoader.FIELDGRIDLOADED && isRotatedCoordinateSystem == true) {
+			double[] B = new double[3];
+			if(FieldGridLoader.getField(x_cm, y_cm, z_cm, B))
+				return new Point3D(B[0], B[1], B[2]);
+		}
 		
 		float result[] = new float[3];
 
@@ -279,6 +423,32 @@ public class DCSwimmer {
 		
 	}
 	
+	private final float[] fieldBuffer = new float[3];
+	/**
+	 * Non-allocating version of the field lookup, for use in stepping loops
+	 * @param x_cm x in cm
+	 * @param y_cm y in cm
+	 * @param z_cm z in cm 
+	 * @param B the array filled with the field in Tesla at that point in the tilted coordinate system
+	 */
+	public void Bfield(double x_cm, double y_cm, double z_cm, double[] B) {
+		StageMonitor.count(StageMonitor.NFIELDLOOKUPS, 1);
+		
+		if(Constants.useFieldGrid && FieldGridLoader.FIELDGRIDLOADED && isRotatedCoordinateSystem == true) {
+			if(FieldGridLoader.getField(x_cm, y_cm, z_cm, B))
+				return;
+		}
+		
+		if(isRotatedCoordinateSystem == true)
+			rcompositeField.field((float)x_cm, (float)y_cm, (float)z_cm, fieldBuffer);
+		if(isRotatedCoordinateSystem == false)
+			compositeField.field((float)x_cm, (float)y_cm, (float)z_cm, fieldBuffer);
+		
+		B[0] = fieldBuffer[0]/10;
+		B[1] = fieldBuffer[1]/10;
+		B[2] = fieldBuffer[2]/10;
+	}
+	
 	
 		
 	
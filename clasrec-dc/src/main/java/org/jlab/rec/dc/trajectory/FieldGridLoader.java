@@ -0,0 +1,261 @@
+package org.jlab.rec.dc.trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.jlab.rec.dc.Constants;
+
+import cnuphys.magfield.RotatedCompositeField;
+
+/**
+ * A class to load a precomputed grid of the magnetic field in the tilted sector coordinate system, on which the field is obtained by trilinear interpolation.
+ * The grid covers the DC volume of one sector; the field components (in Tesla) are stored node by node in a flat array.
+ * The grid can be cached in a local binary file which is memory-mapped at the next initialization.  The cache identifies the field map by the
+ * field scales and by the exact field at a set of fixed points, so that a cache made with another map file, scale or shift is recomputed.
+ * @author ziegler
+ *
+ */
+public class FieldGridLoader {
+
+	public static volatile boolean FIELDGRIDLOADED = false;
+
+	// the grid limits and spacing in cm
+	static double XMIN = -200;
+	static double XMAX =  400;
+	static double YMIN = -300;
+	static double YMAX =  300;
+	static double ZMIN =  150;
+	static double ZMAX =  650;
+
+	static int NX;
+	static int NY;
+	static int NZ;
+	static double DELTA;
+
+	// Bx, By, Bz at node (i,j,k) are at index 3*((i*NY+j)*NZ+k)
+	static float[] FIELD;
+
+	private static final int CACHEVERSION = 2;
+
+	// the number of points at which the exact field identifies the field map in the cache
+	private static final int NBOFKEYPOINTS = 16;
+
+	/**
+	 * Fills the grid from the exact field, or reads it from the cache file Constants.FIELDGRIDCACHEFILE if it exists and matches the current field map, 
+	 * field scales and grid spacing.
+	 * @param rcompositeField the rotated composite field
+	 */
+	public static synchronized void Load(RotatedCompositeField rcompositeField) {
+
+		if (FIELDGRIDLOADED) return;
+
+		DELTA = Constants.FIELDGRIDSPACING;
+		NX = (int) Math.ceil((XMAX-XMIN)/DELTA) + 1;
+		NY = (int) Math.ceil((YMAX-YMIN)/DELTA) + 1;
+		NZ = (int) Math.ceil((ZMAX-ZMIN)/DELTA) + 1;
+
+		String cacheFile = Constants.FIELDGRIDCACHEFILE;
+		float[] keyField = cacheFile == null ? null : getKeyField(rcompositeField);
+
+		if(cacheFile != null && readCache(cacheFile, keyField)) {
+			System.out.println("DC field grid read from "+cacheFile);
+		} else {
+			FIELD = new float[3*NX*NY*NZ];
+			float result[] = new float[3];
+			int index = 0;
+			for(int i = 0; i < NX; i++) {
+				for(int j = 0; j < NY; j++) {
+					for(int k = 0; k < NZ; k++) {
+						rcompositeField.field((float)(XMIN+i*DELTA), (float)(YMIN+j*DELTA), (float)(ZMIN+k*DELTA), result);
+						FIELD[index++] = result[0]/10;
+						FIELD[index++] = result[1]/10;
+						FIELD[index++] = result[2]/10;
+					}
+				}
+			}
+			if(cacheFile != null)
+				writeCache(cacheFile, keyField);
+		}
+
+		FIELDGRIDLOADED = true;
+		System.out.println("DC field grid is Loaded -- "+NX+"x"+NY+"x"+NZ+" nodes with spacing "+DELTA+" cm");
+
+		if(Constants.FIELDGRIDVALIDATE)
+			validate(rcompositeField, 100000);
+	}
+
+	/**
+	 * Gets the field by trilinear interpolation on the grid
+	 * @param x x in cm in the tilted sector coordinate system
+	 * @param y y in cm in the tilted sector coordinate system
+	 * @param z z in cm in the tilted sector coordinate system
+	 * @param B the array filled with the field in Tesla
+	 * @return false if the point is outside the grid
+	 */
+	public static boolean getField(double x, double y, double z, double[] B) {
+
+		double fx = (x-XMIN)/DELTA;
+		double fy = (y-YMIN)/DELTA;
+		double fz = (z-ZMIN)/DELTA;
+
+		if(!(fx>=0 && fy>=0 && fz>=0))
+			return false;
+
+		int i = (int) fx;
+		int j = (int) fy;
+		int k = (int) fz;
+
+		if(i>NX-2 || j>NY-2 || k>NZ-2)
+			return false;
+
+		double tx = fx-i;
+		double ty = fy-j;
+		double tz = fz-k;
+
+		int sk = 3;
+		int sj = 3*NZ;
+		int si = 3*NY*NZ;
+		int n000 = i*si + j*sj + k*sk;
+
+		for(int c = 0; c < 3; c++) {
+			int n = n000+c;
+			double c00 = FIELD[n]       + tz*(FIELD[n+sk]       - FIELD[n]);
+			double c01 = FIELD[n+sj]    + tz*(FIELD[n+sj+sk]    - FIELD[n+sj]);
+			double c10 = FIELD[n+si]    + tz*(FIELD[n+si+sk]    - FIELD[n+si]);
+			double c11 = FIELD[n+si+sj] + tz*(FIELD[n+si+sj+sk] - FIELD[n+si+sj]);
+			double c0 = c00 + ty*(c01 - c00);
+			double c1 = c10 + ty*(c11 - c10);
+			B[c] = c0 + tx*(c1 - c0);
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the interpolated field to the exact field at random points in the grid volume and prints the maximum deviation
+	 * @param rcompositeField the rotated composite field
+	 * @param nPoints the number of points
+	 * @return the maximum deviation in Tesla
+	 */
+	public static double validate(RotatedCompositeField rcompositeField, int nPoints) {
+
+		Random rnd = new Random(1);
+		float result[] = new float[3];
+		double[] B = new double[3];
+		double maxDev = 0;
+		double sumDev = 0;
+		double[] maxDevPoint = new double[3];
+
+		for(int n = 0; n < nPoints; n++) {
+			double x = XMIN + rnd.nextDouble()*(XMAX-XMIN);
+			double y = YMIN + rnd.nextDouble()*(YMAX-YMIN);
+			double z = ZMIN + rnd.nextDouble()*(ZMAX-ZMIN);
+
+			if(getField(x, y, z, B) == false)
+				continue;
+			rcompositeField.field((float)x, (float)y, (float)z, result);
+
+			double dBx = B[0] - result[0]/10;
+			double dBy = B[1] - result[1]/10;
+			double dBz = B[2] - result[2]/10;
+			double dev = Math.sqrt(dBx*dBx + dBy*dBy + dBz*dBz);
+			sumDev += dev;
+			if(dev > maxDev) {
+				maxDev = dev;
+				maxDevPoint[0] = x;
+				maxDevPoint[1] = y;
+				maxDevPoint[2] = z;
+			}
+		}
+		System.out.println("DC field grid validation: max deviation "+maxDev+" T at ("+maxDevPoint[0]+", "+maxDevPoint[1]+", "+maxDevPoint[2]+
+				"), mean deviation "+sumDev/nPoints+" T for "+nPoints+" points");
+		return maxDev;
+	}
+
+	/**
+	 * Computes the exact field at fixed points of the grid volume; this identifies the field map, its scale and its position
+	 * @param rcompositeField the rotated composite field
+	 * @return the field components at the points
+	 */
+	private static float[] getKeyField(RotatedCompositeField rcompositeField) {
+		Random rnd = new Random(NBOFKEYPOINTS);
+		float result[] = new float[3];
+		float[] keyField = new float[3*NBOFKEYPOINTS];
+		for(int n = 0; n < NBOFKEYPOINTS; n++) {
+			double x = XMIN + rnd.nextDouble()*(XMAX-XMIN);
+			double y = YMIN + rnd.nextDouble()*(YMAX-YMIN);
+			double z = ZMIN + rnd.nextDouble()*(ZMAX-ZMIN);
+			rcompositeField.field((float)x, (float)y, (float)z, result);
+			keyField[3*n]   = result[0];
+			keyField[3*n+1] = result[1];
+			keyField[3*n+2] = result[2];
+		}
+		return keyField;
+	}
+
+	// header: version, torus scale, solenoid scale, spacing, nx, ny, nz, field at the key points
+	private static final int HEADERSIZE = 4 + 3*8 + 3*4 + 4*3*NBOFKEYPOINTS;
+
+	private static boolean readCache(String cacheFile, float[] keyField) {
+		File file = new File(cacheFile);
+		if(!file.exists())
+			return false;
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.nativeOrder());
+
+			if(channel.size() < HEADERSIZE || buffer.getInt() != CACHEVERSION
+					|| buffer.getDouble() != Constants.TORSCALE || buffer.getDouble() != Constants.SOLSCALE
+					|| buffer.getDouble() != DELTA || buffer.getInt() != NX || buffer.getInt() != NY || buffer.getInt() != NZ
+					|| channel.size() != HEADERSIZE + 4L*3*NX*NY*NZ || !matchesKeyField(buffer, keyField)) {
+				System.err.println("DC field grid cache "+cacheFile+" does not match the current configuration -- recomputing");
+				return false;
+			}
+			FIELD = new float[3*NX*NY*NZ];
+			buffer.asFloatBuffer().get(FIELD);
+			return true;
+		} catch (IOException e) {
+			System.err.println("DC field grid cache "+cacheFile+" could not be read: "+e.getMessage());
+			return false;
+		}
+	}
+
+	private static boolean matchesKeyField(ByteBuffer buffer, float[] keyField) {
+		for(int n = 0; n < keyField.length; n++)
+			if(Float.floatToIntBits(buffer.getFloat()) != Float.floatToIntBits(keyField[n]))
+				return false;
+		return true;
+	}
+
+	private static void writeCache(String cacheFile, float[] keyField) {
+		try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw"); FileChannel channel = raf.getChannel()) {
+			raf.setLength(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADERSIZE).order(ByteOrder.nativeOrder());
+			header.putInt(CACHEVERSION);
+			header.putDouble(Constants.TORSCALE);
+			header.putDouble(Constants.SOLSCALE);
+			header.putDouble(DELTA);
+			header.putInt(NX);
+			header.putInt(NY);
+			header.putInt(NZ);
+			for(int n = 0; n < keyField.length; n++)
+				header.putFloat(keyField[n]);
+			header.flip();
+			channel.write(header);
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, HEADERSIZE, 4L*FIELD.length);
+			buffer.order(ByteOrder.nativeOrder());
+			buffer.asFloatBuffer().put(FIELD);
+			buffer.force();
+			System.out.println("DC field grid written to "+cacheFile);
+		} catch (IOException e) {
+			System.err.println("DC field grid cache "+cacheFile+" could not be written: "+e.getMessage());
+		}
+	}
+}
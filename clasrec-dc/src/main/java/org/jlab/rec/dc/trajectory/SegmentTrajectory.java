@@ -63,13 +63,13 @@ public class SegmentTrajectory {
 	 */
 	public int getWireOnTrajectory(int superlayer, int layer, double trkX) {
 		
-		double x1 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(superlayer-1).getLayer(layer-1).getComponent(1).getMidpoint().x();
-		double x0 = GeometryLoader.dcDetector.getSector(0).getSuperlayer(superlayer-1).getLayer(layer-1).getComponent(0).getMidpoint().x();
+		double x1 = GeometryLoader.getWireMidpointX(superlayer, layer, 2);
+		double x0 = GeometryLoader.getWireMidpointX(superlayer, layer, 1);
 		
 		double deltax = Math.abs(x1-x0);
 		
 		
-		double xFirstCell = GeometryLoader.dcDetector.getSector(0).getSuperlayer(superlayer-1).getLayer(layer-1).getComponent(0).getMidpoint().x();
+		double xFirstCell = GeometryLoader.getWireMidpointX(superlayer, layer, 1);
 		
 		int nearestWire = (int)Math.ceil((trkX-xFirstCell+deltax/2.)/deltax) ;
 		
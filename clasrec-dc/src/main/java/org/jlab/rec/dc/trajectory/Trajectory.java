@@ -64,6 +64,20 @@ public class Trajectory extends ArrayList<Cross> {
 		this._IntegralBdl = _IntegralBdl;
 	}
 	
+	private int _nbOfFieldEvalsForIntBdl;
+	
+	/**
+	 * 
+	 * @return the number of field evaluations used to calculate the integral Bdl
+	 */
+	public int get_NbOfFieldEvalsForIntBdl() {
+		return _nbOfFieldEvalsForIntBdl;
+	}
+
+	public void set_NbOfFieldEvalsForIntBdl(int _nbOfFieldEvalsForIntBdl) {
+		this._nbOfFieldEvalsForIntBdl = _nbOfFieldEvalsForIntBdl;
+	}
+	
 	public double get_PathLength() {
 		return _pathLength;
 	}
@@ -62,6 +62,7 @@ public class TrajectoryFinder {
 		traj.set_IntegralBdl(integralBdl());
 		
         traj.set_PathLength(PathLength);
+        traj.set_NbOfFieldEvalsForIntBdl(nbOfFieldEvaluations);
        
 		return traj;
 	}
@@ -74,10 +75,19 @@ public class TrajectoryFinder {
 	 * @return the value of the integral of the magnetic field over the path traveled by the particle as estimated from the fits to the crosses.
 	 */
 	int counter =0;
+	/**
+	 * the number of field evaluations in the last integral Bdl calculation
+	 */
+	public int nbOfFieldEvaluations;
+	
 	public double integralBdl() {
 		
-		double z1 = GeometryLoader.dcDetector.getSector(0).getRegionMiddlePlane(0).point().z();
-		double z3 = GeometryLoader.dcDetector.getSector(0).getRegionMiddlePlane(2).point().z();
+		double z1 = GeometryLoader.getRegionMiddlePlaneZ(1);
+		double z3 = GeometryLoader.getRegionMiddlePlaneZ(3);
+		
+		nbOfFieldEvaluations = 0;
+		if(Constants.useAdaptiveIntBdl==true)
+			return this.adaptiveIntegralBdl(z1, z3);
 		
 		double z = z1;
 
@@ -90,6 +100,7 @@ public class TrajectoryFinder {
 		
 		while(z<=z3) {
 			counter++;
+			nbOfFieldEvaluations++;
 			double x = x_fitCoeff[0]*z*z+x_fitCoeff[1]*z+x_fitCoeff[2];
 			double y = y_fitCoeff[0]*z*z+y_fitCoeff[1]*z+y_fitCoeff[2];
 			//System.out.println(" trj x0 "+x0+" y0 "+y0+" z0 "+z0);
@@ -116,6 +127,75 @@ public class TrajectoryFinder {
 		
 		return intBdl;
 	}
+	
+	// the field at the current integration point
+	private final double[] intBdlField = new double[3];
+	// the path length accumulated in the adaptive integration
+	private double intBdlPathLen;
+	
+	/**
+	 * Integral Bdl between two planes along the fitted trajectory by adaptive Simpson quadrature in z, with the absolute error target 
+	 * Constants.INTBDLTOLERANCE.  The integrand |dl x B|/dz is evaluated along the quadratic trajectory x(z), y(z) in the x-z plane, as in the 
+	 * fixed-step integration.  
+	 * @param z1 the z of the first plane
+	 * @param z3 the z of the last plane
+	 * @return the integral Bdl in T.cm
+	 */
+	private double adaptiveIntegralBdl(double z1, double z3) {
+		
+		double zm = 0.5*(z1+z3);
+		double f1 = this.intBdlIntegrand(z1);
+		double fm = this.intBdlIntegrand(zm);
+		double f3 = this.intBdlIntegrand(z3);
+		
+		intBdlPathLen = 0;
+		double intBdl = this.adaptiveSimpson(z1, z3, f1, fm, f3, (z3-z1)/6*(f1+4*fm+f3), Constants.INTBDLTOLERANCE, 0);
+		PathLength = intBdlPathLen;
+		
+		return intBdl;
+	}
+	
+	private double adaptiveSimpson(double a, double b, double fa, double fm, double fb, double whole, double eps, int depth) {
+		
+		double m  = 0.5*(a+b);
+		double lm = 0.5*(a+m);
+		double rm = 0.5*(m+b);
+		double flm = this.intBdlIntegrand(lm);
+		double frm = this.intBdlIntegrand(rm);
+		double left  = (m-a)/6*(fa+4*flm+fm);
+		double right = (b-m)/6*(fm+4*frm+fb);
+		double delta = left+right-whole;
+		
+		// a minimum number of subdivisions protects against a chance agreement of the coarse estimates
+		if(depth>=Constants.INTBDLMAXDEPTH || (depth>=Constants.INTBDLMINDEPTH && Math.abs(delta)<=15*eps)) {
+			intBdlPathLen += (b-a)/6*(this.pathLenIntegrand(a)+4*this.pathLenIntegrand(m)+this.pathLenIntegrand(b));
+			return left+right+delta/15;
+		}
+		return this.adaptiveSimpson(a, m, fa, flm, fm, left, 0.5*eps, depth+1) + this.adaptiveSimpson(m, b, fm, frm, fb, right, 0.5*eps, depth+1);
+	}
+	
+	/**
+	 * @return |dl x B|/dz at z for the trajectory x(z), y(z), with dl = (dx, 0, dz)
+	 */
+	private double intBdlIntegrand(double z) {
+		double x = x_fitCoeff[0]*z*z+x_fitCoeff[1]*z+x_fitCoeff[2];
+		double y = y_fitCoeff[0]*z*z+y_fitCoeff[1]*z+y_fitCoeff[2];
+		double dxdz = 2*x_fitCoeff[0]*z+x_fitCoeff[1];
+		
+		dcSwim.Bfield(x, y, z, intBdlField);
+		nbOfFieldEvaluations++;
+		
+		double cx = -intBdlField[1];
+		double cy = intBdlField[0] - dxdz*intBdlField[2];
+		double cz = dxdz*intBdlField[1];
+		
+		return Math.sqrt(cx*cx+cy*cy+cz*cz);
+	}
+	
+	private double pathLenIntegrand(double z) {
+		double dxdz = 2*x_fitCoeff[0]*z+x_fitCoeff[1];
+		return Math.sqrt(1+dxdz*dxdz);
+	}
 
 	
 
@@ -125,6 +205,9 @@ public class TrajectoryFinder {
 		//initialize at target
 		dcSwim.SetSwimParameters(-1, -1,  x0,  y0,  tanTheta_x,  tanTheta_y,  p,  q);
 		
+		if(Constants.useSinglePassTrajectorySwim==true)
+			return this.getStateVecsAlongTrajectorySinglePass();
+		
 		//position array 
 		double[] X = new double[36];
 		double[] Y = new double[36];
@@ -132,7 +215,7 @@ public class TrajectoryFinder {
 		double[] thX = new double[36];
 		double[] thY = new double[36];
 		
-		Z[0] = GeometryLoader.dcDetector.getSector(0).getSuperlayer(0).getLayer(0).getPlane().point().z();
+		Z[0] = GeometryLoader.getLayerPlaneZ(1, 1);
 		double[] swamPars = dcSwim.SwimToPlane(Z[0]) ;
 		X[0] = swamPars[0];
 		Y[0] = swamPars[1];
@@ -154,7 +237,7 @@ public class TrajectoryFinder {
 					continue;
 				
 				dcSwim.SetSwimParameters(lastSupLyrIdx, lastLyrIdx,  X[planeIdx-1],  Y[planeIdx-1],  thX[planeIdx-1],  thY[planeIdx-1],  p,  q);
-				Z[layerIdx] = GeometryLoader.dcDetector.getSector(0).getSuperlayer(superlayerIdx).getLayer(layerIdx).getPlane().point().z();
+				Z[layerIdx] = GeometryLoader.getLayerPlaneZ(superlayerIdx+1, layerIdx+1);
 				swamPars = dcSwim.SwimToPlane(Z[layerIdx]) ;
 				X[layerIdx] = swamPars[0];
 				Y[layerIdx] = swamPars[1];
@@ -174,6 +257,33 @@ public class TrajectoryFinder {
 	}
 
 
+	// reusable plane positions and swim output (x, y, tanThetaX, tanThetaY per plane)
+	private final double[] trajPlaneZ = new double[36];
+	private final double[] trajPlaneBuffer = new double[4*36];
+	
+	/**
+	 * Swims once from the target through the 36 layer planes, the swim parameters having been set
+	 * @return the list of state vectors at the crossed layer planes
+	 */
+	private List<StateVec> getStateVecsAlongTrajectorySinglePass() {
+		
+		for(int superlayerIdx =0; superlayerIdx<6; superlayerIdx++) 
+			for(int layerIdx =0; layerIdx<6; layerIdx++) 
+				trajPlaneZ[superlayerIdx*6+layerIdx] = GeometryLoader.getLayerPlaneZ(superlayerIdx+1, layerIdx+1);
+		
+		int nbOfCrossings = dcSwim.SwimToPlanes(trajPlaneZ, 36, trajPlaneBuffer);
+		
+		List<StateVec> stateVecAtPlanesList = new ArrayList<StateVec>(36);
+		for(int planeIdx = 0; planeIdx<nbOfCrossings; planeIdx++) {
+			if(Double.isNaN(trajPlaneBuffer[4*planeIdx]))
+				continue;
+			StateVec stateVec = new StateVec(trajPlaneBuffer[4*planeIdx], trajPlaneBuffer[4*planeIdx+1], trajPlaneBuffer[4*planeIdx+2], trajPlaneBuffer[4*planeIdx+3]);
+			stateVec.set_planeIdx(planeIdx);
+			stateVecAtPlanesList.add(stateVec);
+		}
+		return stateVecAtPlanesList;
+	}
+
 	/**
 	 *
 	 * @return the list of state vectors along the trajectory
@@ -184,7 +294,7 @@ public class TrajectoryFinder {
 		for(int superlayerIdx =0; superlayerIdx<6; superlayerIdx++) {
 			for(int layerIdx =0; layerIdx<6; layerIdx++) {
 				
-				double z = GeometryLoader.dcDetector.getSector(0).getSuperlayer(superlayerIdx).getLayer(layerIdx).getPlane().point().z();
+				double z = GeometryLoader.getLayerPlaneZ(superlayerIdx+1, layerIdx+1);
 				double x = x_fitCoeff[0]*z*z+x_fitCoeff[1]*z+x_fitCoeff[2];
 				double y = y_fitCoeff[0]*z*z+y_fitCoeff[1]*z+y_fitCoeff[2];
 				double tanTheta_x = x_fitCoeff[0]*z+x_fitCoeff[1];